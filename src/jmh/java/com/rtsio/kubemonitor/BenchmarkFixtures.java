@@ -0,0 +1,110 @@
+package com.rtsio.kubemonitor;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterEventConfig;
+import com.rtsio.kubemonitor.config.ClusterWorkloadConfig;
+import com.rtsio.kubemonitor.service.NotificationService;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Shared setup for the benchmarks: cluster configuration, realistic Events, and wiring of Spring-injected fields
+ */
+public class BenchmarkFixtures {
+
+    public static ClusterConfig clusterConfig(String project, String cluster) {
+
+        ClusterEventConfig.EventTypes types = new ClusterEventConfig.EventTypes();
+        types.setLivenessProbe(true);
+        types.setReadinessProbe(true);
+        types.setOutOfMemoryKill(true);
+        ClusterEventConfig events = new ClusterEventConfig();
+        events.setEnabled(true);
+        events.setTypes(types);
+        ClusterWorkloadConfig workloads = new ClusterWorkloadConfig();
+        workloads.setDeployments(new ArrayList<>());
+        workloads.setStatefulSets(new ArrayList<>());
+        workloads.setRolloutWindows(Map.of());
+
+        ClusterConfig clusterConfig = new ClusterConfig();
+        clusterConfig.setProject(project);
+        clusterConfig.setName(cluster);
+        clusterConfig.setZone("europe-west4-b");
+        clusterConfig.setEnabled(true);
+        clusterConfig.setEvents(events);
+        clusterConfig.setExpectedWorkloads(workloads);
+        return clusterConfig;
+    }
+
+    /**
+     * A mix of the events kubemonitor sees most: rollouts, probe failures, kills and (with server-side filtering off)
+     * the routine pod lifecycle events no rule acts on
+     */
+    public static Event[] events() {
+
+        return new Event[] {
+                event("Normal", "ScalingReplicaSet", "Deployment", "example-service-1", "Scaled up replica set example-service-1-5d4f8b7c9 to 3"),
+                event("Normal", "SuccessfulCreate", "StatefulSet", "example-service-3", "create Pod example-service-3-0 in StatefulSet example-service-3 successful"),
+                event("Normal", "Killing", "Pod", "example-service-2-7c9d-x2k4p", "Container example-service-2 failed liveness probe, will be restarted"),
+                event("Warning", "Unhealthy", "Pod", "example-service-2-7c9d-x2k4p", "Liveness probe failed: HTTP probe failed with statuscode: 500"),
+                event("Warning", "Unhealthy", "Pod", "example-service-4-0", "Readiness probe failed: Get http://10.4.2.17:8080/health: dial tcp 10.4.2.17:8080: connect: connection refused"),
+                event("Warning", "OOMKilling", "Node", "gke-my-gke-cluster-default-pool-1a2b3c4d-x7k2", "Memory cgroup out of memory: Killed process 12345 (java) total-vm:4521364kB"),
+                event("Normal", "Pulled", "Pod", "example-service-1-5d4f8b7c9-abcde", "Container image \"eu.gcr.io/my-gcp-project/example-service-1:1.4.2\" already present on machine"),
+                event("Normal", "Scheduled", "Pod", "example-service-1-5d4f8b7c9-abcde", "Successfully assigned default/example-service-1-5d4f8b7c9-abcde to gke-my-gke-cluster-default-pool-1a2b3c4d-x7k2"),
+        };
+    }
+
+    public static Event event(String type, String reason, String kind, String name, String message) {
+
+        return new EventBuilder()
+                .withType(type)
+                .withReason(reason)
+                .withMessage(message)
+                .withNewMetadata()
+                    .withName(name + "." + Long.toHexString(System.nanoTime()))
+                    .withNamespace("default")
+                    .withUid(UUID.randomUUID().toString())
+                .endMetadata()
+                .withNewInvolvedObject()
+                    .withKind(kind)
+                    .withName(name)
+                    .withNamespace("default")
+                .endInvolvedObject()
+                .build();
+    }
+
+    /**
+     * Set a (Spring-injected) private field
+     */
+    public static void inject(Object target, String fieldName, Object value) {
+
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not set " + fieldName + " on " + target.getClass().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Drops notifications, so benchmarks measure kubemonitor's own work rather than Slack delivery
+     */
+    public static class DiscardingNotificationService extends NotificationService {
+
+        @Override
+        public void notifyEvent(String project, String cluster, String message) {
+
+        }
+
+        @Override
+        public void notifyDeployment(String project, String cluster, String workloadName) {
+
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.rtsio.kubemonitor.history;
+
+import com.rtsio.kubemonitor.BenchmarkFixtures;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.model.StoredEvent;
+import io.fabric8.kubernetes.api.model.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Appending to the event history, and a narrow time range query against a history of several segments; the query
+ * should cost the same however much history there is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventHistoryStoreBenchmark {
+
+    private static final int HISTORY_EVENTS = 200000;
+
+    private Path directory;
+    private EventHistoryStore store;
+    private ClusterConfig clusterConfig;
+    private Event[] events;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        directory = Files.createTempDirectory("event-history");
+        store = new EventHistoryStore(true, directory.toString(), 16 * 1024 * 1024, 60, Long.MAX_VALUE, 24, 64);
+        store.openSegments();
+        clusterConfig = BenchmarkFixtures.clusterConfig("my-gcp-project", "my-gke-cluster");
+        events = BenchmarkFixtures.events();
+        for (int i = 0; i < HISTORY_EVENTS; i++) {
+            store.append(clusterConfig, events[i % events.length]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void append() {
+
+        store.append(clusterConfig, events[next++ % events.length]);
+    }
+
+    @Benchmark
+    public List<StoredEvent> queryLastSecond() {
+
+        Instant now = Instant.now();
+        return store.query("my-gcp-project", "my-gke-cluster", now.minus(Duration.ofSeconds(1)), now, "Unhealthy", 1000);
+    }
+}
@@ -0,0 +1,64 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.BenchmarkFixtures;
+import com.rtsio.kubemonitor.config.EventRuleConfig;
+import io.fabric8.kubernetes.api.model.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of matching one event against the default rules plus a growing number of extra rules. Half of the extra rules
+ * share the default rules' types and reasons with message patterns that don't match, the rest have reasons of their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventRuleEngineBenchmark {
+
+    @Param({"0", "10", "100", "1000"})
+    private int extraRules;
+
+    private EventRuleEngine eventRuleEngine;
+    private Event[] events;
+
+    @Setup
+    public void setUp() {
+
+        List<EventRuleConfig> rules = new ArrayList<>();
+        for (int i = 0; i < extraRules / 2; i++) {
+            rules.add(new EventRuleConfig("extra-unhealthy-" + i, "Warning", "Unhealthy", null, "no-such-message-" + i, null, "notify", "{message}", false));
+        }
+        for (int i = 0; i < extraRules - extraRules / 2; i++) {
+            rules.add(new EventRuleConfig("extra-reason-" + i, "Warning", "Reason" + i, null, null, null, "notify", "{message}", false));
+        }
+        rules.addAll(DefaultEventRules.get());
+        eventRuleEngine = new EventRuleEngine(rules);
+
+        events = BenchmarkFixtures.events();
+    }
+
+    @Benchmark
+    public void match(Blackhole blackhole) {
+
+        for (Event event : events) {
+            blackhole.consume(eventRuleEngine.match(event));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.rtsio.kubemonitor.service;
+
+import com.rtsio.kubemonitor.BenchmarkFixtures;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deployment tracking with many deployments in progress across 100 clusters. addDeployment is measured on workloads
+ * that are already being deployed (the repeated events of one rollout), so the number of entries stays fixed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeploymentTrackingServiceBenchmark {
+
+    private static final int CLUSTERS = 100;
+
+    @Param({"10000", "100000"})
+    private int deployments;
+
+    private DeploymentTrackingService deploymentTrackingService;
+    private ClusterConfig[] clusterConfigs;
+    private int workloadsPerCluster;
+
+    @Setup
+    public void setUp() {
+
+        deploymentTrackingService = new DeploymentTrackingService();
+        BenchmarkFixtures.inject(deploymentTrackingService, "notificationService", new BenchmarkFixtures.DiscardingNotificationService());
+        // Long enough that nothing expires while measuring
+        BenchmarkFixtures.inject(deploymentTrackingService, "defaultRolloutWindowMinutes", 600);
+
+        clusterConfigs = new ClusterConfig[CLUSTERS];
+        for (int i = 0; i < CLUSTERS; i++) {
+            clusterConfigs[i] = BenchmarkFixtures.clusterConfig("my-gcp-project", "cluster-" + i);
+        }
+        workloadsPerCluster = deployments / CLUSTERS;
+        for (ClusterConfig clusterConfig : clusterConfigs) {
+            for (int i = 0; i < workloadsPerCluster; i++) {
+                deploymentTrackingService.addDeployment(clusterConfig, "workload-" + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public void addActiveDeployment() {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        deploymentTrackingService.addDeployment(clusterConfigs[random.nextInt(CLUSTERS)], "workload-" + random.nextInt(workloadsPerCluster));
+    }
+
+    @Benchmark
+    public List<String> getActiveDeploymentsForCluster() {
+
+        ClusterConfig clusterConfig = clusterConfigs[ThreadLocalRandom.current().nextInt(CLUSTERS)];
+        return deploymentTrackingService.getActiveDeploymentsForCluster(clusterConfig.getProject(), clusterConfig.getName());
+    }
+}
@@ -0,0 +1,70 @@
+package com.rtsio.kubemonitor.service;
+
+import com.rtsio.kubemonitor.BenchmarkFixtures;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.model.WorkloadSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The expected-vs-found comparison behind /status, on synthetic workload lists. Every tenth workload is not ready,
+ * every twentieth expected workload is missing, and a tenth of the cluster's workloads are being deployed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MonitorServiceBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    private int workloads;
+
+    private MonitorService monitorService;
+    private ClusterConfig clusterConfig;
+    private List<WorkloadSummary> statefulSets;
+    private List<WorkloadSummary> deployments;
+    private List<String> deploymentsInProgress;
+
+    @Setup
+    public void setUp() {
+
+        monitorService = new MonitorService();
+        clusterConfig = BenchmarkFixtures.clusterConfig("my-gcp-project", "my-gke-cluster");
+        statefulSets = new ArrayList<>();
+        deployments = new ArrayList<>();
+        deploymentsInProgress = new ArrayList<>();
+        for (int i = 0; i < workloads; i++) {
+            int readyReplicas = (i % 10 == 0 ? 1 : 3);
+            if (i % 20 != 0) {
+                statefulSets.add(new WorkloadSummary("default", "stateful-set-" + i, 3, readyReplicas));
+                deployments.add(new WorkloadSummary("default", "deployment-" + i, 3, readyReplicas));
+            }
+            clusterConfig.getExpectedWorkloads().getStatefulSets().add("stateful-set-" + i);
+            clusterConfig.getExpectedWorkloads().getDeployments().add("deployment-" + i);
+            if (i % 10 == 5) {
+                deploymentsInProgress.add("deployment-" + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> findDiscrepancies() {
+
+        return monitorService.findDiscrepancies(clusterConfig, statefulSets, deployments, deploymentsInProgress);
+    }
+}
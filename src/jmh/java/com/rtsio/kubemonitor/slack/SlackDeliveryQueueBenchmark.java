@@ -0,0 +1,57 @@
+package com.rtsio.kubemonitor.slack;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing Slack payloads: a single notification, and a full batch of coalesced ones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlackDeliveryQueueBenchmark {
+
+    @Param({"1", "20"})
+    private int attachments;
+
+    private SlackDeliveryQueue slackDeliveryQueue;
+    private SlackMessage message;
+
+    @Setup
+    public void setUp() {
+
+        // Never started, only used to serialize
+        slackDeliveryQueue = new SlackDeliveryQueue("benchmark", "http://localhost/", new OkHttpClient(), new ObjectMapper(), 500, 20, 30);
+        List<SlackAttachment> slackAttachments = new ArrayList<>();
+        for (int i = 0; i < attachments; i++) {
+            slackAttachments.add(new SlackAttachment(SlackNotifier.WARNING_COLOR,
+                    "my-gcp-project: Liveness probe failed: HTTP probe failed with statuscode: 500 - example-service-" + i));
+        }
+        message = new SlackMessage(slackAttachments);
+    }
+
+    @Benchmark
+    public String serialize() throws JsonProcessingException {
+
+        return slackDeliveryQueue.serialize(message);
+    }
+}
@@ -0,0 +1,68 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.BenchmarkFixtures;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.history.EventHistoryStore;
+import com.rtsio.kubemonitor.rules.DefaultEventRules;
+import com.rtsio.kubemonitor.rules.EventRuleEngine;
+import com.rtsio.kubemonitor.service.DeploymentTrackingService;
+import com.rtsio.kubemonitor.stream.EventStreamHub;
+import io.fabric8.kubernetes.api.model.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parseEvent over a mix of realistic events, with the default event rules, a real event cache and deployment
+ * tracker, and notifications discarded
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterEventWatcherBenchmark {
+
+    private ClusterEventWatcher clusterEventWatcher;
+    private Event[] events;
+
+    @Setup
+    public void setUp() {
+
+        BenchmarkFixtures.DiscardingNotificationService notificationService = new BenchmarkFixtures.DiscardingNotificationService();
+        DeploymentTrackingService deploymentTrackingService = new DeploymentTrackingService();
+        BenchmarkFixtures.inject(deploymentTrackingService, "notificationService", notificationService);
+        BenchmarkFixtures.inject(deploymentTrackingService, "defaultRolloutWindowMinutes", 3);
+
+        ClusterConfig clusterConfig = BenchmarkFixtures.clusterConfig("my-gcp-project", "my-gke-cluster");
+        clusterEventWatcher = new ClusterEventWatcher(clusterConfig,
+                deploymentTrackingService,
+                notificationService,
+                new EventCache(50000, 60, 16),
+                new EventAggregator(notificationService, true, 300, 60, 10000),
+                new EventRuleEngine(DefaultEventRules.get()),
+                new EventHistoryStore(false, "build/event-history", 0, 0, 0, 0, 1),
+                new EventStreamHub(256, 100, 1, 30, 30),
+                null,
+                null);
+        events = BenchmarkFixtures.events();
+    }
+
+    @Benchmark
+    public void parseEvents() {
+
+        for (Event event : events) {
+            clusterEventWatcher.parseEvent(event);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.rtsio.kubemonitor.watcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventCache lookups from many watcher threads at once. Compare shards=1 (a single lock) against the default to see
+ * the effect of striping, and a key space larger than the maximum size to see the cost of eviction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class EventCacheBenchmark {
+
+    private static final int CLUSTERS = 10;
+
+    @Param({"1", "16"})
+    private int shards;
+
+    @Param({"10000", "100000"})
+    private int keySpace;
+
+    private EventCache eventCache;
+    private String[] namespaces;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+
+        eventCache = new EventCache(50000, 60, shards);
+        namespaces = new String[CLUSTERS];
+        for (int i = 0; i < CLUSTERS; i++) {
+            namespaces[i] = "project/cluster-" + i;
+        }
+        keys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public boolean hasCached() {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return eventCache.hasCached(namespaces[random.nextInt(CLUSTERS)], keys[random.nextInt(keySpace)]);
+    }
+}
@@ -1,44 +1,63 @@
 package com.rtsio.kubemonitor;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rtsio.kubemonitor.config.BaseMonitoringConfig;
-import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
+import com.rtsio.kubemonitor.rules.DefaultEventRules;
+import com.rtsio.kubemonitor.rules.EventRuleEngine;
+import com.rtsio.kubemonitor.shard.ShardCoordinator;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
-
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
 
 @Configuration
 @Slf4j
 public class ApplicationConfiguration {
 
+    /**
+     * Event rules from the monitoring config, or the built-in ones if it has none. Rules are read once at startup;
+     * reloading the config only picks up cluster and webhook changes.
+     */
     @Bean
-    public BaseMonitoringConfig clusterConfig() {
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        List<ClusterConfig> inactiveClusters = new ArrayList<>();
-        try {
-            InputStream jsonConfig = new ClassPathResource("monitoring-config.json").getInputStream();
-            BaseMonitoringConfig config = objectMapper.readValue(jsonConfig, BaseMonitoringConfig.class);
-            jsonConfig.close();
-            for (ClusterConfig cluster : config.getClusters()) {
-                if (!cluster.getEnabled()) {
-                    log.info("Cluster {} for project {} was disabled via configuration", cluster.getName(), cluster.getProject());
-                    inactiveClusters.add(cluster);
-                }
-            }
-            config.getClusters().removeAll(inactiveClusters);
-            log.info("Loaded cluster config");
-            return config;
-        } catch (Exception e) {
-            log.error("Couldn't load cluster config", e);
-            return null;
+    public EventRuleEngine eventRuleEngine(ClusterRegistry clusterRegistry) {
+
+        BaseMonitoringConfig baseMonitoringConfig = clusterRegistry.getConfig();
+        if (baseMonitoringConfig.getEventRules() == null) {
+            log.info("No event rules configured, using defaults");
+            return new EventRuleEngine(DefaultEventRules.get());
+        }
+        return new EventRuleEngine(baseMonitoringConfig.getEventRules());
+    }
+
+    /**
+     * Splits clusters between replicas if sharding is enabled. Leases live in the cluster kubemonitor runs in, reached
+     * with its own service account (or the local kubeconfig), in sharding.namespace or else the client's namespace.
+     */
+    @Bean(destroyMethod = "close")
+    public ShardCoordinator shardCoordinator(ClusterRegistry clusterRegistry,
+                                             @Value("${sharding.enabled}") boolean enabled,
+                                             @Value("${sharding.namespace}") String namespace,
+                                             @Value("${sharding.identity}") String identity,
+                                             @Value("${sharding.lease-duration-seconds}") int leaseDurationSeconds,
+                                             @Value("${sharding.renew-interval-seconds}") long renewIntervalSeconds,
+                                             @Value("${sharding.virtual-nodes}") int virtualNodes) {
+
+        if (!enabled) {
+            return ShardCoordinator.unsharded();
         }
+        KubernetesClient client = new DefaultKubernetesClient();
+        ShardCoordinator shardCoordinator = new ShardCoordinator(client,
+                (namespace.isEmpty() ? client.getNamespace() : namespace),
+                identity,
+                leaseDurationSeconds,
+                renewIntervalSeconds,
+                virtualNodes);
+        clusterRegistry.addListener((removed, added) -> shardCoordinator.rebalanceSoon());
+        shardCoordinator.start(clusterRegistry::getClusters);
+        return shardCoordinator;
     }
 
     @Bean
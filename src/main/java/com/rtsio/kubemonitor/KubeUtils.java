@@ -1,18 +1,34 @@
 package com.rtsio.kubemonitor;
 
+import com.rtsio.kubemonitor.auth.CachingTokenProvider;
+import com.rtsio.kubemonitor.auth.OAuthToken;
+import com.rtsio.kubemonitor.auth.TokenInterceptor;
 import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 
 @Slf4j
 public class KubeUtils {
 
+    // GCP access tokens are issued for an hour
+    private static final Duration DEFAULT_TOKEN_LIFETIME = Duration.ofMinutes(60);
+
     /**
      * Call `gcloud container clusters get-credentials` to build kubeconfig for given cluster
      * Synchronized to prevent race conditions with different threads setting kubeconfig at once
      */
     public static synchronized void setClusterKubeconfig(String project, String zone, String cluster) throws ClusterDoesNotExistException {
+        long startNanos = System.nanoTime();
+        String outcome = KubemonitorMetrics.OUTCOME_ERROR;
         try {
             ProcessBuilder gcloudClusters = new ProcessBuilder("gcloud",
                     "container",
@@ -36,23 +52,30 @@ public class KubeUtils {
                     throw new RuntimeException(("Got non-zero exit code from gcloud container clusters get-credentials: " + output));
                 }
             }
+            outcome = KubemonitorMetrics.OUTCOME_SUCCESS;
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException("Could not execute command to set gcloud context", e);
+        } finally {
+            KubemonitorMetrics.recordLatency(KubemonitorMetrics.GCLOUD_CALLS, startNanos, outcome, "command", "get-credentials");
         }
     }
 
     /**
-     * Call `gcloud config config-helper` to get OAuth token
-     * Synchronized to prevent race conditions with different threads calling gcloud, which is not thread safe
+     * Call `gcloud config config-helper` to get a freshly issued OAuth token and its expiry time
+     * Synchronized to prevent race conditions with different threads calling gcloud, which is not thread safe;
+     * callers should go through CachingTokenProvider rather than calling this on a request path
      */
-    public static synchronized String getGcloudToken() {
+    public static synchronized OAuthToken getGcloudToken() {
 
+        long startNanos = System.nanoTime();
+        String outcome = KubemonitorMetrics.OUTCOME_ERROR;
         try {
             ProcessBuilder gcloudConfig = new ProcessBuilder("gcloud",
                     "config",
                     "config-helper",
+                    "--force-auth-refresh",
                     "--format",
-                    "value(credential.access_token)").redirectErrorStream(true);
+                    "value(credential.access_token,credential.token_expiry)").redirectErrorStream(true);
             Process gcloudConfigProcess = gcloudConfig.start();
             String output = new String(gcloudConfigProcess.getInputStream().readAllBytes());
             int exitCode = gcloudConfigProcess.waitFor();
@@ -60,12 +83,39 @@ public class KubeUtils {
                 log.warn("{}: {}", exitCode, output);
                 throw new RuntimeException(("Got " + exitCode + " exit code from gcloud config: " + output));
             }
-            return output.strip();
+            // Output is "<token>\t<expiry>"
+            String[] fields = output.strip().split("\\s+");
+            Instant expiry;
+            try {
+                expiry = Instant.parse(fields[1]);
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException e) {
+                log.warn("Could not parse token expiry from gcloud output, assuming {}", DEFAULT_TOKEN_LIFETIME);
+                expiry = Instant.now().plus(DEFAULT_TOKEN_LIFETIME);
+            }
+            outcome = KubemonitorMetrics.OUTCOME_SUCCESS;
+            return new OAuthToken(fields[0], expiry);
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException("Could not execute command to get gcloud token", e);
+        } finally {
+            KubemonitorMetrics.recordLatency(KubemonitorMetrics.GCLOUD_CALLS, startNanos, outcome, "command", "config-helper");
         }
     }
 
+    /**
+     * Create the HTTP client for a KubernetesClient, with requests authenticated by the token provider's current token
+     * so the client keeps working after the token it was created with expires.
+     * The event listener receives the OkHttp call/connection events of every request made through it.
+     */
+    public static OkHttpClient createHttpClient(Config config, CachingTokenProvider tokenProvider, EventListener eventListener) {
+
+        config.setOauthToken(tokenProvider.getToken());
+        return HttpClientUtils.createHttpClient(config)
+                .newBuilder()
+                .addInterceptor(new TokenInterceptor(tokenProvider))
+                .eventListener(eventListener)
+                .build();
+    }
+
     /**
      * Generate context name that gcloud populates in kubeconfig when calling get-credentials
      */
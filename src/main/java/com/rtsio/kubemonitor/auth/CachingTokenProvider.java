@@ -0,0 +1,114 @@
+package com.rtsio.kubemonitor.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the OAuth token from a TokenSource and refreshes it on a background thread ahead of its expiry.
+ * Callers only ever read the cached token; they block on the token source only if there is no valid token
+ * at all (on startup, or if background refreshes have been failing until the token expired).
+ */
+@Component
+@Slf4j
+public class CachingTokenProvider {
+
+    private static final Duration REFRESH_MARGIN = Duration.ofMinutes(5);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration MIN_REFRESH_DELAY = Duration.ofSeconds(1);
+
+    private final TokenSource tokenSource;
+    private final Duration refreshMargin;
+    private final Duration retryDelay;
+    private final ScheduledExecutorService refresher;
+
+    private volatile OAuthToken cachedToken;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    @Autowired
+    public CachingTokenProvider(TokenSource tokenSource) {
+
+        this(tokenSource, REFRESH_MARGIN, RETRY_DELAY);
+    }
+
+    public CachingTokenProvider(TokenSource tokenSource, Duration refreshMargin, Duration retryDelay) {
+
+        this.tokenSource = tokenSource;
+        this.refreshMargin = refreshMargin;
+        this.retryDelay = retryDelay;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getToken() {
+
+        OAuthToken token = cachedToken;
+        if (token != null && token.isValidAt(Instant.now())) {
+            return token.getValue();
+        }
+        return fetchIfInvalid().getValue();
+    }
+
+    /**
+     * Slow path, taken when there is no valid cached token; only one caller fetches, the others wait for its result
+     */
+    private synchronized OAuthToken fetchIfInvalid() {
+
+        OAuthToken token = cachedToken;
+        if (token != null && token.isValidAt(Instant.now())) {
+            return token;
+        }
+        log.info("No valid OAuth token cached, fetching on caller thread");
+        return refresh();
+    }
+
+    private synchronized OAuthToken refresh() {
+
+        OAuthToken token = tokenSource.fetchToken();
+        cachedToken = token;
+        Duration delay = Duration.between(Instant.now(), token.getExpiry()).minus(refreshMargin);
+        if (delay.compareTo(MIN_REFRESH_DELAY) < 0) {
+            delay = MIN_REFRESH_DELAY;
+        }
+        log.debug("Fetched OAuth token expiring at {}, next refresh in {}", token.getExpiry(), delay);
+        scheduleRefresh(delay);
+        return token;
+    }
+
+    private void backgroundRefresh() {
+
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Could not refresh OAuth token, retrying in {}", retryDelay, e);
+            synchronized (this) {
+                scheduleRefresh(retryDelay);
+            }
+        }
+    }
+
+    private void scheduleRefresh(Duration delay) {
+
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = refresher.schedule(this::backgroundRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,14 @@
+package com.rtsio.kubemonitor.auth;
+
+import com.rtsio.kubemonitor.KubeUtils;
+import org.springframework.stereotype.Component;
+
+@Component
+public class GcloudTokenSource implements TokenSource {
+
+    @Override
+    public OAuthToken fetchToken() {
+
+        return KubeUtils.getGcloudToken();
+    }
+}
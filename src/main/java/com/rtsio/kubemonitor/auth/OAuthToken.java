@@ -0,0 +1,19 @@
+package com.rtsio.kubemonitor.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class OAuthToken {
+
+    private String value;
+    private Instant expiry;
+
+    public boolean isValidAt(Instant time) {
+
+        return time.isBefore(expiry);
+    }
+}
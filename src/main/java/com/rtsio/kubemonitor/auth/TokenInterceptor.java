@@ -0,0 +1,31 @@
+package com.rtsio.kubemonitor.auth;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * Sets the Authorization header of every request (including watch websocket upgrades) from the token provider,
+ * so long-lived KubernetesClients always send the current token instead of the one they were created with
+ */
+public class TokenInterceptor implements Interceptor {
+
+    private final CachingTokenProvider tokenProvider;
+
+    public TokenInterceptor(CachingTokenProvider tokenProvider) {
+
+        this.tokenProvider = tokenProvider;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+
+        Request request = chain.request()
+                .newBuilder()
+                .header("Authorization", "Bearer " + tokenProvider.getToken())
+                .build();
+        return chain.proceed(request);
+    }
+}
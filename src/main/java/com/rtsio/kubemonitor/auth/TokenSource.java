@@ -0,0 +1,9 @@
+package com.rtsio.kubemonitor.auth;
+
+/**
+ * Somewhere OAuth tokens can be fetched from; expected to be slow (e.g. a subprocess), so callers should cache
+ */
+public interface TokenSource {
+
+    OAuthToken fetchToken();
+}
@@ -0,0 +1,248 @@
+package com.rtsio.kubemonitor.client;
+
+import com.rtsio.kubemonitor.KubeUtils;
+import com.rtsio.kubemonitor.auth.CachingTokenProvider;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.model.ClientStats;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds one long-lived KubernetesClient per cluster, shared by the watchers, the monitor and maintenance,
+ * so requests reuse pooled connections instead of paying for a new connection pool and TLS handshake every time.
+ * Clients returned from here are owned by the registry and must not be closed by callers.
+ */
+@Component
+@Slf4j
+public class ClusterClientRegistry {
+
+    @Autowired
+    private CachingTokenProvider tokenProvider;
+
+    @Value("${kubernetes.list.call-timeout-millis}")
+    private Long listCallTimeoutMillis;
+
+    private Map<String, ManagedClient> clients = new ConcurrentHashMap<>();
+    private List<BiConsumer<ClusterConfig, KubernetesClient>> rebuildListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Get the shared client for given cluster, creating it (and the cluster's kubeconfig context) on first use
+     */
+    public KubernetesClient getClient(ClusterConfig clusterConfig) throws ClusterDoesNotExistException {
+
+        ManagedClient managedClient = clients.get(getKey(clusterConfig));
+        if (managedClient == null) {
+            managedClient = createIfAbsent(clusterConfig);
+        }
+        managedClient.getLookups().increment();
+        return managedClient.getClient();
+    }
+
+    /**
+     * Like getClient, but each request made through it fails after kubernetes.list.call-timeout-millis, so one-off
+     * listings can't hang on an unresponsive API server. It can't be used for watches, and like the shared client it
+     * must not be closed by callers.
+     */
+    public KubernetesClient getListingClient(ClusterConfig clusterConfig) throws ClusterDoesNotExistException {
+
+        ManagedClient managedClient = clients.get(getKey(clusterConfig));
+        if (managedClient == null) {
+            managedClient = createIfAbsent(clusterConfig);
+        }
+        managedClient.getLookups().increment();
+        return managedClient.getListingClient();
+    }
+
+    /**
+     * Register a callback for when a cluster's client is replaced or dropped (the new client is then null), so holders
+     * of the old client can switch over or let go before it is closed
+     */
+    public void addRebuildListener(BiConsumer<ClusterConfig, KubernetesClient> listener) {
+
+        rebuildListeners.add(listener);
+    }
+
+    /**
+     * Call gcloud to re-resolve the cluster endpoint and credentials, rebuilding the client only if they changed.
+     * If the cluster no longer exists, its client is dropped.
+     */
+    public synchronized void refreshClient(ClusterConfig clusterConfig) {
+
+        String key = getKey(clusterConfig);
+        ManagedClient current = clients.get(key);
+        if (current == null) {
+            return;
+        }
+        Config config;
+        try {
+            config = resolveConfig(clusterConfig);
+        } catch (ClusterDoesNotExistException e) {
+            log.warn("Project: {}, cluster: {} no longer exists, dropping its client", clusterConfig.getProject(), clusterConfig.getName());
+            clients.remove(key);
+            notifyRebuildListeners(clusterConfig, null);
+            current.getClient().close();
+            return;
+        }
+        if (getEndpointFingerprint(config).equals(current.getEndpointFingerprint())) {
+            log.debug("Endpoint unchanged for project: {}, cluster: {}, keeping client", clusterConfig.getProject(), clusterConfig.getName());
+            return;
+        }
+
+        log.info("Endpoint or credentials changed for project: {}, cluster: {}, rebuilding client", clusterConfig.getProject(), clusterConfig.getName());
+        ManagedClient rebuilt = buildClient(clusterConfig, config, current.getRebuilds() + 1);
+        clients.put(key, rebuilt);
+        notifyRebuildListeners(clusterConfig, rebuilt.getClient());
+        current.getClient().close();
+    }
+
+    /**
+     * Close and forget the cluster's client, e.g. when the cluster is removed from config; the next getClient builds a new one
+     */
+    public synchronized void closeClient(ClusterConfig clusterConfig) {
+
+        ManagedClient current = clients.remove(getKey(clusterConfig));
+        if (current != null) {
+            log.info("Closing client for project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName());
+            notifyRebuildListeners(clusterConfig, null);
+            current.getClient().close();
+        }
+    }
+
+    private void notifyRebuildListeners(ClusterConfig clusterConfig, KubernetesClient client) {
+
+        for (BiConsumer<ClusterConfig, KubernetesClient> listener : rebuildListeners) {
+            try {
+                listener.accept(clusterConfig, client);
+            } catch (Exception e) {
+                log.error("Client rebuild listener failed for project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Cluster IPs and CA certificates can change (e.g. on GKE control plane upgrades), so re-check them every 5 minutes
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void refreshClients() {
+
+        for (ManagedClient managedClient : clients.values()) {
+            try {
+                refreshClient(managedClient.getClusterConfig());
+            } catch (Exception e) {
+                log.error("Could not refresh client for project: {}, cluster: {}",
+                        managedClient.getClusterConfig().getProject(), managedClient.getClusterConfig().getName(), e);
+            }
+        }
+    }
+
+    public List<ClientStats> getStats() {
+
+        List<ClientStats> stats = new ArrayList<>();
+        for (ManagedClient managedClient : clients.values()) {
+            ConnectionStatsListener connectionStats = managedClient.getConnectionStats();
+            stats.add(new ClientStats(
+                    managedClient.getClusterConfig().getProject(),
+                    managedClient.getClusterConfig().getName(),
+                    managedClient.getClient().getMasterUrl().toString(),
+                    managedClient.getCreatedAt(),
+                    managedClient.getRebuilds(),
+                    managedClient.getLookups().sum(),
+                    connectionStats.getCalls(),
+                    connectionStats.getConnectionsOpened(),
+                    connectionStats.getConnectionsReused(),
+                    managedClient.getHttpClient().connectionPool().connectionCount(),
+                    managedClient.getHttpClient().connectionPool().idleConnectionCount()
+            ));
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void closeClients() {
+
+        for (ManagedClient managedClient : clients.values()) {
+            managedClient.getClient().close();
+        }
+        clients.clear();
+    }
+
+    private synchronized ManagedClient createIfAbsent(ClusterConfig clusterConfig) throws ClusterDoesNotExistException {
+
+        String key = getKey(clusterConfig);
+        ManagedClient managedClient = clients.get(key);
+        if (managedClient == null) {
+            log.info("Creating client for project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName());
+            managedClient = buildClient(clusterConfig, resolveConfig(clusterConfig), 0);
+            clients.put(key, managedClient);
+        }
+        return managedClient;
+    }
+
+    /**
+     * Call gcloud to make sure kubeconfig and cluster context exist, then load the context
+     */
+    private Config resolveConfig(ClusterConfig clusterConfig) throws ClusterDoesNotExistException {
+
+        KubeUtils.setClusterKubeconfig(clusterConfig.getProject(), clusterConfig.getZone(), clusterConfig.getName());
+        String kubectlContext = KubeUtils.getGkeContextName(clusterConfig.getProject(), clusterConfig.getZone(), clusterConfig.getName());
+        log.debug("Setting context to {}", kubectlContext);
+        return Config.autoConfigure(kubectlContext);
+    }
+
+    private ManagedClient buildClient(ClusterConfig clusterConfig, Config config, long rebuilds) {
+
+        ConnectionStatsListener connectionStats = new ConnectionStatsListener();
+        OkHttpClient httpClient = KubeUtils.createHttpClient(config, tokenProvider, connectionStats);
+        // newBuilder() keeps the connection pool and dispatcher, which closing the shared client shuts down for both
+        OkHttpClient listingHttpClient = httpClient.newBuilder()
+                .callTimeout(listCallTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+        return new ManagedClient(
+                clusterConfig,
+                new DefaultKubernetesClient(httpClient, config),
+                new DefaultKubernetesClient(listingHttpClient, config),
+                httpClient,
+                getEndpointFingerprint(config),
+                connectionStats,
+                Instant.now(),
+                rebuilds
+        );
+    }
+
+    /**
+     * Everything in a kubeconfig context that would require a new connection pool if changed.
+     * The OAuth token is not part of this, as it is set per request by the token interceptor.
+     */
+    private String getEndpointFingerprint(Config config) {
+
+        return String.join("|",
+                String.valueOf(config.getMasterUrl()),
+                String.valueOf(config.getCaCertData()),
+                String.valueOf(config.getCaCertFile()),
+                String.valueOf(config.getClientCertData()),
+                String.valueOf(config.getClientKeyData()));
+    }
+
+    private String getKey(ClusterConfig clusterConfig) {
+
+        return clusterConfig.getProject() + "/" + clusterConfig.getName();
+    }
+}
@@ -0,0 +1,55 @@
+package com.rtsio.kubemonitor.client;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts calls made by a client's OkHttp pool and how many of them had to open a new connection
+ */
+public class ConnectionStatsListener extends EventListener {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+
+    @Override
+    public void callStart(Call call) {
+
+        calls.increment();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+
+        connectionsOpened.increment();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+
+        connectionsAcquired.increment();
+    }
+
+    public long getCalls() {
+
+        return calls.sum();
+    }
+
+    public long getConnectionsOpened() {
+
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Connections handed to a call from the pool without connecting
+     */
+    public long getConnectionsReused() {
+
+        return Math.max(0, connectionsAcquired.sum() - connectionsOpened.sum());
+    }
+}
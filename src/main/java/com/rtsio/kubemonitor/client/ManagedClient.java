@@ -0,0 +1,29 @@
+package com.rtsio.kubemonitor.client;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import okhttp3.OkHttpClient;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A shared client for one cluster, along with the endpoint/credentials it was built from
+ */
+@Data
+@AllArgsConstructor
+public class ManagedClient {
+
+    private ClusterConfig clusterConfig;
+    private KubernetesClient client;
+    // Shares the client's connections, but its calls time out (see ClusterClientRegistry.getListingClient)
+    private KubernetesClient listingClient;
+    private OkHttpClient httpClient;
+    private String endpointFingerprint;
+    private ConnectionStatsListener connectionStats;
+    private Instant createdAt;
+    private long rebuilds;
+    private final LongAdder lookups = new LongAdder();
+}
@@ -0,0 +1,109 @@
+package com.rtsio.kubemonitor.client;
+
+import com.rtsio.kubemonitor.model.WorkloadSummary;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.ListOptions;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lists all Deployments or StatefulSets in a cluster a page at a time (limit/continue), keeping only a
+ * WorkloadSummary of the ones the caller is interested in. Each page is dropped once it's summarized, so memory
+ * is bounded by the page size rather than the number of workloads in the cluster.
+ * A continue token expires some minutes after its page was served (HTTP 410), and the rest of the list can't be
+ * fetched from the same snapshot anymore; the partial results are then thrown away and the list starts over.
+ */
+@Slf4j
+public class WorkloadLister {
+
+    private static final int MAX_RESTARTS = 3;
+
+    public static List<WorkloadSummary> listStatefulSets(KubernetesClient client, int pageSize, Predicate<String> nameFilter) {
+
+        List<WorkloadSummary> summaries = new ArrayList<>();
+        forEachPage(options -> client.apps().statefulSets().inAnyNamespace().list(options), pageSize, summaries::clear, (StatefulSet set) -> {
+            String name = set.getMetadata().getName();
+            if (nameFilter.test(name)) {
+                Integer replicas = (set.getStatus() == null ? null : set.getStatus().getReplicas());
+                Integer readyReplicas = (set.getStatus() == null ? null : set.getStatus().getReadyReplicas());
+                summaries.add(new WorkloadSummary(set.getMetadata().getNamespace(), name, zeroIfNull(replicas), zeroIfNull(readyReplicas)));
+            }
+        });
+        return summaries;
+    }
+
+    public static List<WorkloadSummary> listDeployments(KubernetesClient client, int pageSize, Predicate<String> nameFilter) {
+
+        List<WorkloadSummary> summaries = new ArrayList<>();
+        forEachPage(options -> client.apps().deployments().inAnyNamespace().list(options), pageSize, summaries::clear, (Deployment deployment) -> {
+            String name = deployment.getMetadata().getName();
+            if (nameFilter.test(name)) {
+                Integer replicas = (deployment.getStatus() == null ? null : deployment.getStatus().getReplicas());
+                Integer readyReplicas = (deployment.getStatus() == null ? null : deployment.getStatus().getReadyReplicas());
+                summaries.add(new WorkloadSummary(deployment.getMetadata().getNamespace(), name, zeroIfNull(replicas), zeroIfNull(readyReplicas)));
+            }
+        });
+        return summaries;
+    }
+
+    /**
+     * Hand every pod in the cluster to the consumer a page at a time; returns the list's resourceVersion to watch from.
+     * If the list has to start over, restart is called first, and everything handed over before should be forgotten.
+     */
+    public static String listPods(KubernetesClient client, int pageSize, Runnable restart, Consumer<Pod> consumer) {
+
+        return forEachPage(options -> client.pods().inAnyNamespace().list(options), pageSize, restart, consumer);
+    }
+
+    /**
+     * All pages are served from the same snapshot, so the last page's resourceVersion is the whole list's
+     */
+    private static <T> String forEachPage(Function<ListOptions, ? extends KubernetesResourceList<T>> listCall, int pageSize, Runnable restart, Consumer<T> consumer) {
+
+        String continueToken = null;
+        int restarts = 0;
+        while (true) {
+            ListOptions options = new ListOptionsBuilder()
+                    .withLimit((long) pageSize)
+                    .withContinue(continueToken)
+                    .build();
+            KubernetesResourceList<T> page;
+            try {
+                page = listCall.apply(options);
+            } catch (KubernetesClientException e) {
+                if (continueToken == null || e.getCode() != HttpURLConnection.HTTP_GONE || restarts == MAX_RESTARTS) {
+                    throw e;
+                }
+                restarts++;
+                log.info("Continue token expired while listing, starting over (restart {} of {})", restarts, MAX_RESTARTS);
+                restart.run();
+                continueToken = null;
+                continue;
+            }
+            for (T item : page.getItems()) {
+                consumer.accept(item);
+            }
+            continueToken = page.getMetadata().getContinue();
+            if (continueToken == null || continueToken.isEmpty()) {
+                return page.getMetadata().getResourceVersion();
+            }
+        }
+    }
+
+    private static Integer zeroIfNull(Integer value) {
+
+        return (value == null ? 0 : value);
+    }
+}
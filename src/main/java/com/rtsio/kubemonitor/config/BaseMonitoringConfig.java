@@ -12,4 +12,7 @@ public class BaseMonitoringConfig {
 
     @JsonProperty("slack-webhooks")
     private List<SlackWebhookConfig> slackWebhookConfigs;
+
+    @JsonProperty("event-rules")
+    private List<EventRuleConfig> eventRules;
 }
@@ -3,11 +3,18 @@ package com.rtsio.kubemonitor.config;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class ClusterEventConfig {
 
     private Boolean enabled;
     private EventTypes types;
+    private EventNamespaces namespaces;
+    @JsonProperty("server-side-filtering")
+    private Boolean serverSideFiltering;
+    @JsonProperty("pod-watch")
+    private Boolean podWatch;
 
     @Data
     public static class EventTypes {
@@ -19,4 +26,11 @@ public class ClusterEventConfig {
         @JsonProperty("oom-kill")
         public Boolean outOfMemoryKill;
     }
+
+    @Data
+    public static class EventNamespaces {
+
+        public List<String> include;
+        public List<String> exclude;
+    }
 }
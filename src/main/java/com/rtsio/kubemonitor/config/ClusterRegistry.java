@@ -0,0 +1,259 @@
+package com.rtsio.kubemonitor.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The monitoring config, with clusters indexed by project/name and Slack webhooks by name.
+ * Loaded from monitoring-config.path if set, otherwise from monitoring-config.json on the classpath. A config file on
+ * the filesystem is watched, and on every change the whole config is re-read and swapped in at once; listeners are
+ * told which clusters were removed and added (a changed cluster is both). A config that can't be read is logged and
+ * ignored, keeping the current one.
+ */
+@Component
+@Slf4j
+public class ClusterRegistry {
+
+    private static final String CLASSPATH_CONFIG = "monitoring-config.json";
+    // Editors often write a file in several steps; wait for them to finish before reloading
+    private static final long RELOAD_SETTLE_MILLIS = 500;
+
+    private final String configPath;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Snapshot snapshot = new Snapshot(new BaseMonitoringConfig());
+    private WatchService watchService;
+
+    @Autowired
+    public ClusterRegistry(@Value("${monitoring-config.path}") String configPath) {
+
+        this.configPath = configPath;
+    }
+
+    public interface ChangeListener {
+
+        void clustersChanged(List<ClusterConfig> removed, List<ClusterConfig> added);
+    }
+
+    @PostConstruct
+    public void loadConfig() throws IOException {
+
+        try {
+            snapshot = new Snapshot(readConfig());
+            log.info("Loaded cluster config with {} clusters", snapshot.clusters.size());
+        } catch (Exception e) {
+            log.error("Couldn't load cluster config", e);
+        }
+        if (!configPath.isEmpty()) {
+            watchConfigFile(Paths.get(configPath).toAbsolutePath());
+        }
+    }
+
+    @PreDestroy
+    public void stopWatching() throws IOException {
+
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    public void addListener(ChangeListener listener) {
+
+        listeners.add(listener);
+    }
+
+    public BaseMonitoringConfig getConfig() {
+
+        return snapshot.config;
+    }
+
+    /**
+     * All enabled clusters
+     */
+    public List<ClusterConfig> getClusters() {
+
+        return snapshot.config.getClusters();
+    }
+
+    /**
+     * Configuration for given project and cluster name, or null if it isn't configured (or disabled)
+     */
+    public ClusterConfig findCluster(String project, String cluster) {
+
+        return snapshot.clusters.get(getKey(project, cluster));
+    }
+
+    /**
+     * Configuration for given project and cluster name
+     */
+    public ClusterConfig getCluster(String project, String cluster) {
+
+        ClusterConfig clusterConfig = findCluster(project, cluster);
+        if (clusterConfig == null) {
+            throw new RuntimeException("Could not find " + cluster + " in " + project);
+        }
+        return clusterConfig;
+    }
+
+    public SlackWebhookConfig getWebhook(String name) {
+
+        SlackWebhookConfig webhook = snapshot.webhooks.get(name);
+        if (webhook == null) {
+            throw new RuntimeException("Could not find webhook " + name);
+        }
+        return webhook;
+    }
+
+    /**
+     * Re-read the config and swap it in, then tell listeners what changed
+     */
+    public synchronized void reload() {
+
+        Snapshot previous = snapshot;
+        Snapshot current;
+        try {
+            current = new Snapshot(readConfig());
+        } catch (Exception e) {
+            log.error("Couldn't reload cluster config, keeping the current one", e);
+            return;
+        }
+        snapshot = current;
+
+        List<ClusterConfig> removed = new ArrayList<>();
+        List<ClusterConfig> added = new ArrayList<>();
+        for (Map.Entry<String, ClusterConfig> entry : previous.clusters.entrySet()) {
+            ClusterConfig now = current.clusters.get(entry.getKey());
+            if (!entry.getValue().equals(now)) {
+                removed.add(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, ClusterConfig> entry : current.clusters.entrySet()) {
+            if (!entry.getValue().equals(previous.clusters.get(entry.getKey()))) {
+                added.add(entry.getValue());
+            }
+        }
+        log.info("Reloaded cluster config with {} clusters: {} removed or changed, {} added or changed", current.clusters.size(), removed.size(), added.size());
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.clustersChanged(removed, added);
+            } catch (Exception e) {
+                log.error("Cluster config listener failed", e);
+            }
+        }
+    }
+
+    private BaseMonitoringConfig readConfig() throws IOException {
+
+        BaseMonitoringConfig config;
+        try (InputStream jsonConfig = (configPath.isEmpty() ? new ClassPathResource(CLASSPATH_CONFIG).getInputStream() : Files.newInputStream(Paths.get(configPath)))) {
+            config = objectMapper.readValue(jsonConfig, BaseMonitoringConfig.class);
+        }
+        List<ClusterConfig> activeClusters = new ArrayList<>();
+        for (ClusterConfig cluster : config.getClusters()) {
+            if (cluster.getEnabled()) {
+                activeClusters.add(cluster);
+            } else {
+                log.info("Cluster {} for project {} was disabled via configuration", cluster.getName(), cluster.getProject());
+            }
+        }
+        config.setClusters(Collections.unmodifiableList(activeClusters));
+        return config;
+    }
+
+    /**
+     * WatchService watches directories, so watch the config file's directory and pick out its events. Kubernetes
+     * ConfigMap volumes update files by swapping a symlinked directory, which shows up as events on other names, so
+     * any change in the directory triggers a reload; reloading an unchanged config is a no-op for listeners.
+     */
+    private void watchConfigFile(Path file) throws IOException {
+
+        Path directory = file.getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    Thread.sleep(RELOAD_SETTLE_MILLIS);
+                    // Collapse everything that happened in the meantime into one reload
+                    do {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            log.debug("Config directory event {} on {}", event.kind(), event.context());
+                        }
+                        key.reset();
+                        key = watchService.poll(0, TimeUnit.MILLISECONDS);
+                    } while (key != null);
+                    if (Files.exists(file)) {
+                        reload();
+                    }
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                log.debug("Stopped watching {}", file);
+            }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for config changes", file);
+    }
+
+    private static String getKey(String project, String cluster) {
+
+        return project + "/" + cluster;
+    }
+
+    /**
+     * A config with its lookup indexes, replaced as a whole on reload
+     */
+    private static class Snapshot {
+
+        private final BaseMonitoringConfig config;
+        private final Map<String, ClusterConfig> clusters = new LinkedHashMap<>();
+        private final Map<String, SlackWebhookConfig> webhooks = new HashMap<>();
+
+        private Snapshot(BaseMonitoringConfig config) {
+
+            this.config = config;
+            if (config.getClusters() == null) {
+                config.setClusters(Collections.emptyList());
+            }
+            for (ClusterConfig cluster : config.getClusters()) {
+                clusters.put(getKey(cluster.getProject(), cluster.getName()), cluster);
+            }
+            if (config.getSlackWebhookConfigs() != null) {
+                for (SlackWebhookConfig webhook : config.getSlackWebhookConfigs()) {
+                    webhooks.put(webhook.getName(), webhook);
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class ClusterWorkloadConfig {
@@ -11,4 +12,7 @@ public class ClusterWorkloadConfig {
     private List<String> deployments;
     @JsonProperty("stateful-sets")
     private List<String> statefulSets;
+    // Workload name -> minutes a rollout of it is considered in progress, for workloads slower to start than the default
+    @JsonProperty("rollout-windows")
+    private Map<String, Integer> rolloutWindows;
 }
@@ -0,0 +1,24 @@
+package com.rtsio.kubemonitor.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventRuleConfig {
+
+    private String name;
+    private String type;
+    private String reason;
+    private String kind;
+    @JsonProperty("message-pattern")
+    private String messagePattern;
+    @JsonProperty("enabled-by")
+    private String enabledBy;
+    private String action;
+    private String template;
+    private Boolean dedupe;
+}
@@ -0,0 +1,57 @@
+package com.rtsio.kubemonitor.controller;
+
+import com.rtsio.kubemonitor.history.EventHistoryStore;
+import com.rtsio.kubemonitor.model.StoredEvent;
+import com.rtsio.kubemonitor.stream.EventStreamHub;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+public class EventController {
+
+    @Autowired
+    private EventHistoryStore eventHistoryStore;
+
+    @Autowired
+    private EventStreamHub eventStreamHub;
+
+    @Value("${event-history.max-results}")
+    private Integer maxResults;
+
+    /**
+     * Stored events in a time range, by default the last hour
+     */
+    @GetMapping("/events")
+    public List<StoredEvent> getEvents(@RequestParam(required = false) String project,
+                                       @RequestParam(required = false) String cluster,
+                                       @RequestParam(required = false) Instant since,
+                                       @RequestParam(required = false) Instant until,
+                                       @RequestParam(required = false) String reason,
+                                       @RequestParam(required = false) Integer limit) {
+
+        Instant end = (until == null ? Instant.now() : until);
+        Instant start = (since == null ? end.minus(Duration.ofHours(1)) : since);
+        int resultLimit = (limit == null ? maxResults : Math.min(limit, maxResults));
+        return eventHistoryStore.query(project, cluster, start, end, reason, resultLimit);
+    }
+
+    /**
+     * Events as they are processed, as Server-Sent Events
+     */
+    @GetMapping(path = "/events/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@RequestParam(required = false) String project,
+                                   @RequestParam(required = false) String cluster,
+                                   @RequestParam(required = false) String reason) {
+
+        return eventStreamHub.subscribe(project, cluster, reason);
+    }
+}
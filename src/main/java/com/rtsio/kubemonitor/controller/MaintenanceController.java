@@ -1,15 +1,21 @@
 package com.rtsio.kubemonitor.controller;
 
 import com.rtsio.kubemonitor.model.MaintenanceRequest;
+import com.rtsio.kubemonitor.model.MaintenanceReschedule;
+import com.rtsio.kubemonitor.model.MaintenanceState;
 import com.rtsio.kubemonitor.service.MaintenanceService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.Instant;
+import java.util.List;
 
 @RestController
 @Slf4j
@@ -28,7 +34,32 @@ public class MaintenanceController {
     public MaintenanceRequest scheduleMaintenance(@RequestBody MaintenanceRequest maintenanceRequest) {
 
         log.info("Received request to schedule maintenance {}", maintenanceRequest);
-        maintenanceService.scheduleMaintenance(maintenanceRequest);
-        return maintenanceRequest;
+        return maintenanceService.scheduleMaintenance(maintenanceRequest);
+    }
+
+    @GetMapping("/maintenance")
+    public List<MaintenanceState> getMaintenance() {
+
+        return maintenanceService.getMaintenanceStates();
+    }
+
+    @GetMapping("/maintenance/archive")
+    public List<MaintenanceState> getArchivedMaintenance() {
+
+        return maintenanceService.getArchivedMaintenance();
+    }
+
+    @PutMapping("/maintenance/{id}")
+    public MaintenanceState rescheduleMaintenance(@PathVariable String id, @RequestBody MaintenanceReschedule reschedule) {
+
+        log.info("Received request to reschedule maintenance {} to {}", id, reschedule);
+        return maintenanceService.rescheduleMaintenance(id, reschedule.getStartTime(), reschedule.getEndTime());
+    }
+
+    @DeleteMapping("/maintenance/{id}")
+    public MaintenanceState cancelMaintenance(@PathVariable String id) {
+
+        log.info("Received request to cancel maintenance {}", id);
+        return maintenanceService.cancelMaintenance(id);
     }
 }
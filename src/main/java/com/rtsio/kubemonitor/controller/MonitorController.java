@@ -1,25 +1,37 @@
 package com.rtsio.kubemonitor.controller;
 
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
 import com.rtsio.kubemonitor.config.BaseMonitoringConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
+import com.rtsio.kubemonitor.model.ClientStats;
 import com.rtsio.kubemonitor.model.ClusterStatus;
 import com.rtsio.kubemonitor.model.DetectedDeployment;
+import com.rtsio.kubemonitor.model.EventCacheStats;
+import com.rtsio.kubemonitor.model.FleetClusterStatus;
+import com.rtsio.kubemonitor.model.ShardStatus;
+import com.rtsio.kubemonitor.model.SlackQueueStats;
+import com.rtsio.kubemonitor.model.WatchStats;
 import com.rtsio.kubemonitor.service.DeploymentTrackingService;
 import com.rtsio.kubemonitor.service.MonitorService;
+import com.rtsio.kubemonitor.shard.ShardCoordinator;
+import com.rtsio.kubemonitor.slack.SlackNotifier;
+import com.rtsio.kubemonitor.watcher.EventCache;
+import com.rtsio.kubemonitor.watcher.WatcherInitializer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @Slf4j
 public class MonitorController {
 
     @Autowired
-    private BaseMonitoringConfig baseMonitoringConfig;
+    private ClusterRegistry clusterRegistry;
 
     @Autowired
     private MonitorService monitorService;
@@ -27,19 +39,65 @@ public class MonitorController {
     @Autowired
     private DeploymentTrackingService deploymentTrackingService;
 
+    @Autowired
+    private ClusterClientRegistry clientRegistry;
+
+    @Autowired
+    private WatcherInitializer watcherInitializer;
+
+    @Autowired
+    private SlackNotifier slackNotifier;
+
+    @Autowired
+    private EventCache eventCache;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
     @GetMapping("/config")
     public BaseMonitoringConfig getConfig() {
 
-        return baseMonitoringConfig;
+        return clusterRegistry.getConfig();
     }
 
     @GetMapping("/status")
-    public ClusterStatus getStatus(@RequestParam String project, @RequestParam String cluster) throws IOException, InterruptedException {
+    public CompletableFuture<ClusterStatus> getStatus(@RequestParam String project, @RequestParam String cluster) {
 
         if (project == null || cluster == null) {
             throw new RuntimeException("Cluster and project cannot be null");
         }
-        return monitorService.getClusterStatus(project, cluster);
+        // Answered once the check completes, so the servlet thread isn't held while the cluster is listed
+        return monitorService.getClusterStatusAsync(project, cluster);
+    }
+
+    @GetMapping("/status/all")
+    public List<FleetClusterStatus> getFleetStatus(@RequestParam(required = false) String project) {
+
+        return monitorService.getFleetStatus(project);
+    }
+
+    @GetMapping("/clients")
+    public List<ClientStats> getClients() {
+
+        return clientRegistry.getStats();
+    }
+
+    @GetMapping("/watchers")
+    public List<WatchStats> getWatchers() {
+
+        return watcherInitializer.getWatchStats();
+    }
+
+    @GetMapping("/slack")
+    public List<SlackQueueStats> getSlackQueues() {
+
+        return slackNotifier.getStats();
+    }
+
+    @GetMapping("/event-cache")
+    public EventCacheStats getEventCache() {
+
+        return eventCache.getStats();
     }
 
     @GetMapping("/deployments")
@@ -47,4 +105,10 @@ public class MonitorController {
 
         return deploymentTrackingService.getAll();
     }
+
+    @GetMapping("/shard")
+    public ShardStatus getShard() {
+
+        return new ShardStatus(shardCoordinator.isEnabled(), shardCoordinator.getIdentity(), shardCoordinator.getMembers(), shardCoordinator.getOwnedClusters());
+    }
 }
\ No newline at end of file
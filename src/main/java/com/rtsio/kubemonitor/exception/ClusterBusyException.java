@@ -0,0 +1,16 @@
+package com.rtsio.kubemonitor.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The cluster already has as many requests running and queued as its bulkhead allows
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ClusterBusyException extends RuntimeException {
+
+    public ClusterBusyException(String message) {
+
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.rtsio.kubemonitor.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The maintenance request is missing something it needs to be scheduled
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidMaintenanceRequestException extends RuntimeException {
+
+    public InvalidMaintenanceRequestException(String message) {
+
+        super(message);
+    }
+}
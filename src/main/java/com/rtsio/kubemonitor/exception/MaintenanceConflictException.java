@@ -0,0 +1,16 @@
+package com.rtsio.kubemonitor.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The maintenance can't be changed like this in its current state, or the requested times don't make sense
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class MaintenanceConflictException extends RuntimeException {
+
+    public MaintenanceConflictException(String message) {
+
+        super(message);
+    }
+}
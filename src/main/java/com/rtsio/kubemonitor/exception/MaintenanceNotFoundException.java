@@ -0,0 +1,13 @@
+package com.rtsio.kubemonitor.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class MaintenanceNotFoundException extends RuntimeException {
+
+    public MaintenanceNotFoundException(String message) {
+
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.rtsio.kubemonitor.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class StatusTimeoutException extends RuntimeException {
+
+    public StatusTimeoutException(String message) {
+
+        super(message);
+    }
+}
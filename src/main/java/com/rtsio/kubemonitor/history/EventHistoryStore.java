@@ -0,0 +1,276 @@
+package com.rtsio.kubemonitor.history;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.model.StoredEvent;
+import io.fabric8.kubernetes.api.model.Event;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local history of the events kubemonitor acted on, kept in a directory of memory-mapped, append-only segments
+ * (see EventSegment). Events are stamped with the time they were stored, which only increases, so segments are
+ * ordered by time as well: a range query binary-searches for the first segment that can contain its start, then
+ * each segment's sparse index, and stops at the first event past its end.
+ * A new segment is started when the current one is full or older than segment-duration-minutes, and the oldest
+ * segments are deleted once the total size or their age exceeds the retention settings.
+ */
+@Component
+@Slf4j
+public class EventHistoryStore {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Long messages are cut to this many characters, so every string fits its unsigned short length
+    private static final int MAX_FIELD_CHARS = 4096;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSizeBytes;
+    private final long segmentDurationMillis;
+    private final long maxSizeBytes;
+    private final long retentionMillis;
+    private final int indexInterval;
+
+    // Appends and retention take the write lock, queries the read lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Oldest first; the last one is appended to
+    private final List<EventSegment> segments = new ArrayList<>();
+    private long nextSegmentId;
+    private long lastTimestamp;
+
+    @Autowired
+    public EventHistoryStore(@Value("${event-history.enabled}") boolean enabled,
+                             @Value("${event-history.directory}") String directory,
+                             @Value("${event-history.segment-size-bytes}") int segmentSizeBytes,
+                             @Value("${event-history.segment-duration-minutes}") long segmentDurationMinutes,
+                             @Value("${event-history.max-size-bytes}") long maxSizeBytes,
+                             @Value("${event-history.retention-hours}") long retentionHours,
+                             @Value("${event-history.index-interval}") int indexInterval) {
+
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.segmentDurationMillis = TimeUnit.MINUTES.toMillis(segmentDurationMinutes);
+        this.maxSizeBytes = maxSizeBytes;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.indexInterval = indexInterval;
+    }
+
+    @PostConstruct
+    public void openSegments() throws IOException {
+
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+        lock.writeLock().lock();
+        try {
+            for (Path file : files) {
+                EventSegment segment = EventSegment.open(file, segmentSizeBytes, indexInterval);
+                if (segment.isEmpty()) {
+                    segment.delete();
+                    continue;
+                }
+                segments.add(segment);
+                lastTimestamp = segment.getLastTimestamp();
+                nextSegmentId = getSegmentId(file) + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Opened event history in {} with {} segments", directory, segments.size());
+    }
+
+    @PreDestroy
+    public void flush() {
+
+        lock.writeLock().lock();
+        try {
+            for (EventSegment segment : segments) {
+                segment.flush();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    public void append(ClusterConfig clusterConfig, Event event) {
+
+        if (!enabled) {
+            return;
+        }
+        byte[] body = encode(clusterConfig.getProject(),
+                clusterConfig.getName(),
+                event.getInvolvedObject().getNamespace(),
+                event.getInvolvedObject().getKind(),
+                event.getInvolvedObject().getName(),
+                event.getReason(),
+                event.getType(),
+                event.getMessage());
+        lock.writeLock().lock();
+        try {
+            // Never go back in time, even if the clock does, so timestamps stay sorted for binary search
+            long timestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+            EventSegment active = (segments.isEmpty() ? null : segments.get(segments.size() - 1));
+            if (active == null || timestamp - active.getFirstTimestamp() > segmentDurationMillis || !active.append(timestamp, body)) {
+                active = newSegment();
+                if (!active.append(timestamp, body)) {
+                    log.warn("Event for project: {}, cluster: {} too large for an event history segment, not stored", clusterConfig.getProject(), clusterConfig.getName());
+                    return;
+                }
+            }
+            lastTimestamp = timestamp;
+        } catch (IOException e) {
+            log.error("Could not store event for project: {}, cluster: {} in event history", clusterConfig.getProject(), clusterConfig.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Events stored between since and until (inclusive) that match the given filters (null matches everything), in
+     * order; if there are more than limit, the most recent ones
+     */
+    public List<StoredEvent> query(String project, String cluster, Instant since, Instant until, String reason, int limit) {
+
+        Deque<StoredEvent> results = new ArrayDeque<>();
+        if (!enabled || limit <= 0) {
+            return new ArrayList<>(results);
+        }
+        long sinceMillis = since.toEpochMilli();
+        long untilMillis = until.toEpochMilli();
+        lock.readLock().lock();
+        try {
+            for (int i = findFirstSegment(sinceMillis); i < segments.size(); i++) {
+                EventSegment segment = segments.get(i);
+                if (segment.getFirstTimestamp() > untilMillis) {
+                    break;
+                }
+                segment.scan(sinceMillis, untilMillis, event -> {
+                    if (matches(project, event.getProject()) && matches(cluster, event.getCluster()) && matches(reason, event.getReason())) {
+                        if (results.size() == limit) {
+                            results.removeFirst();
+                        }
+                        results.addLast(event);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Index of the first segment whose last event is at or after since
+     */
+    private int findFirstSegment(long since) {
+
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).getLastTimestamp() < since) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Delete the oldest segments while over the size limit or older than the retention period; the segment being
+     * appended to is kept. Queries in progress hold the read lock, so a segment is never deleted under them.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void enforceRetention() {
+
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long totalBytes = 0;
+            for (EventSegment segment : segments) {
+                totalBytes += segment.getSize();
+            }
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            while (segments.size() > 1 && (totalBytes > maxSizeBytes || segments.get(0).getLastTimestamp() < cutoff)) {
+                EventSegment oldest = segments.remove(0);
+                totalBytes -= oldest.getSize();
+                oldest.delete();
+                log.debug("Deleted event history segment {}", oldest.getFile());
+            }
+        } catch (IOException e) {
+            log.error("Could not delete event history segment", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private EventSegment newSegment() throws IOException {
+
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).flush();
+        }
+        Path file = directory.resolve(String.format("%019d%s", nextSegmentId++, SEGMENT_SUFFIX));
+        EventSegment segment = EventSegment.open(file, segmentSizeBytes, indexInterval);
+        segments.add(segment);
+        return segment;
+    }
+
+    private long getSegmentId(Path file) {
+
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private boolean matches(String filter, String value) {
+
+        return filter == null || filter.equals(value);
+    }
+
+    private byte[] encode(String... fields) {
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        for (String field : fields) {
+            String value = (field == null ? "" : field);
+            byte[] bytes = (value.length() > MAX_FIELD_CHARS ? value.substring(0, MAX_FIELD_CHARS) : value).getBytes(StandardCharsets.UTF_8);
+            body.write(bytes.length >>> 8);
+            body.write(bytes.length);
+            body.write(bytes, 0, bytes.length);
+        }
+        return body.toByteArray();
+    }
+}
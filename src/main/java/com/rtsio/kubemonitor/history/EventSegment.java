@@ -0,0 +1,209 @@
+package com.rtsio.kubemonitor.history;
+
+import com.rtsio.kubemonitor.model.StoredEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * One memory-mapped file of the event history. Records are appended back to back as
+ * [length][timestamp millis][project][cluster][namespace][kind][name][reason][type][message], each string being an
+ * unsigned short length followed by UTF-8 bytes. The file is mapped at its full capacity up front, so unwritten space
+ * reads as zeros: a zero length marks the end of the data. A record's length is written after the rest of it, so a
+ * record is never visible half written.
+ * Timestamps only increase within a segment; every indexInterval-th record's timestamp and position go into a sparse
+ * index, so a query binary-searches the index and scans at most indexInterval records before reaching its range.
+ * Not thread-safe; EventHistoryStore guards segments with its lock.
+ */
+class EventSegment {
+
+    private static final int LENGTH_BYTES = 4;
+    private static final int TIMESTAMP_BYTES = 8;
+
+    private final Path file;
+    private final int capacity;
+    private final int indexInterval;
+    private final MappedByteBuffer buffer;
+
+    private int size;
+    private int recordCount;
+    private long firstTimestamp = -1;
+    private long lastTimestamp = -1;
+    private long[] indexTimestamps = new long[16];
+    private int[] indexPositions = new int[16];
+    private int indexSize;
+
+    private EventSegment(Path file, int capacity, int indexInterval, MappedByteBuffer buffer) {
+
+        this.file = file;
+        this.capacity = capacity;
+        this.indexInterval = indexInterval;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map a segment file, creating it if needed, and rebuild its size and index by walking its records
+     */
+    static EventSegment open(Path file, int capacity, int indexInterval) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A segment written with a larger capacity setting keeps its own size
+            int mappedSize = (int) Math.max(capacity, channel.size());
+            EventSegment segment = new EventSegment(file, mappedSize, indexInterval, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+            segment.recover();
+            return segment;
+        }
+    }
+
+    private void recover() {
+
+        int position = 0;
+        while (position + LENGTH_BYTES + TIMESTAMP_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < TIMESTAMP_BYTES || position + LENGTH_BYTES + length + LENGTH_BYTES > capacity) {
+                break;
+            }
+            indexRecord(buffer.getLong(position + LENGTH_BYTES), position);
+            position += LENGTH_BYTES + length;
+        }
+        size = position;
+    }
+
+    /**
+     * Append a record body (everything after the timestamp); returns false if the segment doesn't have room for it
+     */
+    boolean append(long timestamp, byte[] body) {
+
+        int length = TIMESTAMP_BYTES + body.length;
+        // Always leave room for the zero length that ends the data
+        if (size + LENGTH_BYTES + length + LENGTH_BYTES > capacity) {
+            return false;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(size + LENGTH_BYTES);
+        record.putLong(timestamp);
+        record.put(body);
+        buffer.putInt(size, length);
+        indexRecord(timestamp, size);
+        size += LENGTH_BYTES + length;
+        return true;
+    }
+
+    private void indexRecord(long timestamp, int position) {
+
+        if (recordCount % indexInterval == 0) {
+            if (indexSize == indexTimestamps.length) {
+                indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+            }
+            indexTimestamps[indexSize] = timestamp;
+            indexPositions[indexSize] = position;
+            indexSize++;
+        }
+        if (firstTimestamp < 0) {
+            firstTimestamp = timestamp;
+        }
+        lastTimestamp = timestamp;
+        recordCount++;
+    }
+
+    /**
+     * Hand over every record with since <= timestamp <= until, in order
+     */
+    void scan(long since, long until, Consumer<StoredEvent> consumer) {
+
+        ByteBuffer reader = buffer.duplicate();
+        int position = findStart(since);
+        while (position < size) {
+            int length = reader.getInt(position);
+            long timestamp = reader.getLong(position + LENGTH_BYTES);
+            if (timestamp > until) {
+                return;
+            }
+            if (timestamp >= since) {
+                reader.position(position + LENGTH_BYTES + TIMESTAMP_BYTES);
+                consumer.accept(new StoredEvent(getString(reader), getString(reader), getString(reader), getString(reader),
+                        getString(reader), getString(reader), getString(reader), getString(reader), Instant.ofEpochMilli(timestamp)));
+            }
+            position += LENGTH_BYTES + length;
+        }
+    }
+
+    /**
+     * Position of the last indexed record before since; records from there on may be in range
+     */
+    private int findStart(long since) {
+
+        int low = 0;
+        int high = indexSize - 1;
+        int start = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexTimestamps[middle] < since) {
+                start = indexPositions[middle];
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return start;
+    }
+
+    private static String getString(ByteBuffer reader) {
+
+        int length = reader.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        reader.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Make appended records durable; without this they reach the disk whenever the OS writes the pages back
+     */
+    void flush() {
+
+        buffer.force();
+    }
+
+    /**
+     * The mapping itself goes away once the buffer is garbage collected; Java has no supported way to unmap it sooner
+     */
+    void delete() throws IOException {
+
+        Files.deleteIfExists(file);
+    }
+
+    Path getFile() {
+
+        return file;
+    }
+
+    int getSize() {
+
+        return size;
+    }
+
+    boolean isEmpty() {
+
+        return recordCount == 0;
+    }
+
+    long getFirstTimestamp() {
+
+        return firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+
+        return lastTimestamp;
+    }
+}
@@ -0,0 +1,354 @@
+package com.rtsio.kubemonitor.journal;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.rtsio.kubemonitor.model.MaintenanceState;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of maintenance states on local disk, so maintenance (and the replica counts saved on scale-down)
+ * survives a restart:
+ * - every change appends the maintenance's whole state; removing a finished maintenance appends a tombstone
+ * - records are framed with their length and a CRC, so a record torn by a crash is detected and cut off on recovery
+ * - a single writer thread appends everything queued since its last fsync in one write and one fsync (group commit);
+ *   callers wait on the returned future until their record is durable
+ * - every snapshotEvery records, the live states are written to a snapshot (via a temp file and atomic rename) and
+ *   the journal is truncated, so recovery reads at most one snapshot plus snapshotEvery records
+ */
+@Slf4j
+public class MaintenanceJournal {
+
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.json";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.json.tmp";
+    private static final byte TYPE_UPSERT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    // length + crc, followed by sequence + type + payload (which the length and crc cover)
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 9;
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    // Latest state of every maintenance that hasn't been removed; only touched by the writer thread after open()
+    private final Map<String, byte[]> liveStates = new LinkedHashMap<>();
+
+    private FileChannel journalChannel;
+    private Thread writer;
+    private volatile boolean stopped;
+    private long sequence;
+    private long recordsSinceSnapshot;
+
+    public MaintenanceJournal(Path directory, int snapshotEvery) {
+
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Recover the maintenance states from the last snapshot and the journal, compact them into a new snapshot and
+     * start accepting records
+     */
+    public synchronized List<MaintenanceState> open() throws IOException {
+
+        Files.createDirectories(directory);
+        long startNanos = System.nanoTime();
+        long snapshotSequence = readSnapshot();
+        journalChannel = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int replayed = replayJournal(snapshotSequence);
+        writeSnapshot();
+
+        List<MaintenanceState> states = new ArrayList<>();
+        for (byte[] state : liveStates.values()) {
+            states.add(objectMapper.readValue(state, MaintenanceState.class));
+        }
+        log.info("Recovered {} maintenance tasks from journal in {} ({} journal records replayed) in {}ms",
+                states.size(), directory, replayed, (System.nanoTime() - startNanos) / 1000000);
+
+        stopped = false;
+        writer = new Thread(this::writeLoop, "maintenance-journal");
+        writer.setDaemon(true);
+        writer.start();
+        return states;
+    }
+
+    /**
+     * Stop the writer once it has written everything already queued
+     */
+    public synchronized void close() {
+
+        stopped = true;
+        if (writer == null) {
+            return;
+        }
+        // Not interrupted: an interrupt would close the FileChannel under a write in progress
+        try {
+            writer.join(5000);
+            journalChannel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Could not close maintenance journal", e);
+        }
+        writer = null;
+    }
+
+    /**
+     * Append the current state of a maintenance; completes once it's on disk
+     */
+    public CompletableFuture<Void> record(MaintenanceState state) {
+
+        try {
+            return enqueue(TYPE_UPSERT, state.getMaintenanceRequest().getId(), objectMapper.writeValueAsBytes(state));
+        } catch (IOException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Append a tombstone for a finished maintenance, so it isn't recovered; completes once it's on disk
+     */
+    public CompletableFuture<Void> remove(String id) {
+
+        return enqueue(TYPE_REMOVE, id, id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(byte type, String id, byte[] payload) {
+
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        if (stopped) {
+            written.completeExceptionally(new IllegalStateException("Maintenance journal is closed"));
+            return written;
+        }
+        queue.add(new PendingRecord(type, id, payload, written));
+        return written;
+    }
+
+    private void writeLoop() {
+
+        List<PendingRecord> batch = new ArrayList<>();
+        while (!stopped || !queue.isEmpty()) {
+            PendingRecord first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            // Everything queued while the previous batch was being fsynced goes into this one
+            batch.add(first);
+            queue.drainTo(batch);
+            try {
+                writeBatch(batch);
+                for (PendingRecord record : batch) {
+                    record.written.complete(null);
+                }
+                if (recordsSinceSnapshot >= snapshotEvery) {
+                    writeSnapshot();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Could not write {} records to maintenance journal", batch.size(), e);
+                for (PendingRecord record : batch) {
+                    record.written.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) throws IOException {
+
+        ByteBuffer[] frames = new ByteBuffer[batch.size()];
+        long firstSequence = sequence + 1;
+        for (int i = 0; i < batch.size(); i++) {
+            frames[i] = frame(firstSequence + i, batch.get(i).type, batch.get(i).payload);
+        }
+        long position = journalChannel.size();
+        try {
+            journalChannel.position(position);
+            while (frames[frames.length - 1].hasRemaining()) {
+                journalChannel.write(frames);
+            }
+            journalChannel.force(false);
+        } catch (IOException e) {
+            // Don't leave a partial batch for later records to be appended after
+            journalChannel.truncate(position);
+            throw e;
+        }
+        sequence += batch.size();
+        recordsSinceSnapshot += batch.size();
+        for (PendingRecord record : batch) {
+            apply(record.type, record.id, record.payload);
+        }
+    }
+
+    private ByteBuffer frame(long recordSequence, byte type, byte[] payload) {
+
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_BYTES + RECORD_HEADER_BYTES + payload.length);
+        buffer.putInt(RECORD_HEADER_BYTES + payload.length);
+        buffer.putInt(0);
+        buffer.putLong(recordSequence);
+        buffer.put(type);
+        buffer.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FRAME_HEADER_BYTES, RECORD_HEADER_BYTES + payload.length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private void apply(byte type, String id, byte[] payload) {
+
+        if (type == TYPE_UPSERT) {
+            liveStates.put(id, payload);
+        } else {
+            liveStates.remove(id);
+        }
+    }
+
+    /**
+     * Replay records newer than the snapshot, stopping at the first torn or corrupt one (a crash mid-write), which is
+     * truncated away along with anything after it
+     */
+    private int replayJournal(long snapshotSequence) throws IOException {
+
+        sequence = snapshotSequence;
+        ByteBuffer journal = ByteBuffer.allocate((int) journalChannel.size());
+        while (journal.hasRemaining()) {
+            if (journalChannel.read(journal, journal.position()) < 0) {
+                break;
+            }
+        }
+        journal.flip();
+        int replayed = 0;
+        int validBytes = 0;
+        CRC32 crc = new CRC32();
+        while (journal.remaining() >= FRAME_HEADER_BYTES) {
+            int length = journal.getInt();
+            int expectedCrc = journal.getInt();
+            if (length < RECORD_HEADER_BYTES || length > journal.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(journal.array(), journal.position(), length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            long recordSequence = journal.getLong();
+            byte type = journal.get();
+            byte[] payload = new byte[length - RECORD_HEADER_BYTES];
+            journal.get(payload);
+            validBytes = journal.position();
+            // Records already in the snapshot are still here if we crashed between the snapshot and the truncation
+            if (recordSequence > snapshotSequence) {
+                String id = (type == TYPE_UPSERT ? objectMapper.readTree(payload).path("maintenanceRequest").path("id").asText()
+                        : new String(payload, StandardCharsets.UTF_8));
+                apply(type, id, payload);
+                sequence = recordSequence;
+                replayed++;
+            }
+        }
+        if (validBytes < journalChannel.size()) {
+            log.warn("Truncating {} bytes of torn or corrupt records from the end of the maintenance journal", journalChannel.size() - validBytes);
+            journalChannel.truncate(validBytes);
+            journalChannel.force(false);
+        }
+        return replayed;
+    }
+
+    private long readSnapshot() throws IOException {
+
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        JsonNode snapshot = objectMapper.readTree(snapshotFile.toFile());
+        for (JsonNode state : snapshot.path("states")) {
+            liveStates.put(state.path("maintenanceRequest").path("id").asText(), objectMapper.writeValueAsBytes(state));
+        }
+        return snapshot.path("sequence").asLong();
+    }
+
+    /**
+     * Write all live states to the snapshot, then truncate the journal; the snapshot's sequence tells recovery which
+     * journal records it already contains, in case we crash in between
+     */
+    private void writeSnapshot() throws IOException {
+
+        ObjectNode snapshot = objectMapper.createObjectNode();
+        snapshot.put("sequence", sequence);
+        ArrayNode states = snapshot.putArray("states");
+        for (byte[] state : liveStates.values()) {
+            states.add(objectMapper.readTree(state));
+        }
+        Path tempFile = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(objectMapper.writeValueAsBytes(snapshot));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        journalChannel.truncate(0);
+        journalChannel.force(false);
+        recordsSinceSnapshot = 0;
+        log.debug("Wrote maintenance snapshot with {} tasks at sequence {}", liveStates.size(), sequence);
+    }
+
+    /**
+     * Make the rename durable; not every platform allows opening a directory, in which case the rename is left to the OS
+     */
+    private void syncDirectory() {
+
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync maintenance journal directory {}", directory);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingRecord {
+
+        private final byte type;
+        private final String id;
+        private final byte[] payload;
+        private final CompletableFuture<Void> written;
+    }
+}
@@ -0,0 +1,76 @@
+package com.rtsio.kubemonitor.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Names of kubemonitor's own metrics, and helpers to record them. Meters are registered in Micrometer's global
+ * registry, which Spring Boot's Prometheus registry is added to, so classes created outside Spring (and static
+ * utilities) can record metrics too. Latency timers publish histogram buckets, for percentiles in Prometheus.
+ */
+public class KubemonitorMetrics {
+
+    public static final String EVENTS_RECEIVED = "kubemonitor.events.received";
+    public static final String EVENTS_DROPPED = "kubemonitor.events.dropped";
+    public static final String EVENTS_AGGREGATED = "kubemonitor.events.aggregated";
+    public static final String EVENT_DIGESTS = "kubemonitor.event.digests";
+    public static final String EVENT_STREAM_SUBSCRIBERS = "kubemonitor.event.stream.subscribers";
+    public static final String EVENT_STREAM_DROPPED = "kubemonitor.event.stream.dropped";
+    public static final String EVENT_STREAM_STALLED = "kubemonitor.event.stream.stalled";
+    public static final String WATCH_RECONNECTS = "kubemonitor.watch.reconnects";
+    public static final String WATCH_UPTIME = "kubemonitor.watch.uptime";
+    public static final String POD_WATCH_PODS = "kubemonitor.pod.watch.pods";
+    public static final String CONTAINER_FAILURES = "kubemonitor.container.failures";
+    public static final String GCLOUD_CALLS = "kubemonitor.gcloud.calls";
+    public static final String KUBERNETES_CALLS = "kubemonitor.kubernetes.calls";
+    public static final String SLACK_POSTS = "kubemonitor.slack.posts";
+    public static final String SLACK_MESSAGES_DROPPED = "kubemonitor.slack.messages.dropped";
+    public static final String STATUS_CHECKS = "kubemonitor.status.checks";
+    public static final String STATUS_CACHE_REQUESTS = "kubemonitor.status.cache.requests";
+    public static final String STATUS_BULKHEAD_ACTIVE = "kubemonitor.status.bulkhead.active";
+    public static final String STATUS_BULKHEAD_QUEUED = "kubemonitor.status.bulkhead.queued";
+    public static final String STATUS_BULKHEAD_REJECTED = "kubemonitor.status.bulkhead.rejected";
+    public static final String STATUS_TIMEOUTS = "kubemonitor.status.timeouts";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_ERROR = "error";
+
+    public static Counter counter(String name, String... tags) {
+
+        return Metrics.counter(name, tags);
+    }
+
+    public static Timer timer(String name, Tags tags) {
+
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    public static void recordLatency(String name, long startNanos, String outcome, String... tags) {
+
+        timer(name, Tags.of(tags).and("outcome", outcome)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Run the call, recording its latency tagged with outcome "success", or "error" if it throws
+     */
+    public static <T> T timed(String name, Supplier<T> call, String... tags) {
+
+        long startNanos = System.nanoTime();
+        String outcome = OUTCOME_ERROR;
+        try {
+            T result = call.get();
+            outcome = OUTCOME_SUCCESS;
+            return result;
+        } finally {
+            recordLatency(name, startNanos, outcome, tags);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class ClientStats {
+
+    private String project;
+    private String cluster;
+    private String masterUrl;
+    private Instant createdAt;
+    private Long rebuilds;
+    private Long lookups;
+    private Long calls;
+    private Long connectionsOpened;
+    private Long connectionsReused;
+    private Integer pooledConnections;
+    private Integer idleConnections;
+}
@@ -14,4 +14,17 @@ public class ClusterStatus {
     ClusterState state;
     List<String> issues;
     List<String> deploymentsActive;
+    Boolean workloadCacheSynced;
+    Long workloadCacheAgeMillis;
+    Long statusCacheAgeMillis;
+
+    public ClusterStatus(String project, String cluster, ClusterState state, List<String> issues, List<String> deploymentsActive) {
+
+        this.project = project;
+        this.cluster = cluster;
+        this.state = state;
+        this.issues = issues;
+        this.deploymentsActive = deploymentsActive;
+        this.workloadCacheSynced = false;
+    }
 }
@@ -0,0 +1,16 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class EventCacheStats {
+
+    private Long size;
+    private Long maxSize;
+    private Long hits;
+    private Long misses;
+    private Long evictions;
+    private Long expirations;
+}
@@ -0,0 +1,20 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Result of checking one cluster as part of a fleet-wide status request; status is null if the check
+ * timed out or failed, in which case error describes why
+ */
+@Data
+@AllArgsConstructor
+public class FleetClusterStatus {
+
+    private String project;
+    private String cluster;
+    private ClusterStatus status;
+    private Long durationMillis;
+    private Boolean timedOut;
+    private String error;
+}
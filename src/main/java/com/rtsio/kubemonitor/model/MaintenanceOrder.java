@@ -0,0 +1,12 @@
+package com.rtsio.kubemonitor.model;
+
+/**
+ * How the workloads of a maintenance are scaled:
+ * PARALLEL - all at once (up to maintenance.parallelism at a time)
+ * IN_ORDER - one at a time, scaling down in reverse list order and up in list order, each scale-up waiting for ready
+ *            replicas before the next, for workloads that depend on the ones before them
+ */
+public enum MaintenanceOrder {
+    PARALLEL,
+    IN_ORDER
+}
@@ -8,9 +8,13 @@ import java.util.List;
 @Data
 public class MaintenanceRequest {
 
+    // Assigned when scheduled
+    private String id;
     private String project;
     private String cluster;
     private Instant startTime;
     private Instant endTime;
+    // "namespace/name", or just "name" to look the workload up in every namespace
     private List<String> workloadsToScale;
+    private MaintenanceOrder order;
 }
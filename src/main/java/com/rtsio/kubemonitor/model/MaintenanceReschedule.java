@@ -0,0 +1,15 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * New times for a scheduled maintenance; a missing time is left unchanged
+ */
+@Data
+public class MaintenanceReschedule {
+
+    private Instant startTime;
+    private Instant endTime;
+}
@@ -2,8 +2,10 @@ package com.rtsio.kubemonitor.model;
 
 import lombok.Data;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents an instance of maintenance
@@ -14,11 +16,31 @@ public class MaintenanceState {
     private MaintenanceRequest maintenanceRequest;
     private MaintenanceStatus maintenanceStatus;
     private Map<String, Integer> originalReplicaCounts;
+    private List<WorkloadScaleResult> workloadResults;
 
     public MaintenanceState(MaintenanceRequest maintenanceRequest) {
 
         this.maintenanceRequest = maintenanceRequest;
         this.maintenanceStatus = MaintenanceStatus.NOT_STARTED;
-        this.originalReplicaCounts = new HashMap<>();
+        this.originalReplicaCounts = new ConcurrentHashMap<>();
+        this.workloadResults = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * For reading back from the maintenance journal
+     */
+    public MaintenanceState() {
+
+        this(null);
+    }
+
+    public void setOriginalReplicaCounts(Map<String, Integer> originalReplicaCounts) {
+
+        this.originalReplicaCounts = new ConcurrentHashMap<>(originalReplicaCounts);
+    }
+
+    public void setWorkloadResults(List<WorkloadScaleResult> workloadResults) {
+
+        this.workloadResults = new CopyOnWriteArrayList<>(workloadResults);
     }
 }
@@ -2,7 +2,10 @@ package com.rtsio.kubemonitor.model;
 
 public enum MaintenanceStatus {
     NOT_STARTED,
+    SCALING_DOWN,
     STARTED,
+    SCALING_UP,
     ENDED,
+    CANCELLED,
     ERROR
 }
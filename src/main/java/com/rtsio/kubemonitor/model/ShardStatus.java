@@ -0,0 +1,16 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ShardStatus {
+
+    private Boolean enabled;
+    private String identity;
+    private List<String> members;
+    private List<String> ownedClusters;
+}
@@ -0,0 +1,17 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SlackQueueStats {
+
+    private String webhook;
+    private Integer queueDepth;
+    private Long messagesQueued;
+    private Long messagesDropped;
+    private Long postsSent;
+    private Long postsRateLimited;
+    private Long postsFailed;
+}
@@ -0,0 +1,24 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * An event from the event history; timestamp is when kubemonitor processed it
+ */
+@Data
+@AllArgsConstructor
+public class StoredEvent {
+
+    private String project;
+    private String cluster;
+    private String namespace;
+    private String kind;
+    private String name;
+    private String reason;
+    private String type;
+    private String message;
+    private Instant timestamp;
+}
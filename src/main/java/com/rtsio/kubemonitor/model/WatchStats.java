@@ -0,0 +1,25 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class WatchStats {
+
+    private String project;
+    private String cluster;
+    private String watchId;
+    private String namespace;
+    private String fieldSelector;
+    private Boolean connected;
+    private Instant connectedSince;
+    private String resourceVersion;
+    private Long reconnects;
+    private Long relists;
+    private Long lastGapMillis;
+    private Long totalGapMillis;
+    private Long eventsReceived;
+}
@@ -0,0 +1,14 @@
+package com.rtsio.kubemonitor.model;
+
+/**
+ * Kinds of the workloads kubemonitor checks and scales, as they appear in the Kubernetes API
+ */
+public final class WorkloadKind {
+
+    public static final String DEPLOYMENT = "Deployment";
+    public static final String STATEFUL_SET = "StatefulSet";
+
+    private WorkloadKind() {
+
+    }
+}
@@ -0,0 +1,10 @@
+package com.rtsio.kubemonitor.model;
+
+public enum WorkloadScaleOutcome {
+    SCALED,
+    READY,
+    NOT_READY,
+    NOT_FOUND,
+    SKIPPED,
+    FAILED
+}
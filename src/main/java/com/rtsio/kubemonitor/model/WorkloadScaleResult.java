@@ -0,0 +1,27 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * What happened to one workload in one phase (scale-down or scale-up) of a maintenance
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkloadScaleResult {
+
+    private String workload;
+    private String kind;
+    private String phase;
+    private Integer fromReplicas;
+    private Integer toReplicas;
+    private Integer readyReplicas;
+    private WorkloadScaleOutcome outcome;
+    private Instant startedAt;
+    private Long durationMillis;
+    private String error;
+}
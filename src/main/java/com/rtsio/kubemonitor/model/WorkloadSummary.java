@@ -0,0 +1,17 @@
+package com.rtsio.kubemonitor.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The parts of a Deployment or StatefulSet needed for status checks and maintenance
+ */
+@Data
+@AllArgsConstructor
+public class WorkloadSummary {
+
+    private String namespace;
+    private String name;
+    private Integer replicas;
+    private Integer readyReplicas;
+}
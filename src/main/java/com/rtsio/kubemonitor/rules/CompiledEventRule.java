@@ -0,0 +1,60 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.EventRuleConfig;
+import io.fabric8.kubernetes.api.model.Event;
+import lombok.Getter;
+
+import java.util.regex.Pattern;
+
+/**
+ * An event rule from configuration with its message pattern and template compiled
+ */
+@Getter
+public class CompiledEventRule {
+
+    private final String name;
+    private final String type;
+    private final String reason;
+    private final String kind;
+    private final Pattern messagePattern;
+    private final EventTypeToggle enabledBy;
+    private final EventRuleAction action;
+    private final MessageTemplate template;
+    private final boolean dedupe;
+
+    public CompiledEventRule(EventRuleConfig config) {
+
+        if (config.getType() == null || config.getReason() == null || config.getAction() == null) {
+            throw new IllegalArgumentException("Event rule " + config.getName() + " needs a type, reason and action");
+        }
+        this.name = config.getName();
+        this.type = config.getType();
+        this.reason = config.getReason();
+        this.kind = config.getKind();
+        this.messagePattern = (config.getMessagePattern() == null ? null : Pattern.compile(config.getMessagePattern()));
+        this.enabledBy = (config.getEnabledBy() == null ? null : EventTypeToggle.fromConfigName(config.getEnabledBy()));
+        this.action = EventRuleAction.valueOf(config.getAction().toUpperCase().replace('-', '_'));
+        if (action == EventRuleAction.NOTIFY && config.getTemplate() == null) {
+            throw new IllegalArgumentException("Event rule " + config.getName() + " notifies, but has no template");
+        }
+        this.template = (config.getTemplate() == null ? null : MessageTemplate.compile(config.getTemplate()));
+        this.dedupe = Boolean.TRUE.equals(config.getDedupe());
+    }
+
+    /**
+     * Type and reason are already known to match, as rules are looked up by them
+     */
+    public boolean matches(Event event) {
+
+        if (kind != null && !kind.equals(event.getInvolvedObject().getKind())) {
+            return false;
+        }
+        return messagePattern == null || (event.getMessage() != null && messagePattern.matcher(event.getMessage()).find());
+    }
+
+    public boolean isEnabledFor(ClusterConfig clusterConfig) {
+
+        return enabledBy == null || enabledBy.isEnabled(clusterConfig);
+    }
+}
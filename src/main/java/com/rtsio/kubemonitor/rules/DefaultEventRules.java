@@ -0,0 +1,26 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.config.EventRuleConfig;
+
+import java.util.List;
+
+/**
+ * Rules used when monitoring-config.json has no "event-rules": deployment detection, probe failure kills,
+ * liveness/readiness probe failures and OOM kills
+ */
+public class DefaultEventRules {
+
+    private static final String PROBE_TEMPLATE = "{project}: {message} - {name}";
+
+    public static List<EventRuleConfig> get() {
+
+        return List.of(
+                new EventRuleConfig("deployment-scaled", "Normal", "ScalingReplicaSet", "Deployment", null, null, "track-deployment", null, false),
+                new EventRuleConfig("statefulset-pod-created", "Normal", "SuccessfulCreate", "StatefulSet", null, null, "track-deployment", null, false),
+                new EventRuleConfig("probe-kill", "Normal", "Killing", null, "failed (liveness|readiness) probe", null, "notify", PROBE_TEMPLATE, false),
+                new EventRuleConfig("liveness-probe", "Warning", "Unhealthy", null, "Liveness", "liveness-probe", "notify", PROBE_TEMPLATE, true),
+                new EventRuleConfig("readiness-probe", "Warning", "Unhealthy", null, "Readiness", "readiness-probe", "notify", PROBE_TEMPLATE, true),
+                new EventRuleConfig("oom-kill", "Warning", "OOMKilling", null, null, "oom-kill", "notify", "{project}: OOM kill on node {name}", false)
+        );
+    }
+}
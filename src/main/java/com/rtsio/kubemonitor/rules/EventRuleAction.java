@@ -0,0 +1,6 @@
+package com.rtsio.kubemonitor.rules;
+
+public enum EventRuleAction {
+    NOTIFY,
+    TRACK_DEPLOYMENT
+}
@@ -0,0 +1,87 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.EventRuleConfig;
+import io.fabric8.kubernetes.api.model.Event;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches events against the configured event rules. Rules are compiled once and indexed by type, then reason, so an
+ * event is only checked against the few rules for its type and reason, in configuration order; the first rule whose
+ * kind and message pattern match decides what happens to the event.
+ */
+@Slf4j
+public class EventRuleEngine {
+
+    // type -> reason -> rules, in configuration order
+    private final Map<String, Map<String, List<CompiledEventRule>>> rulesByTypeAndReason = new LinkedHashMap<>();
+
+    public EventRuleEngine(List<EventRuleConfig> ruleConfigs) {
+
+        for (EventRuleConfig ruleConfig : ruleConfigs) {
+            CompiledEventRule rule = new CompiledEventRule(ruleConfig);
+            rulesByTypeAndReason
+                    .computeIfAbsent(rule.getType(), type -> new LinkedHashMap<>())
+                    .computeIfAbsent(rule.getReason(), reason -> new ArrayList<>())
+                    .add(rule);
+        }
+        log.info("Compiled {} event rules", ruleConfigs.size());
+    }
+
+    /**
+     * Returns the first rule matching the event, or null if no rule does
+     */
+    public CompiledEventRule match(Event event) {
+
+        if (event.getType() == null || event.getReason() == null) {
+            return null;
+        }
+        Map<String, List<CompiledEventRule>> rulesByReason = rulesByTypeAndReason.get(event.getType());
+        if (rulesByReason == null) {
+            return null;
+        }
+        List<CompiledEventRule> rules = rulesByReason.getOrDefault(event.getReason(), Collections.emptyList());
+        for (CompiledEventRule rule : rules) {
+            if (rule.matches(event)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Field selectors for the events any rule enabled for the cluster can act on, one per type and reason. Kind is
+     * added to the selector when all rules for a type and reason have the same kind.
+     */
+    public List<String> getFieldSelectors(ClusterConfig clusterConfig) {
+
+        List<String> selectors = new ArrayList<>();
+        for (Map.Entry<String, Map<String, List<CompiledEventRule>>> typeRules : rulesByTypeAndReason.entrySet()) {
+            for (Map.Entry<String, List<CompiledEventRule>> reasonRules : typeRules.getValue().entrySet()) {
+                boolean anyEnabled = false;
+                Set<String> kinds = new HashSet<>();
+                for (CompiledEventRule rule : reasonRules.getValue()) {
+                    anyEnabled |= rule.isEnabledFor(clusterConfig);
+                    kinds.add(rule.getKind());
+                }
+                if (!anyEnabled) {
+                    continue;
+                }
+                String selector = "type=" + typeRules.getKey() + ",reason=" + reasonRules.getKey();
+                if (kinds.size() == 1 && !kinds.contains(null)) {
+                    selector += ",involvedObject.kind=" + kinds.iterator().next();
+                }
+                selectors.add(selector);
+            }
+        }
+        return selectors;
+    }
+}
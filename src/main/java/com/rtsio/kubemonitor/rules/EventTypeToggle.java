@@ -0,0 +1,47 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterEventConfig;
+
+/**
+ * The per-cluster switches under events.types that a rule can be tied to with "enabled-by"
+ */
+public enum EventTypeToggle {
+    READINESS_PROBE("readiness-probe"),
+    LIVENESS_PROBE("liveness-probe"),
+    OOM_KILL("oom-kill");
+
+    private final String configName;
+
+    EventTypeToggle(String configName) {
+
+        this.configName = configName;
+    }
+
+    public boolean isEnabled(ClusterConfig clusterConfig) {
+
+        ClusterEventConfig.EventTypes types = clusterConfig.getEvents().getTypes();
+        Boolean enabled;
+        switch (this) {
+            case READINESS_PROBE:
+                enabled = types.getReadinessProbe();
+                break;
+            case LIVENESS_PROBE:
+                enabled = types.getLivenessProbe();
+                break;
+            default:
+                enabled = types.getOutOfMemoryKill();
+        }
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    public static EventTypeToggle fromConfigName(String configName) {
+
+        for (EventTypeToggle toggle : values()) {
+            if (toggle.configName.equals(configName)) {
+                return toggle;
+            }
+        }
+        throw new IllegalArgumentException("Unknown event type \"" + configName + "\" in enabled-by");
+    }
+}
@@ -0,0 +1,93 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import io.fabric8.kubernetes.api.model.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A notification template such as "{project}: {message} - {name}", split once into literal text and placeholders
+ * so rendering is only appending. Supported placeholders: {project}, {cluster}, {type}, {reason}, {kind}, {name},
+ * {namespace} (of the involved object) and {message}. There is no escaping, so a '{' always starts a placeholder.
+ */
+public class MessageTemplate {
+
+    private enum Field {
+        PROJECT, CLUSTER, TYPE, REASON, KIND, NAME, NAMESPACE, MESSAGE
+    }
+
+    // Each part is either a literal String or a Field
+    private final List<Object> parts;
+
+    private MessageTemplate(List<Object> parts) {
+
+        this.parts = parts;
+    }
+
+    public static MessageTemplate compile(String template) {
+
+        List<Object> parts = new ArrayList<>();
+        int position = 0;
+        while (position < template.length()) {
+            int open = template.indexOf('{', position);
+            if (open < 0) {
+                parts.add(template.substring(position));
+                break;
+            }
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed { in template \"" + template + "\"");
+            }
+            if (open > position) {
+                parts.add(template.substring(position, open));
+            }
+            String placeholder = template.substring(open + 1, close);
+            try {
+                parts.add(Field.valueOf(placeholder.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown placeholder {" + placeholder + "} in template \"" + template + "\"");
+            }
+            position = close + 1;
+        }
+        return new MessageTemplate(parts);
+    }
+
+    public String render(ClusterConfig clusterConfig, Event event) {
+
+        StringBuilder message = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                message.append((String) part);
+                continue;
+            }
+            switch ((Field) part) {
+                case PROJECT:
+                    message.append(clusterConfig.getProject());
+                    break;
+                case CLUSTER:
+                    message.append(clusterConfig.getName());
+                    break;
+                case TYPE:
+                    message.append(event.getType());
+                    break;
+                case REASON:
+                    message.append(event.getReason());
+                    break;
+                case KIND:
+                    message.append(event.getInvolvedObject().getKind());
+                    break;
+                case NAME:
+                    message.append(event.getInvolvedObject().getName());
+                    break;
+                case NAMESPACE:
+                    message.append(event.getInvolvedObject().getNamespace());
+                    break;
+                case MESSAGE:
+                    message.append(event.getMessage());
+                    break;
+            }
+        }
+        return message.toString();
+    }
+}
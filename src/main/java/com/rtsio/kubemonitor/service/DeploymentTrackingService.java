@@ -1,14 +1,22 @@
 package com.rtsio.kubemonitor.service;
 
+import com.rtsio.kubemonitor.config.ClusterConfig;
 import com.rtsio.kubemonitor.model.DetectedDeployment;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Deployment as in: the action of deploying new code to a cluster, not the Kubernetes workload type
@@ -20,65 +28,156 @@ public class DeploymentTrackingService {
     @Autowired
     private NotificationService notificationService;
 
-    private List<DetectedDeployment> knownDeployments = new ArrayList<>();
+    @Value("${deployments.default-rollout-window-minutes}")
+    private Integer defaultRolloutWindowMinutes;
+
+    // "project/cluster" -> workload name -> its active deployment
+    private final Map<String, Map<String, DetectedDeployment>> activeDeployments = new ConcurrentHashMap<>();
+
+    // Every deployment in the index, ordered by expiration, so expired ones can be removed without scanning
+    private final DelayQueue<DeploymentExpiry> expiryQueue = new DelayQueue<>();
 
     /**
-     * Add a workload for given project/cluster to a list, with an "expiration" time.
-     * Once expired (current time > expiration timestamp), a deployment is considered finished.
+     * Add a workload for given project/cluster to the index, with an "expiration" time (now plus the workload's rollout
+     * window). Until then a deployment is considered in progress; once expired it is considered finished and dropped.
      * This is a simple way to avoid listening for events that signify deployment is done, as these
      * don't really exist anyway.
      */
-    public void addDeployment(String project, String cluster, String workloadName) {
+    public void addDeployment(ClusterConfig clusterConfig, String workloadName) {
 
+        String project = clusterConfig.getProject();
+        String cluster = clusterConfig.getName();
         log.info("Received request to add deployment of {} to {}, {}", workloadName, project, cluster);
-        // TODO: configurable deployment duration (long startup services)
-        DetectedDeployment newDeployment = new DetectedDeployment(
-                project,
-                cluster,
-                workloadName,
-                Instant.now().plus(3, ChronoUnit.MINUTES)
-        );
-
-        // Multiple events can be emitted for one logical deployment - if there's an "active deployment", ignore these
-        // TODO: remove deployments instead of continually adding them and filtering - how to do this in a thread-safe manner?
-        Boolean canAdd = true;
-        for (DetectedDeployment previousDeployment : knownDeployments) {
-            if (previousDeployment.getCluster().equals(cluster) &&
-                    previousDeployment.getProject().equals((project)) &&
-                    previousDeployment.getWorkloadName().equals(workloadName)) {
-                if (Instant.now().compareTo(previousDeployment.getExpiration()) > 0) {
-                    log.debug("{} is considered expired, can add a new deployment", previousDeployment);
-                } else {
-                    log.debug("{} is currently active, ignoring new event", previousDeployment);
-                    canAdd = false;
-                }
+        // Multiple events can be emitted for one logical deployment - if there's an "active deployment", ignore these.
+        // The cluster's map is only changed inside compute on its entry, so removeExpiredDeployments can't drop it
+        // while a deployment is being added to it.
+        Instant now = Instant.now();
+        DetectedDeployment[] added = new DetectedDeployment[1];
+        activeDeployments.compute(clusterKey(project, cluster), (key, clusterDeployments) -> {
+            if (clusterDeployments == null) {
+                clusterDeployments = new ConcurrentHashMap<>();
             }
-        }
-        if (canAdd) {
-            log.info("Added {} to current deployments", newDeployment);
-            knownDeployments.add(newDeployment);
+            DetectedDeployment previousDeployment = clusterDeployments.get(workloadName);
+            if (previousDeployment != null && isActive(previousDeployment, now)) {
+                log.debug("{} is currently active, ignoring new event", previousDeployment);
+                return clusterDeployments;
+            }
+            added[0] = new DetectedDeployment(project, cluster, workloadName, now.plus(getRolloutWindow(clusterConfig, workloadName)));
+            clusterDeployments.put(workloadName, added[0]);
+            return clusterDeployments;
+        });
+        if (added[0] != null) {
+            expiryQueue.add(new DeploymentExpiry(added[0]));
+            log.info("Added {} to current deployments", added[0]);
             notificationService.notifyDeployment(project, cluster, workloadName);
         }
     }
 
     public List<String> getActiveDeploymentsForCluster(String project, String cluster) {
 
+        Map<String, DetectedDeployment> clusterDeployments = activeDeployments.get(clusterKey(project, cluster));
+        if (clusterDeployments == null) {
+            return new ArrayList<>();
+        }
+        Instant now = Instant.now();
         List<String> deployments = new ArrayList<>();
-        for (DetectedDeployment detectedDeployment : knownDeployments) {
-            if (detectedDeployment.getCluster().equals(cluster) && detectedDeployment.getProject().equals((project))) {
-                if (Instant.now().compareTo(detectedDeployment.getExpiration()) > 0) {
-                    log.debug("{} is considered expired, ignoring", detectedDeployment);
-                } else {
-                    log.debug("{} is currently active, returning", detectedDeployment);
-                    deployments.add(detectedDeployment.getWorkloadName());
-                }
+        for (DetectedDeployment detectedDeployment : clusterDeployments.values()) {
+            // Expired deployments linger until the next sweep
+            if (isActive(detectedDeployment, now)) {
+                deployments.add(detectedDeployment.getWorkloadName());
             }
         }
         return deployments;
     }
 
+    /**
+     * All deployments currently in progress
+     */
     public List<DetectedDeployment> getAll() {
 
-        return knownDeployments;
+        Instant now = Instant.now();
+        List<DetectedDeployment> deployments = new ArrayList<>();
+        for (Map<String, DetectedDeployment> clusterDeployments : activeDeployments.values()) {
+            for (DetectedDeployment detectedDeployment : clusterDeployments.values()) {
+                if (isActive(detectedDeployment, now)) {
+                    deployments.add(detectedDeployment);
+                }
+            }
+        }
+        return deployments;
+    }
+
+    /**
+     * Forget the cluster's deployments, e.g. because another replica watches its events now. Their expiries stay
+     * queued, but only ever remove the exact deployment they were queued for.
+     */
+    public void removeCluster(String project, String cluster) {
+
+        activeDeployments.remove(clusterKey(project, cluster));
+    }
+
+    /**
+     * Remove expired deployments from the index, oldest first, stopping at the first one still active
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void removeExpiredDeployments() {
+
+        DeploymentExpiry expiry;
+        while ((expiry = expiryQueue.poll()) != null) {
+            DetectedDeployment detectedDeployment = expiry.getDeployment();
+            String clusterKey = clusterKey(detectedDeployment.getProject(), detectedDeployment.getCluster());
+            activeDeployments.computeIfPresent(clusterKey, (key, clusterDeployments) -> {
+                // Only remove this exact deployment, a newer one for the same workload may have replaced it
+                clusterDeployments.remove(detectedDeployment.getWorkloadName(), detectedDeployment);
+                return (clusterDeployments.isEmpty() ? null : clusterDeployments);
+            });
+            log.debug("{} expired, removed from current deployments", detectedDeployment);
+        }
+    }
+
+    private Duration getRolloutWindow(ClusterConfig clusterConfig, String workloadName) {
+
+        Map<String, Integer> rolloutWindows = (clusterConfig.getExpectedWorkloads() == null ? null : clusterConfig.getExpectedWorkloads().getRolloutWindows());
+        if (rolloutWindows != null && rolloutWindows.containsKey(workloadName)) {
+            return Duration.ofMinutes(rolloutWindows.get(workloadName));
+        }
+        return Duration.ofMinutes(defaultRolloutWindowMinutes);
+    }
+
+    private static boolean isActive(DetectedDeployment detectedDeployment, Instant now) {
+
+        return now.compareTo(detectedDeployment.getExpiration()) <= 0;
+    }
+
+    private static String clusterKey(String project, String cluster) {
+
+        return project + "/" + cluster;
+    }
+
+    private static class DeploymentExpiry implements Delayed {
+
+        private final DetectedDeployment deployment;
+
+        private DeploymentExpiry(DetectedDeployment deployment) {
+
+            this.deployment = deployment;
+        }
+
+        private DetectedDeployment getDeployment() {
+
+            return deployment;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+
+            return unit.convert(Duration.between(Instant.now(), deployment.getExpiration()).toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+
+            return deployment.getExpiration().compareTo(((DeploymentExpiry) other).deployment.getExpiration());
+        }
     }
 }
@@ -1,68 +1,364 @@
 package com.rtsio.kubemonitor.service;
 
-import com.rtsio.kubemonitor.KubeUtils;
-import com.rtsio.kubemonitor.config.BaseMonitoringConfig;
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.client.WorkloadLister;
 import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
 import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.exception.InvalidMaintenanceRequestException;
+import com.rtsio.kubemonitor.exception.MaintenanceConflictException;
+import com.rtsio.kubemonitor.exception.MaintenanceNotFoundException;
+import com.rtsio.kubemonitor.journal.MaintenanceJournal;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
 import com.rtsio.kubemonitor.model.*;
 import com.rtsio.kubemonitor.model.MaintenanceRequest;
 import com.rtsio.kubemonitor.model.MaintenanceState;
 import com.rtsio.kubemonitor.model.MaintenanceStatus;
-import io.fabric8.kubernetes.api.model.Cluster;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
-import io.fabric8.kubernetes.api.model.apps.DeploymentStatus;
 import io.fabric8.kubernetes.api.model.apps.StatefulSet;
-import io.fabric8.kubernetes.api.model.apps.StatefulSetStatus;
-import io.fabric8.kubernetes.client.Config;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class MaintenanceService {
 
+    private static final String SCALE_DOWN = "scale-down";
+    private static final String SCALE_UP = "scale-up";
+    private static final String RESTORE = "restore";
+    private static final long READY_POLL_MILLIS = 2000;
+
     @Autowired
-    private BaseMonitoringConfig baseMonitoringConfig;
+    private ClusterRegistry clusterRegistry;
 
     @Autowired
     private NotificationService notificationService;
 
-    private List<MaintenanceState> maintenanceStates = new ArrayList<>();
+    @Autowired
+    private ClusterClientRegistry clientRegistry;
+
+    @Value("${kubernetes.list.page-size}")
+    private Integer listPageSize;
+
+    @Value("${maintenance.parallelism}")
+    private Integer parallelism;
+
+    @Value("${maintenance.ready-timeout-seconds}")
+    private Long readyTimeoutSeconds;
+
+    @Value("${maintenance.archive-size}")
+    private Integer archiveSize;
+
+    @Value("${maintenance.journal.enabled}")
+    private Boolean journalEnabled;
+
+    @Value("${maintenance.journal.directory}")
+    private String journalDirectory;
+
+    @Value("${maintenance.journal.snapshot-every}")
+    private Integer journalSnapshotEvery;
+
+    // Active maintenance is saved here on every change and recovered from it on startup; null if disabled
+    private MaintenanceJournal journal;
+
+    // Maintenance that hasn't finished yet, by id
+    private final Map<String, MaintenanceState> activeMaintenance = new ConcurrentHashMap<>();
+    // Pending start or end timer of each active maintenance, by id
+    private final Map<String, ScheduledFuture<?>> timers = new ConcurrentHashMap<>();
+    // Most recently finished (ended, failed or cancelled) maintenance first, capped at maintenance.archive-size
+    private final Deque<MaintenanceState> archivedMaintenance = new ArrayDeque<>();
+
+    // Fires each maintenance's timer at its start or end time; its queue is ordered by time, so only due timers are touched
+    private ScheduledExecutorService timerExecutor;
+    // Maintenance tasks run here, up to maintenance.parallelism at a time, so waiting for workloads to become ready
+    // doesn't hold up timers or other clusters' maintenance
+    private ExecutorService taskExecutor;
+    // Scaling of individual workloads, shared by all maintenance tasks
+    private ExecutorService scaleExecutor;
 
-    public void scheduleMaintenance(MaintenanceRequest maintenanceRequest) {
+    @PostConstruct
+    public void startExecutors() throws IOException {
 
+        timerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "maintenance-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger taskThreads = new AtomicInteger();
+        taskExecutor = new ThreadPoolExecutor(parallelism, parallelism,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "maintenance-" + taskThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AtomicInteger scaleThreads = new AtomicInteger();
+        scaleExecutor = new ThreadPoolExecutor(parallelism, parallelism,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "maintenance-scale-" + scaleThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (journalEnabled) {
+            journal = new MaintenanceJournal(Paths.get(journalDirectory), journalSnapshotEvery);
+            recoverMaintenance(journal.open());
+        }
+    }
+
+    @PreDestroy
+    public void stopExecutors() {
+
+        timerExecutor.shutdownNow();
+        taskExecutor.shutdownNow();
+        scaleExecutor.shutdownNow();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Pick up maintenance from before a restart where it left off. Interrupted scaling is run again: scale-down keeps
+     * the replica counts it had already saved, and scale-up only restores them.
+     */
+    private synchronized void recoverMaintenance(List<MaintenanceState> recovered) {
+
+        for (MaintenanceState maintenance : recovered) {
+            MaintenanceRequest request = maintenance.getMaintenanceRequest();
+            log.info("Resuming {} maintenance {} for project: {}, cluster: {}", maintenance.getMaintenanceStatus(), request.getId(), request.getProject(), request.getCluster());
+            activeMaintenance.put(request.getId(), maintenance);
+            switch (maintenance.getMaintenanceStatus()) {
+                case NOT_STARTED:
+                    scheduleTimer(maintenance, request.getStartTime());
+                    break;
+                case STARTED:
+                    scheduleTimer(maintenance, request.getEndTime());
+                    break;
+                case SCALING_DOWN:
+                case SCALING_UP:
+                    taskExecutor.submit(() -> runMaintenanceTask(maintenance));
+                    break;
+                default:
+                    archive(maintenance);
+            }
+        }
+    }
+
+    /**
+     * Schedule scale-down at the request's start time (immediately if it has passed); scale-up is scheduled for the
+     * end time once scale-down has finished
+     */
+    public synchronized MaintenanceRequest scheduleMaintenance(MaintenanceRequest maintenanceRequest) {
+
+        if (maintenanceRequest.getProject() == null || maintenanceRequest.getCluster() == null) {
+            throw new InvalidMaintenanceRequestException("Maintenance needs a project and a cluster");
+        }
+        if (maintenanceRequest.getStartTime() == null || maintenanceRequest.getEndTime() == null) {
+            throw new InvalidMaintenanceRequestException("Maintenance needs a start time and an end time");
+        }
+        if (maintenanceRequest.getWorkloadsToScale() == null) {
+            throw new InvalidMaintenanceRequestException("Maintenance needs workloads to scale");
+        }
+        if (!maintenanceRequest.getEndTime().isAfter(maintenanceRequest.getStartTime())) {
+            throw new MaintenanceConflictException("Maintenance end time must be after its start time");
+        }
+        maintenanceRequest.setId(UUID.randomUUID().toString());
         MaintenanceState newMaintenance = new MaintenanceState(maintenanceRequest);
-        maintenanceStates.add(newMaintenance);
+        persist(newMaintenance);
+        activeMaintenance.put(maintenanceRequest.getId(), newMaintenance);
+        scheduleTimer(newMaintenance, maintenanceRequest.getStartTime());
         notificationService.notifyNewMaintenanceRequest(maintenanceRequest.getProject(), maintenanceRequest.getCluster(), maintenanceRequest);
+        return maintenanceRequest;
     }
 
     /**
-     * This is a (frankly hilarious) hack around running something like Quartz and scheduling triggers at the specified time
+     * Cancel maintenance that hasn't started yet. Once workloads are scaled down, reschedule the end time instead.
      */
-    @Scheduled(fixedDelay = 10000)
-    public void checkMaintenanceRequests() {
+    public synchronized MaintenanceState cancelMaintenance(String id) {
 
-        Instant now = Instant.now();
-        for (MaintenanceState maintenance : maintenanceStates) {
-            try {
-                if (maintenance.getMaintenanceStatus() == MaintenanceStatus.NOT_STARTED && now.compareTo(maintenance.getMaintenanceRequest().getStartTime()) >= 0) {
-                    runMaintenanceTask(maintenance);
-                }
-                if (maintenance.getMaintenanceStatus() == MaintenanceStatus.STARTED && now.compareTo(maintenance.getMaintenanceRequest().getEndTime()) >= 0) {
-                    runMaintenanceTask(maintenance);
-                }
-            } catch (Exception e) {
-                log.error("Exception while executing maintenance", e);
-                maintenance.setMaintenanceStatus(MaintenanceStatus.ERROR);
+        MaintenanceState maintenance = getActiveMaintenance(id);
+        if (maintenance.getMaintenanceStatus() != MaintenanceStatus.NOT_STARTED) {
+            throw new MaintenanceConflictException("Maintenance " + id + " is " + maintenance.getMaintenanceStatus() + ", only maintenance that hasn't started can be cancelled; reschedule its end time instead");
+        }
+        if (journal != null) {
+            journal.remove(id).join();
+        }
+        cancelTimer(id);
+        maintenance.setMaintenanceStatus(MaintenanceStatus.CANCELLED);
+        archive(maintenance);
+        log.info("Cancelled maintenance {} for project: {}, cluster: {}", id, maintenance.getMaintenanceRequest().getProject(), maintenance.getMaintenanceRequest().getCluster());
+        return maintenance;
+    }
+
+    /**
+     * Move the start and/or end time of maintenance that hasn't started, or the end time of maintenance whose
+     * workloads are scaled down
+     */
+    public synchronized MaintenanceState rescheduleMaintenance(String id, Instant startTime, Instant endTime) {
+
+        MaintenanceState maintenance = getActiveMaintenance(id);
+        MaintenanceRequest request = maintenance.getMaintenanceRequest();
+        MaintenanceStatus status = maintenance.getMaintenanceStatus();
+        if (status == MaintenanceStatus.STARTED && startTime != null && !startTime.equals(request.getStartTime())) {
+            throw new MaintenanceConflictException("Maintenance " + id + " has already started, only its end time can be changed");
+        }
+        if (status != MaintenanceStatus.NOT_STARTED && status != MaintenanceStatus.STARTED) {
+            throw new MaintenanceConflictException("Maintenance " + id + " is " + status + " and can't be rescheduled right now");
+        }
+        Instant newStartTime = (startTime == null ? request.getStartTime() : startTime);
+        Instant newEndTime = (endTime == null ? request.getEndTime() : endTime);
+        if (!newEndTime.isAfter(newStartTime)) {
+            throw new MaintenanceConflictException("Maintenance end time must be after its start time");
+        }
+        request.setStartTime(newStartTime);
+        request.setEndTime(newEndTime);
+        cancelTimer(id);
+        scheduleTimer(maintenance, (status == MaintenanceStatus.NOT_STARTED ? newStartTime : newEndTime));
+        persist(maintenance);
+        log.info("Rescheduled maintenance {} to {} - {}", id, newStartTime, newEndTime);
+        return maintenance;
+    }
+
+    public List<MaintenanceState> getMaintenanceStates() {
+
+        return new ArrayList<>(activeMaintenance.values());
+    }
+
+    public List<MaintenanceState> getArchivedMaintenance() {
+
+        synchronized (archivedMaintenance) {
+            return new ArrayList<>(archivedMaintenance);
+        }
+    }
+
+    private MaintenanceState getActiveMaintenance(String id) {
+
+        MaintenanceState maintenance = activeMaintenance.get(id);
+        if (maintenance == null) {
+            throw new MaintenanceNotFoundException("No scheduled maintenance " + id);
+        }
+        return maintenance;
+    }
+
+    private void scheduleTimer(MaintenanceState maintenance, Instant time) {
+
+        String id = maintenance.getMaintenanceRequest().getId();
+        long delayMillis = Math.max(0, Duration.between(Instant.now(), time).toMillis());
+        timers.put(id, timerExecutor.schedule(() -> onTimer(id), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void cancelTimer(String id) {
+
+        ScheduledFuture<?> timer = timers.remove(id);
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * Start or end time reached; hand the scaling over to the task executor
+     */
+    private synchronized void onTimer(String id) {
+
+        timers.remove(id);
+        MaintenanceState maintenance = activeMaintenance.get(id);
+        if (maintenance == null) {
+            return;
+        }
+        if (maintenance.getMaintenanceStatus() == MaintenanceStatus.NOT_STARTED) {
+            maintenance.setMaintenanceStatus(MaintenanceStatus.SCALING_DOWN);
+        } else if (maintenance.getMaintenanceStatus() == MaintenanceStatus.STARTED) {
+            maintenance.setMaintenanceStatus(MaintenanceStatus.SCALING_UP);
+        } else {
+            return;
+        }
+        persistQuietly(maintenance);
+        taskExecutor.submit(() -> runMaintenanceTask(maintenance));
+    }
+
+    /**
+     * After scale-down, wait for the end time; after scale-up (or an error), the maintenance is done
+     */
+    private synchronized void onTaskFinished(MaintenanceState maintenance) {
+
+        if (maintenance.getMaintenanceStatus() == MaintenanceStatus.STARTED) {
+            // The end time may have been rescheduled as soon as the status changed; the request holds the latest one
+            cancelTimer(maintenance.getMaintenanceRequest().getId());
+            scheduleTimer(maintenance, maintenance.getMaintenanceRequest().getEndTime());
+            persistQuietly(maintenance);
+        } else {
+            archive(maintenance);
+        }
+    }
+
+    /**
+     * Wait until the maintenance's current state is in the journal
+     */
+    private void persist(MaintenanceState maintenance) {
+
+        if (journal != null) {
+            journal.record(maintenance).join();
+        }
+    }
+
+    private void persistQuietly(MaintenanceState maintenance) {
+
+        try {
+            persist(maintenance);
+        } catch (CompletionException e) {
+            log.error("Could not save maintenance {} to journal", maintenance.getMaintenanceRequest().getId(), e.getCause());
+        }
+    }
+
+    private void archive(MaintenanceState maintenance) {
+
+        String id = maintenance.getMaintenanceRequest().getId();
+        activeMaintenance.remove(id);
+        if (journal != null && maintenance.getMaintenanceStatus() != MaintenanceStatus.CANCELLED) {
+            journal.remove(id).exceptionally(e -> {
+                log.error("Could not remove maintenance {} from journal", id, e);
+                return null;
+            });
+        }
+        synchronized (archivedMaintenance) {
+            archivedMaintenance.addFirst(maintenance);
+            while (archivedMaintenance.size() > archiveSize) {
+                archivedMaintenance.removeLast();
             }
         }
     }
@@ -71,96 +367,308 @@ public class MaintenanceService {
 
         String project = maintenanceState.getMaintenanceRequest().getProject();
         String cluster = maintenanceState.getMaintenanceRequest().getCluster();
-        ClusterConfig clusterConfig = findClusterConfig(project, cluster);
-        List<String> maintenanceWorkloads = maintenanceState.getMaintenanceRequest().getWorkloadsToScale();
-        MaintenanceStatus lifecycle = maintenanceState.getMaintenanceStatus();
+        boolean scalingDown = (maintenanceState.getMaintenanceStatus() == MaintenanceStatus.SCALING_DOWN);
         log.info("Running maintenance task for project: {}, cluster: {}, current maintenance status: {}", project, cluster, maintenanceState.getMaintenanceStatus());
-
         try {
-            KubeUtils.setClusterKubeconfig(project, clusterConfig.getZone(), cluster);
-        } catch (ClusterDoesNotExistException e) {
-            log.error("Could not run maintenance task for project: {}, cluster: {}, as the cluster doesn't exist!", project, cluster);
+            ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
+            KubernetesClient client;
+            try {
+                client = clientRegistry.getClient(clusterConfig);
+            } catch (ClusterDoesNotExistException e) {
+                log.error("Could not run maintenance task for project: {}, cluster: {}, as the cluster doesn't exist!", project, cluster);
+                maintenanceState.setMaintenanceStatus(MaintenanceStatus.ERROR);
+                return;
+            }
+
+            try {
+                List<ScaleTarget> targets = resolveTargets(client, clusterConfig, maintenanceState.getMaintenanceRequest().getWorkloadsToScale());
+                List<WorkloadScaleResult> results = scaleAll(client, clusterConfig, maintenanceState, targets, scalingDown);
+                maintenanceState.getWorkloadResults().addAll(results);
+            } catch (KubernetesClientException e) {
+                clientRegistry.refreshClient(clusterConfig);
+                throw new RuntimeException("Error in Kubernetes client", e);
+            }
+
+            maintenanceState.setMaintenanceStatus(scalingDown ? MaintenanceStatus.STARTED : MaintenanceStatus.ENDED);
+            notificationService.notifyMaintenanceUpdate(project, cluster, maintenanceState);
+            log.info("Finished running maintenance task for project: {}, cluster: {}, new maintenance status: {}", project, cluster, maintenanceState.getMaintenanceStatus());
+        } catch (Exception e) {
+            log.error("Exception while executing maintenance", e);
+            if (scalingDown) {
+                restoreReplicas(maintenanceState);
+            }
+            maintenanceState.setMaintenanceStatus(MaintenanceStatus.ERROR);
+        } finally {
+            onTaskFinished(maintenanceState);
+        }
+    }
+
+    /**
+     * Scale whatever a failed scale-down already took down back to its saved replica count, since an ERROR maintenance
+     * is never scaled up. Readiness isn't waited for; the maintenance is archived as ERROR either way.
+     */
+    private void restoreReplicas(MaintenanceState maintenanceState) {
+
+        String project = maintenanceState.getMaintenanceRequest().getProject();
+        String cluster = maintenanceState.getMaintenanceRequest().getCluster();
+        Map<String, Integer> originalReplicaCounts = maintenanceState.getOriginalReplicaCounts();
+        if (originalReplicaCounts.isEmpty()) {
             return;
         }
-        String oauthToken = KubeUtils.getGcloudToken();
-        String kubectlContext = KubeUtils.getGkeContextName(project, clusterConfig.getZone(), cluster);
-        log.debug("Setting context to {}", kubectlContext);
-
-        Config config = Config.autoConfigure(kubectlContext);
-        config.setOauthToken(oauthToken);
-
-        /**
-         * Scan all StatefulSets/Deployments;
-         *   If maintenanceState == NOT_STARTED, record original replica counts and scale to 0
-         *   If maintenanceState == STARTED, scale to original replica counts
-         */
-        try (KubernetesClient client = new DefaultKubernetesClient(config)) {
-
-            List<StatefulSet> statefulSets = client.apps().statefulSets().inAnyNamespace().list().getItems();
-            for (StatefulSet set : statefulSets) {
-                String setName = set.getMetadata().getName();
-                String setNamespace = set.getMetadata().getNamespace();
-                StatefulSetStatus setStatus = set.getStatus();
-                Integer expectedReplicas = (setStatus.getReplicas() == null ? 0 : setStatus.getReplicas());
-                Integer readyReplicas = (setStatus.getReadyReplicas() == null ? 0 : setStatus.getReadyReplicas());
-                log.debug("Found stateful set {} in namespace {}, ready: {}, expected: {}", setName, setNamespace, readyReplicas, expectedReplicas);
-                if (maintenanceWorkloads.contains(setName)) {
-                    if (lifecycle == MaintenanceStatus.NOT_STARTED) {
-                        maintenanceState.getOriginalReplicaCounts().put(setName, readyReplicas);
-                        client.apps().statefulSets().inNamespace(setNamespace).withName(setName).scale(0);
-                        log.debug("Scaled set {} to 0", setName);
-                    } else if (lifecycle == MaintenanceStatus.STARTED) {
-                        Integer originalReplicas = maintenanceState.getOriginalReplicaCounts().get(setName);
-                        client.apps().statefulSets().inNamespace(setNamespace).withName(setName).scale(originalReplicas);
-                        log.debug("Scaled set {} to {}", setName, originalReplicas);
+        log.info("Restoring {} workloads after failed scale-down in project: {}, cluster: {}", originalReplicaCounts.size(), project, cluster);
+        try {
+            ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
+            KubernetesClient client = clientRegistry.getClient(clusterConfig);
+            for (Map.Entry<String, Integer> entry : originalReplicaCounts.entrySet()) {
+                String[] namespaceAndName = entry.getKey().split("/", 2);
+                Instant startedAt = Instant.now();
+                long startNanos = System.nanoTime();
+                ScaleTarget target = new ScaleTarget(entry.getKey(), null, namespaceAndName[0], namespaceAndName[1]);
+                try {
+                    target.setKind(findKind(client, target.getNamespace(), target.getName()));
+                    if (target.getKind() == null) {
+                        maintenanceState.getWorkloadResults().add(result(target, RESTORE, null, null, null, WorkloadScaleOutcome.NOT_FOUND, startedAt, startNanos, null));
+                        continue;
                     }
+                    scale(client, clusterConfig, target, entry.getValue());
+                    maintenanceState.getWorkloadResults().add(result(target, RESTORE, 0, entry.getValue(), null, WorkloadScaleOutcome.SCALED, startedAt, startNanos, null));
+                } catch (KubernetesClientException e) {
+                    log.error("Could not restore {} in project: {}, cluster: {}", entry.getKey(), project, cluster, e);
+                    maintenanceState.getWorkloadResults().add(result(target, RESTORE, null, null, null, WorkloadScaleOutcome.FAILED, startedAt, startNanos, e.getMessage()));
                 }
             }
+        } catch (ClusterDoesNotExistException | RuntimeException e) {
+            log.error("Could not restore workloads after failed scale-down in project: {}, cluster: {}", project, cluster, e);
+        }
+    }
+
+    /**
+     * Scale every target, concurrently or one at a time depending on the requested order
+     */
+    private List<WorkloadScaleResult> scaleAll(KubernetesClient client,
+                                               ClusterConfig clusterConfig,
+                                               MaintenanceState maintenanceState,
+                                               List<ScaleTarget> targets,
+                                               boolean scalingDown) {
+
+        List<WorkloadScaleResult> results = new ArrayList<>();
+        if (maintenanceState.getMaintenanceRequest().getOrder() == MaintenanceOrder.IN_ORDER) {
+            List<ScaleTarget> orderedTargets = new ArrayList<>(targets);
+            if (scalingDown) {
+                Collections.reverse(orderedTargets);
+            }
+            for (ScaleTarget target : orderedTargets) {
+                results.add(scaleDownOrUp(client, clusterConfig, maintenanceState, target, scalingDown));
+            }
+            return results;
+        }
+
+        List<CompletableFuture<WorkloadScaleResult>> scalings = new ArrayList<>();
+        for (ScaleTarget target : targets) {
+            scalings.add(CompletableFuture.supplyAsync(() -> scaleDownOrUp(client, clusterConfig, maintenanceState, target, scalingDown), scaleExecutor));
+        }
+        for (CompletableFuture<WorkloadScaleResult> scaling : scalings) {
+            results.add(scaling.join());
+        }
+        return results;
+    }
+
+    private WorkloadScaleResult scaleDownOrUp(KubernetesClient client,
+                                              ClusterConfig clusterConfig,
+                                              MaintenanceState maintenanceState,
+                                              ScaleTarget target,
+                                              boolean scalingDown) {
 
-            List<Deployment> deployments = client.apps().deployments().inAnyNamespace().list().getItems();
-            for (Deployment deployment : deployments) {
-                String deploymentName = deployment.getMetadata().getName();
-                String deploymentNamespace = deployment.getMetadata().getNamespace();
-                DeploymentStatus deploymentStatus = deployment.getStatus();
-                Integer expectedReplicas = (deploymentStatus.getReplicas() == null ? 0 : deploymentStatus.getReplicas());
-                Integer readyReplicas = (deploymentStatus.getReadyReplicas() == null ? 0 : deploymentStatus.getReadyReplicas());
-                log.debug("Found deployment {} in namespace {}, ready: {}, expected: {}", deploymentName, deploymentNamespace, readyReplicas, expectedReplicas);
-                if (maintenanceWorkloads.contains(deploymentName)) {
-                    if (lifecycle == MaintenanceStatus.NOT_STARTED) {
-                        maintenanceState.getOriginalReplicaCounts().put(deploymentName, readyReplicas);
-                        client.apps().deployments().inNamespace(deploymentNamespace).withName(deploymentName).scale(0);
-                        log.debug("Scaled deployment {} to 0", deploymentName);
-                    } else if (lifecycle == MaintenanceStatus.STARTED) {
-                        Integer originalReplicas = maintenanceState.getOriginalReplicaCounts().get(deploymentName);
-                        client.apps().deployments().inNamespace(deploymentNamespace).withName(deploymentName).scale(originalReplicas);
-                        log.debug("Scaled deployment {} to {}", deploymentName, originalReplicas);
+        String phase = (scalingDown ? SCALE_DOWN : SCALE_UP);
+        Instant startedAt = Instant.now();
+        long startNanos = System.nanoTime();
+        try {
+            if (target.getKind() == null) {
+                return result(target, phase, null, null, null, WorkloadScaleOutcome.NOT_FOUND, startedAt, startNanos, null);
+            }
+            if (scalingDown) {
+                // Already saved if this scale-down was interrupted by a restart, and the workload may be at 0 by now
+                Integer replicas = maintenanceState.getOriginalReplicaCounts().get(target.getQualifiedName());
+                if (replicas == null) {
+                    replicas = getReplicas(client, target);
+                    if (replicas == null) {
+                        return result(target, phase, null, null, null, WorkloadScaleOutcome.NOT_FOUND, startedAt, startNanos, null);
                     }
+                    maintenanceState.getOriginalReplicaCounts().put(target.getQualifiedName(), replicas);
+                    // The count must be on disk before the workload goes to 0, or a restart would lose it
+                    persist(maintenanceState);
                 }
+                scale(client, clusterConfig, target, 0);
+                log.debug("Scaled {} {} to 0", target.getKind(), target.getQualifiedName());
+                return result(target, phase, replicas, 0, null, WorkloadScaleOutcome.SCALED, startedAt, startNanos, null);
             }
 
+            Integer originalReplicas = maintenanceState.getOriginalReplicaCounts().get(target.getQualifiedName());
+            if (originalReplicas == null) {
+                // Wasn't found (or failed) when scaling down, so there's nothing to restore
+                return result(target, phase, null, null, null, WorkloadScaleOutcome.SKIPPED, startedAt, startNanos, null);
+            }
+            scale(client, clusterConfig, target, originalReplicas);
+            log.debug("Scaled {} {} to {}", target.getKind(), target.getQualifiedName(), originalReplicas);
+            Integer readyReplicas = waitForReadyReplicas(client, target, originalReplicas);
+            WorkloadScaleOutcome outcome = (readyReplicas >= originalReplicas ? WorkloadScaleOutcome.READY : WorkloadScaleOutcome.NOT_READY);
+            return result(target, phase, 0, originalReplicas, readyReplicas, outcome, startedAt, startNanos, null);
         } catch (KubernetesClientException e) {
-            throw new RuntimeException("Error in Kubernetes client", e);
+            log.error("Could not {} {} {} in project: {}, cluster: {}", phase, target.getKind(), target.getQualifiedName(), clusterConfig.getProject(), clusterConfig.getName(), e);
+            return result(target, phase, null, null, null, WorkloadScaleOutcome.FAILED, startedAt, startNanos, e.getMessage());
+        } catch (CompletionException e) {
+            log.error("Could not save replica count of {} {} to journal, not scaling it", target.getKind(), target.getQualifiedName(), e.getCause());
+            return result(target, phase, null, null, null, WorkloadScaleOutcome.FAILED, startedAt, startNanos, "Could not save replica count: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Poll the workload until it has the given number of ready replicas, or maintenance.ready-timeout-seconds passes;
+     * returns the last seen number of ready replicas
+     */
+    private Integer waitForReadyReplicas(KubernetesClient client, ScaleTarget target, int replicas) {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(readyTimeoutSeconds);
+        int readyReplicas = getReadyReplicas(client, target);
+        while (readyReplicas < replicas && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(READY_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            readyReplicas = getReadyReplicas(client, target);
+        }
+        return readyReplicas;
+    }
+
+    /**
+     * Find the namespace and kind of each workload to scale. "namespace/name" workloads are looked up directly when
+     * scaled; plain names are found with a single paged listing of the cluster's StatefulSets and Deployments.
+     * Targets that can't be found have no kind.
+     */
+    private List<ScaleTarget> resolveTargets(KubernetesClient client, ClusterConfig clusterConfig, List<String> workloads) {
+
+        Set<String> unqualifiedNames = new HashSet<>();
+        for (String workload : workloads) {
+            if (!workload.contains("/")) {
+                unqualifiedNames.add(workload);
+            }
+        }
+        List<WorkloadSummary> statefulSets = new ArrayList<>();
+        List<WorkloadSummary> deployments = new ArrayList<>();
+        if (!unqualifiedNames.isEmpty()) {
+            String project = clusterConfig.getProject();
+            String cluster = clusterConfig.getName();
+            statefulSets = KubemonitorMetrics.timed(KubemonitorMetrics.KUBERNETES_CALLS,
+                    () -> WorkloadLister.listStatefulSets(client, listPageSize, unqualifiedNames::contains),
+                    "project", project, "cluster", cluster, "operation", "list", "resource", "statefulsets");
+            deployments = KubemonitorMetrics.timed(KubemonitorMetrics.KUBERNETES_CALLS,
+                    () -> WorkloadLister.listDeployments(client, listPageSize, unqualifiedNames::contains),
+                    "project", project, "cluster", cluster, "operation", "list", "resource", "deployments");
+        }
+
+        List<ScaleTarget> targets = new ArrayList<>();
+        for (String workload : workloads) {
+            if (workload.contains("/")) {
+                String[] namespaceAndName = workload.split("/", 2);
+                targets.add(new ScaleTarget(workload, findKind(client, namespaceAndName[0], namespaceAndName[1]), namespaceAndName[0], namespaceAndName[1]));
+                continue;
+            }
+            // A plain name may exist in several namespaces; all of them are scaled, as before names were qualified
+            boolean found = false;
+            for (WorkloadSummary set : statefulSets) {
+                if (set.getName().equals(workload)) {
+                    targets.add(new ScaleTarget(workload, WorkloadKind.STATEFUL_SET, set.getNamespace(), workload));
+                    found = true;
+                }
+            }
+            for (WorkloadSummary deployment : deployments) {
+                if (deployment.getName().equals(workload)) {
+                    targets.add(new ScaleTarget(workload, WorkloadKind.DEPLOYMENT, deployment.getNamespace(), workload));
+                    found = true;
+                }
+            }
+            if (!found) {
+                targets.add(new ScaleTarget(workload, null, null, workload));
+            }
+        }
+        return targets;
+    }
+
+    private String findKind(KubernetesClient client, String namespace, String name) {
+
+        if (client.apps().deployments().inNamespace(namespace).withName(name).get() != null) {
+            return WorkloadKind.DEPLOYMENT;
+        }
+        if (client.apps().statefulSets().inNamespace(namespace).withName(name).get() != null) {
+            return WorkloadKind.STATEFUL_SET;
+        }
+        return null;
+    }
+
+    private Integer getReplicas(KubernetesClient client, ScaleTarget target) {
+
+        if (target.getKind().equals(WorkloadKind.DEPLOYMENT)) {
+            Deployment deployment = client.apps().deployments().inNamespace(target.getNamespace()).withName(target.getName()).get();
+            return (deployment == null ? null : zeroIfNull(deployment.getSpec().getReplicas()));
         }
+        StatefulSet set = client.apps().statefulSets().inNamespace(target.getNamespace()).withName(target.getName()).get();
+        return (set == null ? null : zeroIfNull(set.getSpec().getReplicas()));
+    }
+
+    private int getReadyReplicas(KubernetesClient client, ScaleTarget target) {
+
+        if (target.getKind().equals(WorkloadKind.DEPLOYMENT)) {
+            Deployment deployment = client.apps().deployments().inNamespace(target.getNamespace()).withName(target.getName()).get();
+            return (deployment == null || deployment.getStatus() == null ? 0 : zeroIfNull(deployment.getStatus().getReadyReplicas()));
+        }
+        StatefulSet set = client.apps().statefulSets().inNamespace(target.getNamespace()).withName(target.getName()).get();
+        return (set == null || set.getStatus() == null ? 0 : zeroIfNull(set.getStatus().getReadyReplicas()));
+    }
 
-        if (maintenanceState.getMaintenanceStatus() == MaintenanceStatus.NOT_STARTED) {
-            maintenanceState.setMaintenanceStatus(MaintenanceStatus.STARTED);
-        } else if (maintenanceState.getMaintenanceStatus() == MaintenanceStatus.STARTED) {
-            maintenanceState.setMaintenanceStatus(MaintenanceStatus.ENDED);
+    private void scale(KubernetesClient client, ClusterConfig clusterConfig, ScaleTarget target, int replicas) {
+
+        String project = clusterConfig.getProject();
+        String cluster = clusterConfig.getName();
+        if (target.getKind().equals(WorkloadKind.DEPLOYMENT)) {
+            KubemonitorMetrics.timed(KubemonitorMetrics.KUBERNETES_CALLS,
+                    () -> client.apps().deployments().inNamespace(target.getNamespace()).withName(target.getName()).scale(replicas),
+                    "project", project, "cluster", cluster, "operation", "scale", "resource", "deployments");
+        } else {
+            KubemonitorMetrics.timed(KubemonitorMetrics.KUBERNETES_CALLS,
+                    () -> client.apps().statefulSets().inNamespace(target.getNamespace()).withName(target.getName()).scale(replicas),
+                    "project", project, "cluster", cluster, "operation", "scale", "resource", "statefulsets");
         }
-        notificationService.notifyMaintenanceUpdate(project, cluster, maintenanceState);
-        log.info("Finished running maintenance task for project: {}, cluster: {}, new maintenance status: {}", project, cluster, maintenanceState.getMaintenanceStatus());
+    }
+
+    private WorkloadScaleResult result(ScaleTarget target, String phase, Integer fromReplicas, Integer toReplicas, Integer readyReplicas,
+                                       WorkloadScaleOutcome outcome, Instant startedAt, long startNanos, String error) {
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new WorkloadScaleResult(target.getQualifiedName(), target.getKind(), phase, fromReplicas, toReplicas, readyReplicas, outcome, startedAt, durationMillis, error);
+    }
+
+    private static int zeroIfNull(Integer value) {
+
+        return (value == null ? 0 : value);
     }
 
     /**
-     * Find configuration for given project and cluster name
+     * A workload to scale: the entry in workloadsToScale it came from, and where it was found (kind is null if it wasn't)
      */
-    private ClusterConfig findClusterConfig(String projectName, String clusterName) {
-
-        return baseMonitoringConfig
-                .getClusters()
-                .stream()
-                .filter(clusterConfig -> clusterConfig.getProject().equals(projectName) && clusterConfig.getName().equals(clusterName))
-                .findAny()
-                .orElseThrow(() -> new RuntimeException("Could not find " + clusterName + " in " + projectName));
+    @Data
+    @AllArgsConstructor
+    private static class ScaleTarget {
+
+        private String workload;
+        private String kind;
+        private String namespace;
+        private String name;
+
+        private String getQualifiedName() {
+
+            return (namespace == null ? name : namespace + "/" + name);
+        }
     }
 }
@@ -1,128 +1,465 @@
 package com.rtsio.kubemonitor.service;
 
-import com.rtsio.kubemonitor.KubeUtils;
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.client.WorkloadLister;
 import com.rtsio.kubemonitor.config.ClusterConfig;
-import com.rtsio.kubemonitor.config.BaseMonitoringConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
 import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.exception.StatusTimeoutException;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
 import com.rtsio.kubemonitor.model.ClusterState;
 import com.rtsio.kubemonitor.model.ClusterStatus;
-import io.fabric8.kubernetes.api.model.apps.Deployment;
-import io.fabric8.kubernetes.api.model.apps.DeploymentStatus;
-import io.fabric8.kubernetes.api.model.apps.StatefulSet;
-import io.fabric8.kubernetes.api.model.apps.StatefulSetStatus;
-import io.fabric8.kubernetes.client.Config;
-import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import com.rtsio.kubemonitor.model.FleetClusterStatus;
+import com.rtsio.kubemonitor.model.WorkloadSummary;
+import com.rtsio.kubemonitor.watcher.ClusterHealth;
+import com.rtsio.kubemonitor.watcher.ClusterWorkloadInformer;
+import com.rtsio.kubemonitor.watcher.WorkloadCache;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @Slf4j
 public class MonitorService {
 
     @Autowired
-    private BaseMonitoringConfig baseMonitoringConfig;
+    private ClusterRegistry clusterRegistry;
 
     @Autowired
     private DeploymentTrackingService deploymentTrackingService;
 
+    @Autowired
+    private WorkloadCache workloadCache;
+
+    @Autowired
+    private ClusterClientRegistry clientRegistry;
+
+    @Autowired
+    private StatusBulkheads statusBulkheads;
+
+    @Value("${kubernetes.list.page-size}")
+    private Integer listPageSize;
+
+    @Value("${status.fleet.parallelism}")
+    private Integer fleetParallelism;
+
+    @Value("${status.fleet.queue-size}")
+    private Integer fleetQueueSize;
+
+    @Value("${status.fleet.cluster-timeout-millis}")
+    private Long clusterTimeoutMillis;
+
+    @Value("${status.request-timeout-millis}")
+    private Long statusTimeoutMillis;
+
+    @Value("${status.cache.ttl-seconds}")
+    private Long statusCacheTtlSeconds;
+
+    @Value("${status.cache.max-stale-seconds}")
+    private Long statusCacheMaxStaleSeconds;
+
+    @Value("${status.cache.refresh-threads}")
+    private Integer statusCacheRefreshThreads;
+
+    private ExecutorService fleetExecutor;
+
+    // Background status refreshes; fleet checks wait on listings, so these can't share the fleet executor
+    private ExecutorService refreshExecutor;
+
+    // Last listed status of clusters without a synced informer, by "project/cluster"
+    private final Map<String, StatusCacheEntry> statusCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void startFleetExecutor() {
+
+        fleetExecutor = new ThreadPoolExecutor(fleetParallelism, fleetParallelism,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(fleetQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "fleet-status");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // At most one refresh per cluster is queued at a time, so the queue is bounded by the number of clusters
+        refreshExecutor = new ThreadPoolExecutor(statusCacheRefreshThreads, statusCacheRefreshThreads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "status-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        clusterRegistry.addListener(this::onClustersChanged);
+    }
+
+    @PreDestroy
+    public void stopFleetExecutor() {
+
+        fleetExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Forget cached statuses of removed clusters. A changed cluster is removed and added again, so its status is
+     * listed anew with its new config. A listing still in progress only updates the evicted entry.
+     */
+    private void onClustersChanged(List<ClusterConfig> removed, List<ClusterConfig> added) {
+
+        for (ClusterConfig clusterConfig : removed) {
+            statusCache.remove(clusterConfig.getProject() + "/" + clusterConfig.getName());
+        }
+    }
+
+    /**
+     * Get state of every configured cluster (optionally only those in the given project).
+     * Clusters are checked in parallel on a bounded executor and each check has its own deadline, so a slow or
+     * unreachable cluster is reported as timed out instead of holding up the rest of the results.
+     */
+    public List<FleetClusterStatus> getFleetStatus(String project) {
+
+        List<CompletableFuture<FleetClusterStatus>> checks = new ArrayList<>();
+        for (ClusterConfig clusterConfig : clusterRegistry.getClusters()) {
+            if (project == null || clusterConfig.getProject().equals(project)) {
+                checks.add(checkClusterAsync(clusterConfig.getProject(), clusterConfig.getName()));
+            }
+        }
+        List<FleetClusterStatus> results = new ArrayList<>();
+        for (CompletableFuture<FleetClusterStatus> check : checks) {
+            results.add(check.join());
+        }
+        return results;
+    }
+
+    /**
+     * Check one cluster on the fleet executor. Its deadline starts once the check starts running, so clusters queued
+     * behind status.fleet.parallelism others aren't timed out before they've had a chance. Interrupting a check would
+     * not stop it (listings block in OkHttp), so instead the check itself gives up at the deadline: it waits for
+     * another caller's listing only until then, and its own listing calls time out (see getCachedClusterStatus).
+     */
+    private CompletableFuture<FleetClusterStatus> checkClusterAsync(String project, String cluster) {
+
+        long startTime = System.nanoTime();
+        CompletableFuture<ClusterStatus> check = new CompletableFuture<>();
+        try {
+            fleetExecutor.execute(() -> {
+                check.orTimeout(clusterTimeoutMillis, TimeUnit.MILLISECONDS);
+                try {
+                    check.complete(getClusterStatus(project, cluster, clusterTimeoutMillis));
+                } catch (Throwable e) {
+                    check.completeExceptionally(e);
+                }
+            });
+            return check
+                    .handle((status, error) -> {
+                        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                        if (error == null) {
+                            return new FleetClusterStatus(project, cluster, status, durationMillis, false, null);
+                        }
+                        Throwable cause = (error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                        if (cause instanceof TimeoutException) {
+                            log.warn("Status check for project: {}, cluster: {} timed out after {}ms", project, cluster, clusterTimeoutMillis);
+                            return new FleetClusterStatus(project, cluster, null, durationMillis, true, "Timed out after " + clusterTimeoutMillis + "ms");
+                        }
+                        log.error("Status check for project: {}, cluster: {} failed", project, cluster, cause);
+                        return new FleetClusterStatus(project, cluster, null, durationMillis, false, String.valueOf(cause.getMessage()));
+                    });
+        } catch (RejectedExecutionException e) {
+            log.warn("Status check queue full, skipping project: {}, cluster: {}", project, cluster);
+            return CompletableFuture.completedFuture(new FleetClusterStatus(project, cluster, null, 0L, false, "Too many status checks in progress"));
+        }
+    }
+
     /**
      * Get state of the given cluster.
      * 1. Find configuration for project and cluster
-     * 2. Call gcloud to make sure kubeconfig and cluster context exist (this is important to do every time as cluster IP may change between calls)
-     * 3. Call gcloud to get oauth token (gcloud automatically refreshes if token is expired, otherwise it will serve up existing token)
-     * 4. Compare configuration to cluster state using KubernetesClient, specifically looking for:
-     *    - StatefulSets and Deployments where readyReplicas does not match replicas
-     *    - StatefulSets and Deployments defined in configuration but not present in cluster
+     * 2. If the cluster has a synced workload informer, return the last state of its health model (see ClusterHealth)
+     * 3. Otherwise return the cached status (see getCachedClusterStatus), listing the cluster when there is none
      */
     public ClusterStatus getClusterStatus(String project, String cluster) {
 
+        return getClusterStatus(project, cluster, statusTimeoutMillis);
+    }
+
+    /**
+     * getClusterStatus, failing with a TimeoutException (wrapped in a CompletionException) if it has to wait for
+     * another caller's listing for longer than timeoutMillis
+     */
+    private ClusterStatus getClusterStatus(String project, String cluster, long timeoutMillis) {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return KubemonitorMetrics.timed(KubemonitorMetrics.STATUS_CHECKS, () -> findClusterStatus(project, cluster, deadline), "project", project, "cluster", cluster);
+    }
+
+    /**
+     * getClusterStatus on the cluster's bulkhead (see StatusBulkheads), failing with StatusTimeoutException after
+     * status.request-timeout-millis. Throws ClusterBusyException right away if the cluster's bulkhead is full.
+     */
+    public CompletableFuture<ClusterStatus> getClusterStatusAsync(String project, String cluster) {
+
+        clusterRegistry.getCluster(project, cluster);
+        return statusBulkheads.submit(project, cluster, () -> getClusterStatus(project, cluster))
+                .orTimeout(statusTimeoutMillis, TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    Throwable cause = (error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    if (cause instanceof TimeoutException) {
+                        KubemonitorMetrics.counter(KubemonitorMetrics.STATUS_TIMEOUTS, "project", project, "cluster", cluster).increment();
+                        log.warn("Status request for project: {}, cluster: {} timed out after {}ms", project, cluster, statusTimeoutMillis);
+                        throw new StatusTimeoutException("Status of " + cluster + " in " + project + " timed out after " + statusTimeoutMillis + "ms");
+                    }
+                    throw (cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause));
+                });
+    }
+
+    private ClusterStatus findClusterStatus(String project, String cluster, long deadline) {
+
+        clusterRegistry.getCluster(project, cluster);
+        ClusterWorkloadInformer informer = workloadCache.getInformer(project, cluster);
+        if (informer != null && informer.hasSynced()) {
+            ClusterHealth.Snapshot health = informer.getHealth().getSnapshot();
+            Instant lastSyncTime = informer.getLastSyncTime();
+            Long cacheAgeMillis = (lastSyncTime == null ? null : Duration.between(lastSyncTime, Instant.now()).toMillis());
+            return new ClusterStatus(project, cluster, health.getState(), health.getIssues(), health.getDeploymentsActive(), true, cacheAgeMillis, null);
+        }
+        return getCachedClusterStatus(project, cluster, deadline);
+    }
+
+    /**
+     * Listing a cluster is slow, so its result is cached per cluster:
+     * - within status.cache.ttl-seconds, the cached status is returned
+     * - after that, up to status.cache.max-stale-seconds, the stale status is returned right away while one
+     *   background refresh runs
+     * - with no (usable) cached status, the first caller lists the cluster and concurrent callers wait for its result
+     *   rather than listing it again
+     * Failed listings aren't cached; everyone waiting on one gets its error.
+     * Callers wait for another caller's listing until the deadline (System.nanoTime()); their own listing is bounded
+     * by kubernetes.list.call-timeout-millis per request instead, as it can't be abandoned halfway.
+     */
+    private ClusterStatus getCachedClusterStatus(String project, String cluster, long deadline) {
+
+        StatusCacheEntry entry = statusCache.computeIfAbsent(project + "/" + cluster, key -> new StatusCacheEntry());
+        CompletableFuture<ClusterStatus> listing;
+        boolean listHere = false;
+        synchronized (entry) {
+            if (entry.status != null) {
+                long ageMillis = Duration.between(entry.listedAt, Instant.now()).toMillis();
+                if (ageMillis < TimeUnit.SECONDS.toMillis(statusCacheTtlSeconds)) {
+                    countStatusCacheRequest(project, cluster, "hit");
+                    return withStatusCacheAge(entry.status, ageMillis);
+                }
+                if (ageMillis < TimeUnit.SECONDS.toMillis(statusCacheMaxStaleSeconds)) {
+                    if (entry.listing == null) {
+                        refreshInBackground(entry, project, cluster);
+                    }
+                    countStatusCacheRequest(project, cluster, "stale");
+                    return withStatusCacheAge(entry.status, ageMillis);
+                }
+            }
+            if (entry.listing == null) {
+                entry.listing = new CompletableFuture<>();
+                listHere = true;
+            }
+            listing = entry.listing;
+        }
+        countStatusCacheRequest(project, cluster, (listHere ? "miss" : "coalesced"));
+        if (listHere) {
+            refresh(entry, listing, project, cluster);
+        }
+        try {
+            return withStatusCacheAge(listing.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS), 0);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            // The listing goes on and is cached for the next caller
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Must be called holding the entry's lock. Runs on the refresh executor: a fleet check can be waiting for this
+     * listing, so running it on the fleet executor could leave every fleet thread waiting for a refresh queued behind
+     * them.
+     */
+    private void refreshInBackground(StatusCacheEntry entry, String project, String cluster) {
+
+        CompletableFuture<ClusterStatus> listing = new CompletableFuture<>();
+        entry.listing = listing;
+        try {
+            refreshExecutor.execute(() -> refresh(entry, listing, project, cluster));
+        } catch (RejectedExecutionException e) {
+            log.warn("Could not start refreshing status of project: {}, cluster: {}", project, cluster);
+            entry.listing = null;
+            listing.completeExceptionally(e);
+        }
+    }
+
+    private void refresh(StatusCacheEntry entry, CompletableFuture<ClusterStatus> listing, String project, String cluster) {
+
+        try {
+            ClusterStatus status = checkClusterStatus(project, cluster);
+            synchronized (entry) {
+                entry.status = status;
+                entry.listedAt = Instant.now();
+            }
+            listing.complete(status);
+        } catch (RuntimeException e) {
+            listing.completeExceptionally(e);
+        } finally {
+            synchronized (entry) {
+                if (entry.listing == listing) {
+                    entry.listing = null;
+                }
+            }
+            // Still pending only if an Error was thrown; waiters must not wait on it forever
+            listing.completeExceptionally(new IllegalStateException("Listing status of " + cluster + " in " + project + " failed"));
+        }
+    }
+
+    /**
+     * Cached statuses are shared, so callers get a copy with its own age
+     */
+    private ClusterStatus withStatusCacheAge(ClusterStatus status, long ageMillis) {
+
+        return new ClusterStatus(status.getProject(), status.getCluster(), status.getState(), status.getIssues(),
+                status.getDeploymentsActive(), status.getWorkloadCacheSynced(), status.getWorkloadCacheAgeMillis(), ageMillis);
+    }
+
+    private void countStatusCacheRequest(String project, String cluster, String result) {
+
+        KubemonitorMetrics.counter(KubemonitorMetrics.STATUS_CACHE_REQUESTS, "project", project, "cluster", cluster, "result", result).increment();
+    }
+
+    /**
+     * List StatefulSets and Deployments page by page using the cluster's listing client, keeping summaries
+     * of the expected ones only (its endpoint is re-resolved via gcloud periodically and on errors, as cluster IP may
+     * change between calls), and compare configuration to cluster state (see findDiscrepancies)
+     */
+    private ClusterStatus checkClusterStatus(String project, String cluster) {
+
         log.info("Getting cluster status for project: {}, cluster: {}", project, cluster);
-        ClusterConfig clusterConfig = findClusterConfig(project, cluster);
+        ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
         List<String> deploymentsInProgress = deploymentTrackingService.getActiveDeploymentsForCluster(project, cluster);
+        log.debug("No synced workload cache for project: {}, cluster: {}, listing workloads", project, cluster);
 
+        KubernetesClient client;
         try {
-            KubeUtils.setClusterKubeconfig(clusterConfig.getProject(), clusterConfig.getZone(), clusterConfig.getName());
+            client = clientRegistry.getListingClient(clusterConfig);
         } catch (ClusterDoesNotExistException e) {
             return new ClusterStatus(project, cluster, ClusterState.DOWN, null, null);
         }
 
-        String oauthToken = KubeUtils.getGcloudToken();
-        String kubectlContext = KubeUtils.getGkeContextName(clusterConfig.getProject(), clusterConfig.getZone(), clusterConfig.getName());
+        List<String> foundDiscrepancies;
+        try {
+            Set<String> expectedStatefulSets = new HashSet<>(clusterConfig.getExpectedWorkloads().getStatefulSets());
+            Set<String> expectedDeployments = new HashSet<>(clusterConfig.getExpectedWorkloads().getDeployments());
+            List<WorkloadSummary> statefulSets = KubemonitorMetrics.timed(KubemonitorMetrics.KUBERNETES_CALLS,
+                    () -> WorkloadLister.listStatefulSets(client, listPageSize, expectedStatefulSets::contains),
+                    "project", project, "cluster", cluster, "operation", "list", "resource", "statefulsets");
+            List<WorkloadSummary> deployments = KubemonitorMetrics.timed(KubemonitorMetrics.KUBERNETES_CALLS,
+                    () -> WorkloadLister.listDeployments(client, listPageSize, expectedDeployments::contains),
+                    "project", project, "cluster", cluster, "operation", "list", "resource", "deployments");
+            foundDiscrepancies = findDiscrepancies(clusterConfig, statefulSets, deployments, deploymentsInProgress);
+        } catch (KubernetesClientException e) {
+            // The cluster endpoint may have moved; re-resolve it so the next call can succeed
+            clientRegistry.refreshClient(clusterConfig);
+            throw new RuntimeException("Error in Kubernetes client", e);
+        }
 
-        Config config = Config.autoConfigure(kubectlContext);
-        config.setOauthToken(oauthToken);
+        if (foundDiscrepancies.isEmpty()) {
+            return new ClusterStatus(project, cluster, ClusterState.OK, new ArrayList<>(), deploymentsInProgress);
+        } else {
+            return new ClusterStatus(project, cluster, ClusterState.DEGRADED, foundDiscrepancies, deploymentsInProgress);
+        }
+    }
+
+    /**
+     * Compare configuration to the given cluster workloads, specifically looking for:
+     *    - StatefulSets and Deployments where readyReplicas does not match replicas
+     *    - StatefulSets and Deployments defined in configuration but not present in cluster
+     */
+    public List<String> findDiscrepancies(ClusterConfig clusterConfig,
+                                          List<WorkloadSummary> statefulSets,
+                                          List<WorkloadSummary> deployments,
+                                          List<String> deploymentsInProgress) {
 
         List<String> expectedStatefulSets = clusterConfig.getExpectedWorkloads().getStatefulSets();
         List<String> expectedDeployments = clusterConfig.getExpectedWorkloads().getDeployments();
-        List<String> foundStatefulSets = new ArrayList<>();
-        List<String> foundDeployments = new ArrayList<>();
+        Set<String> expectedStatefulSetNames = new HashSet<>(expectedStatefulSets);
+        Set<String> expectedDeploymentNames = new HashSet<>(expectedDeployments);
+        Set<String> foundStatefulSets = new HashSet<>();
+        Set<String> foundDeployments = new HashSet<>();
         List<String> foundDiscrepancies = new ArrayList<>();
+        Set<String> inProgress = new HashSet<>(deploymentsInProgress);
 
         // Loop through all deployments and statefulsets, noting any replica counts that appear out of sync
-        try (KubernetesClient client = new DefaultKubernetesClient(config)) {
-
-            List<StatefulSet> statefulSets = client.apps().statefulSets().inAnyNamespace().list().getItems();
-            for (StatefulSet set : statefulSets) {
-                String setName = set.getMetadata().getName();
-                StatefulSetStatus setStatus = set.getStatus();
-                Integer expectedReplicas = (setStatus.getReplicas() == null ? 0 : setStatus.getReplicas());
-                Integer readyReplicas = (setStatus.getReadyReplicas() == null ? 0 : setStatus.getReadyReplicas());
-                foundStatefulSets.add(setName);
-                if (!expectedReplicas.equals(readyReplicas) && !deploymentsInProgress.contains(setName) && expectedStatefulSets.contains(setName)) {
-                    foundDiscrepancies.add(String.format("StatefulSet %s expected %d replicas, but only %d ready", setName, expectedReplicas, readyReplicas));
-                }
+        for (WorkloadSummary set : statefulSets) {
+            String setName = set.getName();
+            Integer expectedReplicas = set.getReplicas();
+            Integer readyReplicas = set.getReadyReplicas();
+            foundStatefulSets.add(setName);
+            if (!expectedReplicas.equals(readyReplicas) && !inProgress.contains(setName) && expectedStatefulSetNames.contains(setName)) {
+                foundDiscrepancies.add(String.format("StatefulSet %s expected %d replicas, but only %d ready", setName, expectedReplicas, readyReplicas));
             }
+        }
 
-            List<Deployment> deployments = client.apps().deployments().inAnyNamespace().list().getItems();
-            for (Deployment deployment : deployments) {
-                String deploymentName = deployment.getMetadata().getName();
-                DeploymentStatus deploymentStatus = deployment.getStatus();
-                Integer expectedReplicas = (deploymentStatus.getReplicas() == null ? 0 : deploymentStatus.getReplicas());
-                Integer readyReplicas = (deploymentStatus.getReadyReplicas() == null ? 0 : deploymentStatus.getReadyReplicas());
-                foundDeployments.add(deploymentName);
-                if (!expectedReplicas.equals(readyReplicas) && !deploymentsInProgress.contains(deploymentName) && expectedDeployments.contains(deploymentName)) {
-                    foundDiscrepancies.add(String.format("Deployment %s expected %d replicas, but only %d ready", deploymentName, expectedReplicas, readyReplicas));
-                }
+        for (WorkloadSummary deployment : deployments) {
+            String deploymentName = deployment.getName();
+            Integer expectedReplicas = deployment.getReplicas();
+            Integer readyReplicas = deployment.getReadyReplicas();
+            foundDeployments.add(deploymentName);
+            if (!expectedReplicas.equals(readyReplicas) && !inProgress.contains(deploymentName) && expectedDeploymentNames.contains(deploymentName)) {
+                foundDiscrepancies.add(String.format("Deployment %s expected %d replicas, but only %d ready", deploymentName, expectedReplicas, readyReplicas));
             }
-        } catch (KubernetesClientException e) {
-            throw new RuntimeException("Error in Kubernetes client", e);
         }
 
         // Compare found workloads vs expected to find things missing
         for (String statefulSet : expectedStatefulSets) {
             if (!foundStatefulSets.contains(statefulSet)) {
-                foundDiscrepancies.add(String.format("StatefulSet %s not found in cluster %s", statefulSet, cluster));
+                foundDiscrepancies.add(String.format("StatefulSet %s not found in cluster %s", statefulSet, clusterConfig.getName()));
             }
         }
         for (String deployment : expectedDeployments) {
             if (!foundDeployments.contains(deployment)) {
-                foundDiscrepancies.add(String.format("Deployment %s not found in cluster %s", deployment, cluster));
+                foundDiscrepancies.add(String.format("Deployment %s not found in cluster %s", deployment, clusterConfig.getName()));
             }
         }
-
-        if (foundDiscrepancies.isEmpty()) {
-            return new ClusterStatus(project, cluster, ClusterState.OK, new ArrayList<>(), deploymentsInProgress);
-        } else {
-            return new ClusterStatus(project, cluster, ClusterState.DEGRADED, foundDiscrepancies, deploymentsInProgress);
-        }
+        return foundDiscrepancies;
     }
 
-    /**
-     * Find configuration for given project and cluster name
-     */
-    private ClusterConfig findClusterConfig(String projectName, String clusterName) {
-
-        return baseMonitoringConfig
-                .getClusters()
-                .stream()
-                .filter(clusterConfig -> clusterConfig.getProject().equals(projectName) && clusterConfig.getName().equals(clusterName))
-                .findAny()
-                .orElseThrow(() -> new RuntimeException("Could not find " + clusterName + " in " + projectName));
+    private static class StatusCacheEntry {
+
+        private ClusterStatus status;
+        private Instant listedAt;
+        // The listing in progress, if any
+        private CompletableFuture<ClusterStatus> listing;
     }
 }
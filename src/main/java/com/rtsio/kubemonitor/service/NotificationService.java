@@ -1,9 +1,7 @@
 package com.rtsio.kubemonitor.service;
 
-import com.rtsio.kubemonitor.config.BaseMonitoringConfig;
 import com.rtsio.kubemonitor.config.ClusterConfig;
-import com.rtsio.kubemonitor.config.ClusterNotificationConfig;
-import com.rtsio.kubemonitor.config.SlackWebhookConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
 import com.rtsio.kubemonitor.model.*;
 import com.rtsio.kubemonitor.model.MaintenanceRequest;
 import com.rtsio.kubemonitor.model.MaintenanceState;
@@ -14,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 
 
 @Service
@@ -21,14 +20,14 @@ import org.springframework.stereotype.Service;
 public class NotificationService {
 
     @Autowired
-    private BaseMonitoringConfig baseMonitoringConfig;
+    private ClusterRegistry clusterRegistry;
 
     @Autowired
     private SlackNotifier slackNotifier;
 
     public void notifyNewMaintenanceRequest(String project, String cluster, MaintenanceRequest maintenanceRequest) {
 
-        ClusterConfig clusterConfig = findClusterConfig(project, cluster);
+        ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
         if (!clusterConfig.getNotifications().getMaintenance().getEnabled()) {
             log.debug("Maintenance notifications for project {}, cluster {} are disabled; silencing notification", project, cluster);
             return;
@@ -42,12 +41,12 @@ public class NotificationService {
         for (String workload : maintenanceRequest.getWorkloadsToScale()) {
             message.append(String.format("`%s`", workload) + "\n");
         }
-        slackNotifier.sendMessage(message.toString(), findWebhook(clusterConfig.getNotifications().getMaintenance()).getUrl(), MessageSeverity.SUCCESS);
+        slackNotifier.sendMessage(message.toString(), clusterRegistry.getWebhook(clusterConfig.getNotifications().getMaintenance().getSlackWebhook()), MessageSeverity.SUCCESS);
     }
 
     public void notifyMaintenanceUpdate(String project, String cluster, MaintenanceState maintenanceState) {
 
-        ClusterConfig clusterConfig = findClusterConfig(project, cluster);
+        ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
         if (!clusterConfig.getNotifications().getMaintenance().getEnabled()) {
             log.debug("Maintenance notifications for project {}, cluster {} are disabled; silencing notification", project, cluster);
             return;
@@ -60,59 +59,71 @@ public class NotificationService {
             for (String workload : maintenanceState.getOriginalReplicaCounts().keySet()) {
                 message.append(String.format("`%s`", workload) + ", saved replica count: " + maintenanceState.getOriginalReplicaCounts().get(workload).toString() + "\n");
             }
+            appendProblems(message, maintenanceState, "scale-down");
             message.append("Workloads will be scaled back up at " + maintenanceState.getMaintenanceRequest().getEndTime().toString() + "\n");
         } else if (maintenanceState.getMaintenanceStatus() == MaintenanceStatus.ENDED) {
             message.append("Scaled up the following workloads to their original replica counts:\n");
-            for (String workload : maintenanceState.getOriginalReplicaCounts().keySet()) {
-                message.append(String.format("`%s`", workload) + "\n");
+            for (WorkloadScaleResult result : maintenanceState.getWorkloadResults()) {
+                if (result.getPhase().equals("scale-up") && result.getToReplicas() != null) {
+                    message.append(String.format("`%s` - %s, %d/%d ready after %.1fs", result.getWorkload(), result.getOutcome(),
+                            result.getReadyReplicas(), result.getToReplicas(), result.getDurationMillis() / 1000.0) + "\n");
+                }
             }
+            appendProblems(message, maintenanceState, "scale-up");
             message.append("This maintenance is now finished!" + "\n");
         }
-        slackNotifier.sendMessage(message.toString(), findWebhook(clusterConfig.getNotifications().getMaintenance()).getUrl(), MessageSeverity.SUCCESS);
+        slackNotifier.sendMessage(message.toString(), clusterRegistry.getWebhook(clusterConfig.getNotifications().getMaintenance().getSlackWebhook()), MessageSeverity.SUCCESS);
+    }
+
+    /**
+     * List the workloads of the given phase that couldn't be found or scaled
+     */
+    private void appendProblems(StringBuilder message, MaintenanceState maintenanceState, String phase) {
+
+        for (WorkloadScaleResult result : maintenanceState.getWorkloadResults()) {
+            if (result.getPhase().equals(phase) && (result.getOutcome() == WorkloadScaleOutcome.NOT_FOUND || result.getOutcome() == WorkloadScaleOutcome.FAILED)) {
+                message.append(String.format("`%s` - %s", result.getWorkload(), result.getOutcome()) + (result.getError() == null ? "" : ": " + result.getError()) + "\n");
+            }
+        }
     }
 
     public void notifyDeployment(String project, String cluster, String workloadName) {
 
-        ClusterConfig clusterConfig = findClusterConfig(project, cluster);
+        ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
         if (!clusterConfig.getNotifications().getDeployments().getEnabled()) {
             log.debug("Deployment notifications for project {}, cluster {} are disabled; silencing notification", project, cluster);
             return;
         }
         String text = String.format("`%s` is being deployed to cluster `%s` in project `%s`", workloadName, cluster, project);
-        slackNotifier.sendMessage(text, findWebhook(clusterConfig.getNotifications().getDeployments()).getUrl(), MessageSeverity.SUCCESS);
+        slackNotifier.sendMessage(text, clusterRegistry.getWebhook(clusterConfig.getNotifications().getDeployments().getSlackWebhook()), MessageSeverity.SUCCESS);
     }
 
     public void notifyEvent(String project, String cluster, String text) {
 
-        ClusterConfig clusterConfig = findClusterConfig(project, cluster);
+        ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
         if (!clusterConfig.getNotifications().getEvents().getEnabled()) {
             log.debug("Event notifications for project {}, cluster {} are disabled; silencing notification", project, cluster);
             return;
         }
-        slackNotifier.sendMessage(text, findWebhook(clusterConfig.getNotifications().getEvents()).getUrl(), MessageSeverity.ERROR);
+        slackNotifier.sendMessage(text, clusterRegistry.getWebhook(clusterConfig.getNotifications().getEvents().getSlackWebhook()), MessageSeverity.ERROR);
     }
 
     /**
-     * Find configuration for given project and cluster name
+     * Notify a cluster changing between OK and DEGRADED, sent to the events webhook
      */
-    private ClusterConfig findClusterConfig(String projectName, String clusterName) {
-
-        return baseMonitoringConfig
-                .getClusters()
-                .stream()
-                .filter(clusterConfig -> clusterConfig.getProject().equals(projectName) && clusterConfig.getName().equals(clusterName))
-                .findAny()
-                .orElseThrow(() -> new RuntimeException("Could not find " + clusterName + " in " + projectName));
-    }
-
-    private SlackWebhookConfig findWebhook(ClusterNotificationConfig.NotificationConfig notificationConfig) {
+    public void notifyHealthChange(String project, String cluster, ClusterState state, List<String> issues) {
 
-        String webhookName = notificationConfig.getSlackWebhook();
-        return baseMonitoringConfig
-                .getSlackWebhookConfigs()
-                .stream()
-                .filter(slackWebhookConfig -> slackWebhookConfig.getName().equals(webhookName))
-                .findAny()
-                .orElseThrow(() -> new RuntimeException("Could not find webhook " + webhookName));
+        ClusterConfig clusterConfig = clusterRegistry.getCluster(project, cluster);
+        if (!clusterConfig.getNotifications().getEvents().getEnabled()) {
+            log.debug("Event notifications for project {}, cluster {} are disabled; silencing notification", project, cluster);
+            return;
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(String.format("Cluster `%s` in project `%s` is now %s\n", cluster, project, state));
+        for (String issue : issues) {
+            message.append(issue + "\n");
+        }
+        MessageSeverity severity = (state == ClusterState.OK ? MessageSeverity.SUCCESS : MessageSeverity.ERROR);
+        slackNotifier.sendMessage(message.toString(), clusterRegistry.getWebhook(clusterConfig.getNotifications().getEvents().getSlackWebhook()), severity);
     }
 }
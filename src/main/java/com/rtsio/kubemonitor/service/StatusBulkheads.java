@@ -0,0 +1,125 @@
+package com.rtsio.kubemonitor.service;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
+import com.rtsio.kubemonitor.exception.ClusterBusyException;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A small bounded executor per cluster for status requests, so a cluster whose API server hangs only ties up its own
+ * threads and queue. Once both are full, further requests for that cluster are rejected right away instead of waiting.
+ * Idle threads time out, so clusters nobody asks about hold no threads.
+ */
+@Component
+@Slf4j
+public class StatusBulkheads {
+
+    @Autowired
+    private ClusterRegistry clusterRegistry;
+
+    @Value("${status.bulkhead.threads}")
+    private Integer threads;
+
+    @Value("${status.bulkhead.queue-size}")
+    private Integer queueSize;
+
+    private final Map<String, ThreadPoolExecutor> bulkheads = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerConfigListener() {
+
+        clusterRegistry.addListener(this::onClustersChanged);
+    }
+
+    @PreDestroy
+    public void stopBulkheads() {
+
+        for (ThreadPoolExecutor bulkhead : bulkheads.values()) {
+            bulkhead.shutdownNow();
+        }
+    }
+
+    /**
+     * Run the call on the cluster's bulkhead; throws ClusterBusyException if the bulkhead is full
+     */
+    public <T> CompletableFuture<T> submit(String project, String cluster, Supplier<T> call) {
+
+        ThreadPoolExecutor bulkhead = bulkheads.computeIfAbsent(getKey(project, cluster), key -> createBulkhead(project, cluster));
+        try {
+            return CompletableFuture.supplyAsync(call, bulkhead);
+        } catch (RejectedExecutionException e) {
+            KubemonitorMetrics.counter(KubemonitorMetrics.STATUS_BULKHEAD_REJECTED, "project", project, "cluster", cluster).increment();
+            log.warn("Status bulkhead full for project: {}, cluster: {}, rejecting request", project, cluster);
+            throw new ClusterBusyException("Too many status requests in progress for " + cluster + " in " + project);
+        }
+    }
+
+    private ThreadPoolExecutor createBulkhead(String project, String cluster) {
+
+        ThreadPoolExecutor bulkhead = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "status-" + cluster);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        bulkhead.allowCoreThreadTimeOut(true);
+        Gauge.builder(KubemonitorMetrics.STATUS_BULKHEAD_ACTIVE, bulkhead, ThreadPoolExecutor::getActiveCount)
+                .description("Status requests running on the cluster's bulkhead")
+                .tags("project", project, "cluster", cluster)
+                .register(Metrics.globalRegistry);
+        Gauge.builder(KubemonitorMetrics.STATUS_BULKHEAD_QUEUED, bulkhead, executor -> executor.getQueue().size())
+                .description("Status requests waiting for a thread on the cluster's bulkhead")
+                .tags("project", project, "cluster", cluster)
+                .register(Metrics.globalRegistry);
+        return bulkhead;
+    }
+
+    /**
+     * Removed clusters can't be asked about anymore, so their bulkheads and gauges go too. This happens inside the
+     * map's lock for the cluster, so a bulkhead created for it right after gets gauges of its own.
+     */
+    private void onClustersChanged(List<ClusterConfig> removed, List<ClusterConfig> added) {
+
+        for (ClusterConfig clusterConfig : removed) {
+            bulkheads.computeIfPresent(getKey(clusterConfig.getProject(), clusterConfig.getName()), (key, bulkhead) -> {
+                bulkhead.shutdown();
+                removeGauge(KubemonitorMetrics.STATUS_BULKHEAD_ACTIVE, clusterConfig);
+                removeGauge(KubemonitorMetrics.STATUS_BULKHEAD_QUEUED, clusterConfig);
+                return null;
+            });
+        }
+    }
+
+    private void removeGauge(String name, ClusterConfig clusterConfig) {
+
+        Gauge gauge = Metrics.globalRegistry.find(name).tags("project", clusterConfig.getProject(), "cluster", clusterConfig.getName()).gauge();
+        if (gauge != null) {
+            Metrics.globalRegistry.remove(gauge);
+        }
+    }
+
+    private String getKey(String project, String cluster) {
+
+        return project + "/" + cluster;
+    }
+}
@@ -0,0 +1,58 @@
+package com.rtsio.kubemonitor.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps keys to members by consistent hashing. Each member is placed on the ring at virtualNodes points, and a key
+ * belongs to the first member point at or after the key's hash. When a member joins or leaves, only the keys next to
+ * its points change hands (about 1/n of them), and virtual nodes keep the shares even.
+ */
+public class ConsistentHashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+
+        for (String member : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the rare hash collision, the smaller name wins so every replica builds the same ring
+                ring.merge(hash(member + "#" + i), member, (current, other) -> current.compareTo(other) <= 0 ? current : other);
+            }
+        }
+    }
+
+    /**
+     * Member the key belongs to, or null if the ring is empty
+     */
+    public String getOwner(String key) {
+
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * First 8 bytes of the MD5 digest; it only has to spread keys evenly and be the same on every replica
+     */
+    static long hash(String value) {
+
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+}
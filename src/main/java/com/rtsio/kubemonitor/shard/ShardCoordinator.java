@@ -0,0 +1,491 @@
+package com.rtsio.kubemonitor.shard;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Splits the configured clusters between kubemonitor replicas, coordinating through Kubernetes Leases in one namespace.
+ * Every replica keeps a member Lease renewed; the replicas with live member Leases form a consistent hash ring (see
+ * ConsistentHashRing), and each cluster belongs to its replica on the ring. Ownership itself is a per-cluster Lease:
+ * a replica only starts on a cluster once it holds the cluster's Lease, and a replica handing a cluster over stops its
+ * watchers before clearing the Lease, so two replicas never watch the same cluster. Clusters of a replica that dies are
+ * taken over once its Leases expire.
+ * Listeners are called on their own thread, so starting and stopping watchers never holds up Lease renewals.
+ * Without sharding (see unsharded()) this replica owns every cluster.
+ */
+@Slf4j
+public class ShardCoordinator {
+
+    private static final String LEASE_LABEL = "kubemonitor/lease";
+    private static final String MEMBER_LEASE = "member";
+    private static final String CLUSTER_LEASE = "cluster";
+    // Time to leave for a late rebalance and for listeners to stop watchers before an unrenewed Lease expires
+    private static final long RELEASE_MARGIN_MILLIS = 2000;
+
+    private final KubernetesClient client;
+    private final String namespace;
+    private final String identity;
+    private final int leaseDurationSeconds;
+    private final long renewIntervalSeconds;
+    private final int virtualNodes;
+    private final List<OwnershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Clusters this replica holds the Lease of, by project/name, with when the Lease was last renewed
+    private final Map<String, OwnedCluster> owned = new ConcurrentHashMap<>();
+    private volatile List<String> members = Collections.emptyList();
+    private ScheduledExecutorService scheduler;
+    // Runs the listeners, one ownership change at a time and in the order they happened
+    private final ExecutorService ownershipExecutor;
+    private Supplier<List<ClusterConfig>> clusters;
+
+    public ShardCoordinator(KubernetesClient client, String namespace, String identity, int leaseDurationSeconds, long renewIntervalSeconds, int virtualNodes) {
+
+        this.client = client;
+        this.namespace = namespace;
+        this.identity = identity;
+        this.leaseDurationSeconds = leaseDurationSeconds;
+        this.renewIntervalSeconds = renewIntervalSeconds;
+        this.virtualNodes = virtualNodes;
+        this.ownershipExecutor = (client == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-ownership");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * A coordinator for a single replica, which owns every cluster
+     */
+    public static ShardCoordinator unsharded() {
+
+        return new ShardCoordinator(null, null, null, 0, 0, 0);
+    }
+
+    public interface OwnershipListener {
+
+        void ownershipChanged(List<ClusterConfig> released, List<ClusterConfig> acquired);
+    }
+
+    private static class OwnedCluster {
+
+        private final ClusterConfig clusterConfig;
+        private volatile long renewedAt;
+
+        private OwnedCluster(ClusterConfig clusterConfig, long renewedAt) {
+
+            this.clusterConfig = clusterConfig;
+            this.renewedAt = renewedAt;
+        }
+    }
+
+    public void addListener(OwnershipListener listener) {
+
+        listeners.add(listener);
+    }
+
+    public boolean isEnabled() {
+
+        return client != null;
+    }
+
+    public boolean owns(ClusterConfig clusterConfig) {
+
+        return client == null || owned.containsKey(getKey(clusterConfig));
+    }
+
+    public String getIdentity() {
+
+        return identity;
+    }
+
+    /**
+     * Replicas on the ring as of the last rebalance
+     */
+    public List<String> getMembers() {
+
+        return members;
+    }
+
+    /**
+     * project/name of the clusters this replica owns
+     */
+    public List<String> getOwnedClusters() {
+
+        List<String> keys = new ArrayList<>(owned.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Rebalance every renewIntervalSeconds (which should be well under the lease duration) on a background thread
+     */
+    public synchronized void start(Supplier<List<ClusterConfig>> clusters) {
+
+        if (client == null) {
+            return;
+        }
+        this.clusters = clusters;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebalanceQuietly, 0, renewIntervalSeconds, TimeUnit.SECONDS);
+        log.info("Sharding clusters as {} using leases in namespace {}", identity, namespace);
+    }
+
+    /**
+     * Rebalance now instead of at the next interval, e.g. because clusters were added
+     */
+    public void rebalanceSoon() {
+
+        if (scheduler != null) {
+            scheduler.execute(this::rebalanceQuietly);
+        }
+    }
+
+    /**
+     * Leave the ring: clear the Leases of owned clusters and delete the member Lease, so other replicas take over
+     * right away instead of waiting for them to expire
+     */
+    public synchronized void stop() {
+
+        if (client == null) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // Let handovers in progress stop their watchers and clear their Leases
+        ownershipExecutor.shutdown();
+        try {
+            ownershipExecutor.awaitTermination(RELEASE_MARGIN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (OwnedCluster ownedCluster : owned.values()) {
+            releaseLease(ownedCluster.clusterConfig);
+        }
+        owned.clear();
+        try {
+            client.leases().inNamespace(namespace).withName(getMemberLeaseName()).delete();
+        } catch (KubernetesClientException e) {
+            log.warn("Could not delete member lease of {}", identity, e);
+        }
+    }
+
+    /**
+     * stop(), then close the client, which the coordinator is given for its own use
+     */
+    public synchronized void close() {
+
+        stop();
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private void rebalanceQuietly() {
+
+        try {
+            rebalance(clusters.get());
+        } catch (Exception e) {
+            log.error("Shard rebalance failed", e);
+        }
+    }
+
+    /**
+     * Renew this replica's Leases, then acquire the clusters the ring gives it and hand over the ones it gives to others.
+     * Listeners are told what changed on the ownership thread, and handed over Leases are cleared there once they
+     * return, so a slow start or stop delays the handover instead of the next renewal.
+     */
+    public synchronized void rebalance(List<ClusterConfig> clusterConfigs) {
+
+        long now = System.currentTimeMillis();
+        renewMemberLease(now);
+        members = findLiveMembers(now);
+        ConsistentHashRing ring = new ConsistentHashRing(members, virtualNodes);
+
+        Map<String, ClusterConfig> configured = new LinkedHashMap<>();
+        for (ClusterConfig clusterConfig : clusterConfigs) {
+            configured.put(getKey(clusterConfig), clusterConfig);
+        }
+        // Removed from config: watchers were already stopped by the config listener, only the Lease is left
+        for (Map.Entry<String, OwnedCluster> entry : owned.entrySet()) {
+            if (!configured.containsKey(entry.getKey())) {
+                owned.remove(entry.getKey());
+                deleteLease(entry.getValue().clusterConfig);
+            }
+        }
+
+        List<ClusterConfig> released = new ArrayList<>();
+        List<ClusterConfig> handedOver = new ArrayList<>();
+        List<ClusterConfig> acquired = new ArrayList<>();
+        for (Map.Entry<String, ClusterConfig> entry : configured.entrySet()) {
+            ClusterConfig clusterConfig = entry.getValue();
+            boolean ours = identity.equals(ring.getOwner(entry.getKey()));
+            OwnedCluster ownedCluster = owned.get(entry.getKey());
+            if (ownedCluster == null) {
+                // The previous owner may not have let go yet; try again next time
+                if (ours && tryAcquireLease(clusterConfig, now)) {
+                    owned.put(entry.getKey(), new OwnedCluster(clusterConfig, now));
+                    acquired.add(clusterConfig);
+                }
+            } else if (!ours) {
+                owned.remove(entry.getKey());
+                released.add(clusterConfig);
+                handedOver.add(clusterConfig);
+            } else {
+                try {
+                    if (renewLease(clusterConfig, now)) {
+                        ownedCluster.renewedAt = now;
+                    } else {
+                        log.warn("Lease for project: {}, cluster: {} was taken over by another replica", clusterConfig.getProject(), clusterConfig.getName());
+                        owned.remove(entry.getKey());
+                        released.add(clusterConfig);
+                    }
+                } catch (KubernetesClientException e) {
+                    // Another replica can take the cluster once the Lease expires. The next renewal comes a renew
+                    // interval from now at the earliest, so if that could be too late, stop watching now.
+                    if (System.currentTimeMillis() - ownedCluster.renewedAt >= getReleaseAfterMillis()) {
+                        log.warn("Could not renew lease for project: {}, cluster: {} before it expired, releasing it", clusterConfig.getProject(), clusterConfig.getName(), e);
+                        owned.remove(entry.getKey());
+                        released.add(clusterConfig);
+                    } else {
+                        log.warn("Could not renew lease for project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName(), e);
+                    }
+                }
+            }
+        }
+
+        if (!released.isEmpty() || !acquired.isEmpty()) {
+            log.info("Rebalanced {} clusters across {} replicas: released {}, acquired {}, owning {}", configured.size(), members.size(), released.size(), acquired.size(), owned.size());
+            ownershipExecutor.execute(() -> notifyListeners(released, acquired, handedOver));
+        }
+    }
+
+    private void notifyListeners(List<ClusterConfig> released, List<ClusterConfig> acquired, List<ClusterConfig> handedOver) {
+
+        for (OwnershipListener listener : listeners) {
+            try {
+                listener.ownershipChanged(released, acquired);
+            } catch (Exception e) {
+                log.error("Shard ownership listener failed", e);
+            }
+        }
+        // Only now are the watchers stopped, so the next owner can't start on a cluster that is still being watched
+        for (ClusterConfig clusterConfig : handedOver) {
+            releaseLease(clusterConfig);
+        }
+    }
+
+    /**
+     * Wait until the listeners have handled every ownership change so far
+     */
+    void awaitOwnershipChanges() throws InterruptedException, ExecutionException {
+
+        ownershipExecutor.submit(() -> {
+        }).get();
+    }
+
+    /**
+     * How long after its last renewal a Lease that can't be renewed is given up
+     */
+    private long getReleaseAfterMillis() {
+
+        return TimeUnit.SECONDS.toMillis(leaseDurationSeconds) - TimeUnit.SECONDS.toMillis(renewIntervalSeconds) - RELEASE_MARGIN_MILLIS;
+    }
+
+    private void renewMemberLease(long now) {
+
+        Lease lease = new LeaseBuilder()
+                .withNewMetadata()
+                .withName(getMemberLeaseName())
+                .withNamespace(namespace)
+                .addToLabels(LEASE_LABEL, MEMBER_LEASE)
+                .endMetadata()
+                .withNewSpec()
+                .withHolderIdentity(identity)
+                .withLeaseDurationSeconds(leaseDurationSeconds)
+                .withRenewTime(toTime(now))
+                .endSpec()
+                .build();
+        try {
+            client.leases().inNamespace(namespace).createOrReplace(lease);
+        } catch (KubernetesClientException e) {
+            log.warn("Could not renew member lease of {}", identity, e);
+        }
+    }
+
+    /**
+     * Holders of unexpired member Leases, sorted, always including this replica. If the Leases can't be listed, the
+     * previous members are kept, so a flaky API server doesn't reshuffle the clusters.
+     */
+    private List<String> findLiveMembers(long now) {
+
+        Set<String> live = new TreeSet<>();
+        live.add(identity);
+        try {
+            for (Lease lease : client.leases().inNamespace(namespace).withLabel(LEASE_LABEL, MEMBER_LEASE).list().getItems()) {
+                if (!isExpired(lease, now)) {
+                    live.add(lease.getSpec().getHolderIdentity());
+                }
+            }
+        } catch (KubernetesClientException e) {
+            log.warn("Could not list member leases, keeping the current members", e);
+            live.addAll(members);
+        }
+        return new ArrayList<>(live);
+    }
+
+    /**
+     * Take the cluster's Lease if nobody holds it, or its holder let it expire. Updates carry the resourceVersion
+     * that was read, so if two replicas race for a Lease only one of them wins.
+     */
+    private boolean tryAcquireLease(ClusterConfig clusterConfig, long now) {
+
+        String name = getClusterLeaseName(clusterConfig);
+        try {
+            Lease current = client.leases().inNamespace(namespace).withName(name).get();
+            if (current == null) {
+                client.leases().inNamespace(namespace).create(buildClusterLease(clusterConfig, identity, now, null));
+                return true;
+            }
+            if (!isExpired(current, now) && !identity.equals(current.getSpec().getHolderIdentity())) {
+                return false;
+            }
+            String resourceVersion = current.getMetadata().getResourceVersion();
+            client.leases().inNamespace(namespace).withName(name).lockResourceVersion(resourceVersion)
+                    .replace(buildClusterLease(clusterConfig, identity, now, resourceVersion));
+            return true;
+        } catch (KubernetesClientException e) {
+            log.debug("Could not acquire lease for project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns false if another replica holds the Lease now; throws if the API server couldn't be reached
+     */
+    private boolean renewLease(ClusterConfig clusterConfig, long now) {
+
+        String name = getClusterLeaseName(clusterConfig);
+        Lease current = client.leases().inNamespace(namespace).withName(name).get();
+        if (current == null || current.getSpec() == null || !identity.equals(current.getSpec().getHolderIdentity())) {
+            return false;
+        }
+        String resourceVersion = current.getMetadata().getResourceVersion();
+        try {
+            client.leases().inNamespace(namespace).withName(name).lockResourceVersion(resourceVersion)
+                    .replace(buildClusterLease(clusterConfig, identity, now, resourceVersion));
+        } catch (KubernetesClientException e) {
+            if (e.getCode() == 409) {
+                return false;
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Clear the holder, so the next owner doesn't have to wait for the Lease to expire
+     */
+    private void releaseLease(ClusterConfig clusterConfig) {
+
+        String name = getClusterLeaseName(clusterConfig);
+        try {
+            Lease current = client.leases().inNamespace(namespace).withName(name).get();
+            if (current != null && current.getSpec() != null && identity.equals(current.getSpec().getHolderIdentity())) {
+                String resourceVersion = current.getMetadata().getResourceVersion();
+                client.leases().inNamespace(namespace).withName(name).lockResourceVersion(resourceVersion)
+                        .replace(buildClusterLease(clusterConfig, null, null, resourceVersion));
+            }
+        } catch (KubernetesClientException e) {
+            log.warn("Could not release lease for project: {}, cluster: {}, it will expire instead", clusterConfig.getProject(), clusterConfig.getName(), e);
+        }
+    }
+
+    private void deleteLease(ClusterConfig clusterConfig) {
+
+        try {
+            client.leases().inNamespace(namespace).withName(getClusterLeaseName(clusterConfig)).delete();
+        } catch (KubernetesClientException e) {
+            log.warn("Could not delete lease for project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName(), e);
+        }
+    }
+
+    private Lease buildClusterLease(ClusterConfig clusterConfig, String holder, Long renewTime, String resourceVersion) {
+
+        return new LeaseBuilder()
+                .withNewMetadata()
+                .withName(getClusterLeaseName(clusterConfig))
+                .withNamespace(namespace)
+                .withResourceVersion(resourceVersion)
+                .addToLabels(LEASE_LABEL, CLUSTER_LEASE)
+                // Lease names are hashes, so keep the cluster readable for whoever lists them
+                .addToAnnotations("kubemonitor/project", clusterConfig.getProject())
+                .addToAnnotations("kubemonitor/cluster", clusterConfig.getName())
+                .endMetadata()
+                .withNewSpec()
+                .withHolderIdentity(holder)
+                .withLeaseDurationSeconds(leaseDurationSeconds)
+                .withRenewTime(renewTime == null ? null : toTime(renewTime))
+                .endSpec()
+                .build();
+    }
+
+    private boolean isExpired(Lease lease, long now) {
+
+        if (lease.getSpec() == null || lease.getSpec().getHolderIdentity() == null || lease.getSpec().getRenewTime() == null) {
+            return true;
+        }
+        int duration = (lease.getSpec().getLeaseDurationSeconds() == null ? leaseDurationSeconds : lease.getSpec().getLeaseDurationSeconds());
+        return lease.getSpec().getRenewTime().toInstant().toEpochMilli() + TimeUnit.SECONDS.toMillis(duration) < now;
+    }
+
+    private String getMemberLeaseName() {
+
+        return "kubemonitor-member-" + identity.toLowerCase().replaceAll("[^a-z0-9.-]", "-");
+    }
+
+    /**
+     * Project and cluster names don't have to be valid object names together, so name the Lease by their hash
+     */
+    private String getClusterLeaseName(ClusterConfig clusterConfig) {
+
+        return "kubemonitor-cluster-" + Long.toHexString(ConsistentHashRing.hash(getKey(clusterConfig)));
+    }
+
+    private static ZonedDateTime toTime(long millis) {
+
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static String getKey(ClusterConfig clusterConfig) {
+
+        return clusterConfig.getProject() + "/" + clusterConfig.getName();
+    }
+}
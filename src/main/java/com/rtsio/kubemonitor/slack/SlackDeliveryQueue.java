@@ -0,0 +1,204 @@
+package com.rtsio.kubemonitor.slack;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import com.rtsio.kubemonitor.model.SlackQueueStats;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of messages for one webhook, drained by a dedicated sender thread so callers never wait on Slack.
+ * Messages that pile up while a post is in flight (or while rate limited) are coalesced into a single post with
+ * one attachment per message. When the queue is full, new messages are dropped and counted, as are the messages of a
+ * post that is given up on.
+ */
+@Slf4j
+public class SlackDeliveryQueue {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+    private static final long INITIAL_BACKOFF_SECONDS = 1;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final String name;
+    private final String webhook;
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<SlackAttachment> queue;
+    private final int maxBatchSize;
+    private final long maxRetryAfterSeconds;
+    private final Thread sender;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running = true;
+
+    public SlackDeliveryQueue(String name, String webhook, OkHttpClient httpClient, ObjectMapper objectMapper, int capacity, int maxBatchSize, long maxRetryAfterSeconds) {
+
+        this.name = name;
+        this.webhook = webhook;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+        this.sender = new Thread(this::sendLoop, "slack-sender-" + name);
+        this.sender.setDaemon(true);
+    }
+
+    public void start() {
+
+        sender.start();
+    }
+
+    public void stop() {
+
+        running = false;
+        sender.interrupt();
+    }
+
+    /**
+     * Queue a message without blocking; returns false if the queue was full and the message was dropped
+     */
+    public boolean offer(SlackAttachment attachment) {
+
+        if (queue.offer(attachment)) {
+            queued.incrementAndGet();
+            return true;
+        }
+        countDropped(1);
+        log.warn("Slack queue for webhook {} is full, dropping message: {}", name, attachment.getText());
+        return false;
+    }
+
+    public SlackQueueStats getStats() {
+
+        return new SlackQueueStats(name, queue.size(), queued.get(), dropped.get(), sent.get(), rateLimited.get(), failed.get());
+    }
+
+    private void sendLoop() {
+
+        while (running) {
+            try {
+                SlackAttachment first = queue.take();
+                List<SlackAttachment> batch = new ArrayList<>();
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                deliver(new SlackMessage(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in Slack sender for webhook {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * Post the message, waiting out 429 responses for as long as Slack asks in Retry-After, but no longer than
+     * slack.queue.max-retry-after-seconds, so a huge or bogus value can't stall the webhook's queue.
+     * 5xx responses and I/O errors are retried with exponential backoff under the same cap; other responses won't
+     * change on retry. After MAX_ATTEMPTS posts, or a response that isn't retried, the messages are dropped.
+     */
+    private void deliver(SlackMessage message) throws InterruptedException {
+
+        String requestPayload;
+        try {
+            requestPayload = serialize(message);
+        } catch (JsonProcessingException e) {
+            log.error("Couldn't serialize Slack payload, dropping {} messages", message.getAttachments().size(), e);
+            failed.incrementAndGet();
+            countDropped(message.getAttachments().size());
+            return;
+        }
+
+        RequestBody requestBody = RequestBody.create(JSON, requestPayload);
+        Request request = new Request.Builder()
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .url(HttpUrl.parse(webhook))
+                .post(requestBody)
+                .build();
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long retryAfterSeconds;
+            long startNanos = System.nanoTime();
+            try (Response response = httpClient.newCall(request).execute()) {
+                String body = response.body().string();
+                if (response.code() == 200) {
+                    KubemonitorMetrics.recordLatency(KubemonitorMetrics.SLACK_POSTS, startNanos, KubemonitorMetrics.OUTCOME_SUCCESS, "webhook", name);
+                    sent.incrementAndGet();
+                    return;
+                }
+                if (response.code() == 429) {
+                    KubemonitorMetrics.recordLatency(KubemonitorMetrics.SLACK_POSTS, startNanos, "rate_limited", "webhook", name);
+                    rateLimited.incrementAndGet();
+                    retryAfterSeconds = parseRetryAfter(response.header("Retry-After"));
+                    log.warn("Slack rate limited webhook {}, retrying in {}s", name, retryAfterSeconds);
+                } else {
+                    KubemonitorMetrics.recordLatency(KubemonitorMetrics.SLACK_POSTS, startNanos, KubemonitorMetrics.OUTCOME_ERROR, "webhook", name);
+                    failed.incrementAndGet();
+                    if (response.code() < 500) {
+                        log.error("Slack returned {} for webhook {}, dropping {} messages, body: {}", response.code(), name, message.getAttachments().size(), body);
+                        countDropped(message.getAttachments().size());
+                        return;
+                    }
+                    retryAfterSeconds = getBackoffSeconds(attempt);
+                    log.warn("Slack returned {} for webhook {}, retrying in {}s, body: {}", response.code(), name, retryAfterSeconds, body);
+                }
+            } catch (IOException e) {
+                KubemonitorMetrics.recordLatency(KubemonitorMetrics.SLACK_POSTS, startNanos, KubemonitorMetrics.OUTCOME_ERROR, "webhook", name);
+                failed.incrementAndGet();
+                retryAfterSeconds = getBackoffSeconds(attempt);
+                log.warn("Couldn't send to Slack webhook {}, retrying in {}s", name, retryAfterSeconds, e);
+            }
+            if (attempt < MAX_ATTEMPTS) {
+                TimeUnit.SECONDS.sleep(retryAfterSeconds);
+            }
+        }
+        log.error("Couldn't deliver to Slack webhook {} after {} attempts, dropping {} messages", name, MAX_ATTEMPTS, message.getAttachments().size());
+        countDropped(message.getAttachments().size());
+    }
+
+    private void countDropped(int messages) {
+
+        dropped.addAndGet(messages);
+        KubemonitorMetrics.counter(KubemonitorMetrics.SLACK_MESSAGES_DROPPED, "webhook", name).increment(messages);
+    }
+
+    /**
+     * 1s, 2s, 4s... after the first, second, third failed attempt, capped like Retry-After
+     */
+    private long getBackoffSeconds(int attempt) {
+
+        return Math.min(INITIAL_BACKOFF_SECONDS << (attempt - 1), maxRetryAfterSeconds);
+    }
+
+    public String serialize(SlackMessage message) throws JsonProcessingException {
+
+        return objectMapper.writeValueAsString(message);
+    }
+
+    private long parseRetryAfter(String retryAfter) {
+
+        long seconds;
+        try {
+            seconds = (retryAfter == null ? DEFAULT_RETRY_AFTER_SECONDS : Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            seconds = DEFAULT_RETRY_AFTER_SECONDS;
+        }
+        return Math.min(seconds, maxRetryAfterSeconds);
+    }
+}
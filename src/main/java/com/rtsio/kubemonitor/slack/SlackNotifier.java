@@ -1,15 +1,24 @@
 package com.rtsio.kubemonitor.slack;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rtsio.kubemonitor.config.SlackWebhookConfig;
+import com.rtsio.kubemonitor.model.SlackQueueStats;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Sends messages to Slack asynchronously: each webhook gets its own bounded SlackDeliveryQueue and sender thread,
+ * so callers (e.g. watch callbacks) only ever enqueue
+ */
 @Component
 @Slf4j
 public class SlackNotifier {
@@ -20,20 +29,54 @@ public class SlackNotifier {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Value("${slack.queue.capacity}")
+    private Integer queueCapacity;
+
+    @Value("${slack.queue.max-batch-size}")
+    private Integer maxBatchSize;
+
+    @Value("${slack.queue.max-retry-after-seconds}")
+    private Long maxRetryAfterSeconds;
+
     public static final String SUCCESS_COLOR = "#64FF33";
     public static final String WARNING_COLOR = "#FFD133";
     public static final String ERROR_COLOR = "#FF3333";
 
+    private Map<String, SlackDeliveryQueue> queues = new ConcurrentHashMap<>();
+
+
+    public void sendMessage(String text, SlackWebhookConfig webhook, MessageSeverity messageSeverity) {
+
+        SlackAttachment attachment = new SlackAttachment(
+                mapMessageSeverityToColor(messageSeverity),
+                text
+        );
+        queues.computeIfAbsent(webhook.getUrl(), url -> startQueue(webhook)).offer(attachment);
+    }
+
+    public List<SlackQueueStats> getStats() {
+
+        List<SlackQueueStats> stats = new ArrayList<>();
+        for (SlackDeliveryQueue queue : queues.values()) {
+            stats.add(queue.getStats());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void stopQueues() {
+
+        for (SlackDeliveryQueue queue : queues.values()) {
+            queue.stop();
+        }
+    }
 
-    public void sendMessage(String text, String webhook, MessageSeverity messageSeverity) {
+    private SlackDeliveryQueue startQueue(SlackWebhookConfig webhook) {
 
-        SlackMessage message = new SlackMessage(List.of(
-                new SlackAttachment(
-                        mapMessageSeverityToColor(messageSeverity),
-                        text
-                )
-        ));
-        postMessagePayload(message, webhook);
+        log.info("Starting Slack delivery queue for webhook {}", webhook.getName());
+        SlackDeliveryQueue queue = new SlackDeliveryQueue(webhook.getName(), webhook.getUrl(), httpClient, objectMapper, queueCapacity, maxBatchSize, maxRetryAfterSeconds);
+        queue.start();
+        return queue;
     }
 
     private String mapMessageSeverityToColor(MessageSeverity messageSeverity) {
@@ -46,34 +89,4 @@ public class SlackNotifier {
                 return SUCCESS_COLOR;
         }
     }
-
-    private void postMessagePayload(SlackMessage message, String webhook) {
-
-        String requestPayload = "";
-        try {
-            requestPayload = objectMapper.writeValueAsString(message);
-        } catch (JsonProcessingException e) {
-            log.error("Couldn't serialize Slack payload", e);
-            return;
-        }
-
-        HttpUrl url = HttpUrl.parse(webhook);
-
-        RequestBody requestBody = RequestBody.create(MediaType.get("application/json; charset=utf-8"), requestPayload);
-        Request request = new Request.Builder()
-                .header(HttpHeaders.CONTENT_TYPE, "application/json")
-                .url(url)
-                .post(requestBody)
-                .build();
-
-        try (Response response = httpClient.newCall(request).execute()) {
-            String body = response.body().string();
-            if (response.code() != 200) {
-                log.error("Slack returned {}, body: {}", response.code(), body);
-            }
-        } catch (Exception e) {
-            log.error("Couldn't send to Slack", e);
-        }
-    }
 }
-
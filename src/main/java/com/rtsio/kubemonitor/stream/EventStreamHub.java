@@ -0,0 +1,225 @@
+package com.rtsio.kubemonitor.stream;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.exception.TooManySubscribersException;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import com.rtsio.kubemonitor.model.StoredEvent;
+import io.fabric8.kubernetes.api.model.Event;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live feed of processed events for /events/stream subscribers. Publishing only puts the event in the ring buffer of
+ * each matching subscriber (see EventSubscriber) and never waits: writing to clients happens on the sender threads, so
+ * a slow client can neither block the watcher that published the event nor make its buffer grow. A client that falls
+ * behind gets a "dropped" event with the number of events it missed before the next event it does get.
+ * A client that stops reading blocks its sender thread in a write until the servlet container's write timeout. Once
+ * a write has taken event-stream.send-timeout-seconds, the client is dropped and the sender pool gets a thread to
+ * replace the blocked one, so stalled clients can't take every sender.
+ */
+@Component
+@Slf4j
+public class EventStreamHub {
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final long sendTimeoutMillis;
+    private final ThreadPoolExecutor senderExecutor;
+    private final Set<EventSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Taken before a subscriber is added and given back once its stream has ended, including stalled ones still blocking
+    private final AtomicInteger subscriberSlots = new AtomicInteger();
+
+    @Autowired
+    public EventStreamHub(@Value("${event-stream.buffer-size}") int bufferSize,
+                          @Value("${event-stream.max-subscribers}") int maxSubscribers,
+                          @Value("${event-stream.sender-threads}") int senderThreads,
+                          @Value("${event-stream.timeout-minutes}") long timeoutMinutes,
+                          @Value("${event-stream.send-timeout-seconds}") long sendTimeoutSeconds) {
+
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.sendTimeoutMillis = TimeUnit.SECONDS.toMillis(sendTimeoutSeconds);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senderExecutor = new ThreadPoolExecutor(senderThreads, senderThreads,
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "event-stream-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder(KubemonitorMetrics.EVENT_STREAM_SUBSCRIBERS, subscribers, Set::size)
+                .description("Connected /events/stream clients")
+                .register(Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void closeSubscribers() {
+
+        for (EventSubscriber subscriber : subscribers) {
+            subscriber.getEmitter().complete();
+        }
+        senderExecutor.shutdownNow();
+    }
+
+    /**
+     * A new stream of the events matching the given filters (null matches everything), until the client disconnects
+     * or event-stream.timeout-minutes pass; clients are expected to reconnect
+     */
+    public SseEmitter subscribe(String project, String cluster, String reason) {
+
+        return subscribe(new SseEmitter(timeoutMillis), project, cluster, reason);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, String project, String cluster, String reason) {
+
+        if (subscriberSlots.incrementAndGet() > maxSubscribers) {
+            subscriberSlots.decrementAndGet();
+            throw new TooManySubscribersException("Already streaming events to " + maxSubscribers + " clients");
+        }
+        EventSubscriber subscriber = new EventSubscriber(emitter, project, cluster, reason, bufferSize);
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unsubscribe(subscriber));
+        log.debug("New event stream subscriber for project: {}, cluster: {}, reason: {}", project, cluster, reason);
+        return emitter;
+    }
+
+    private void unsubscribe(EventSubscriber subscriber) {
+
+        subscribers.remove(subscriber);
+        if (subscriber.close()) {
+            subscriberSlots.decrementAndGet();
+        }
+    }
+
+    public int getSubscriberCount() {
+
+        return subscribers.size();
+    }
+
+    public void publish(ClusterConfig clusterConfig, Event event) {
+
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        publish(new StoredEvent(clusterConfig.getProject(),
+                clusterConfig.getName(),
+                event.getInvolvedObject().getNamespace(),
+                event.getInvolvedObject().getKind(),
+                event.getInvolvedObject().getName(),
+                event.getReason(),
+                event.getType(),
+                event.getMessage(),
+                Instant.now()));
+    }
+
+    void publish(StoredEvent event) {
+
+        for (EventSubscriber subscriber : subscribers) {
+            if (subscriber.matches(event) && subscriber.offer(event)) {
+                senderExecutor.execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    /**
+     * Proxies and load balancers close connections that stay quiet, and a client that went away is only noticed when
+     * writing to it, so write a comment to every subscriber regularly. Subscribers stuck in a write are dropped instead.
+     */
+    @Scheduled(fixedDelay = 15000)
+    public void sendHeartbeats() {
+
+        long now = System.currentTimeMillis();
+        for (EventSubscriber subscriber : subscribers) {
+            if (subscriber.markStalled(now, sendTimeoutMillis)) {
+                // The emitter can't be completed while its write is blocked; the sender does that once it returns
+                log.warn("Event stream subscriber hasn't read for {}ms, disconnecting it", sendTimeoutMillis);
+                KubemonitorMetrics.counter(KubemonitorMetrics.EVENT_STREAM_STALLED).increment();
+                subscribers.remove(subscriber);
+                resizeSenders(1);
+            } else if (subscriber.requestHeartbeat()) {
+                senderExecutor.execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    /**
+     * Grow the sender pool for a thread blocked on a stalled subscriber, or shrink it back once the thread returns
+     */
+    private synchronized void resizeSenders(int delta) {
+
+        int size = senderExecutor.getCorePoolSize() + delta;
+        if (delta > 0) {
+            senderExecutor.setMaximumPoolSize(size);
+            senderExecutor.setCorePoolSize(size);
+        } else {
+            senderExecutor.setCorePoolSize(size);
+            senderExecutor.setMaximumPoolSize(size);
+        }
+    }
+
+    private void drain(EventSubscriber subscriber) {
+
+        SseEmitter emitter = subscriber.getEmitter();
+        try {
+            EventSubscriber.Batch batch;
+            while (!subscriber.isStalled() && (batch = subscriber.next()) != null) {
+                if (batch.dropped > 0) {
+                    KubemonitorMetrics.counter(KubemonitorMetrics.EVENT_STREAM_DROPPED).increment(batch.dropped);
+                    send(subscriber, SseEmitter.event().name("dropped").data(Map.of("dropped", batch.dropped, "totalDropped", batch.totalDropped), MediaType.APPLICATION_JSON));
+                }
+                if (batch.event != null) {
+                    send(subscriber, SseEmitter.event().name("event").data(batch.event, MediaType.APPLICATION_JSON));
+                }
+                if (batch.heartbeat) {
+                    send(subscriber, SseEmitter.event().comment("heartbeat"));
+                }
+            }
+            if (subscriber.isStalled()) {
+                // The client was dropped while this write was blocked; it won't be drained again
+                unsubscribe(subscriber);
+                emitter.complete();
+            }
+        } catch (Exception e) {
+            // The client went away; it won't be drained again, so its remaining events are just garbage
+            log.debug("Event stream subscriber disconnected", e);
+            unsubscribe(subscriber);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void send(EventSubscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+
+        subscriber.sendStarted(System.currentTimeMillis());
+        try {
+            subscriber.getEmitter().send(event);
+        } finally {
+            if (subscriber.sendFinished()) {
+                // Marked stalled while blocked here, and a thread was added in its place
+                resizeSenders(-1);
+            }
+        }
+    }
+}
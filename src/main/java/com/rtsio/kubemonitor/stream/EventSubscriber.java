@@ -0,0 +1,162 @@
+package com.rtsio.kubemonitor.stream;
+
+import com.rtsio.kubemonitor.model.StoredEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One /events/stream client: its filters and a ring buffer of events waiting to be sent. When the buffer is full the
+ * oldest event is dropped and counted, so a slow client costs at most bufferSize events of memory. At most one sender
+ * drains a subscriber at a time, so events go out in order. A client that stops reading altogether leaves its sender
+ * blocked in a write; the write's start time is kept so the hub can tell (see isStalled).
+ */
+class EventSubscriber {
+
+    private final SseEmitter emitter;
+    private final String project;
+    private final String cluster;
+    private final String reason;
+    private final int bufferSize;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // All guarded by this
+    private final ArrayDeque<StoredEvent> buffer;
+    private long dropped;
+    private long totalDropped;
+    private boolean heartbeatDue;
+    private boolean draining;
+    // When the write in progress started, 0 if none is
+    private long sendingSince;
+    private boolean stalled;
+
+    EventSubscriber(SseEmitter emitter, String project, String cluster, String reason, int bufferSize) {
+
+        this.emitter = emitter;
+        this.project = project;
+        this.cluster = cluster;
+        this.reason = reason;
+        this.bufferSize = bufferSize;
+        this.buffer = new ArrayDeque<>(Math.min(bufferSize, 64));
+    }
+
+    SseEmitter getEmitter() {
+
+        return emitter;
+    }
+
+    boolean matches(StoredEvent event) {
+
+        return (project == null || project.equals(event.getProject()))
+                && (cluster == null || cluster.equals(event.getCluster()))
+                && (reason == null || reason.equals(event.getReason()));
+    }
+
+    /**
+     * Buffer the event, dropping the oldest if full; returns true if the caller has to start draining
+     */
+    synchronized boolean offer(StoredEvent event) {
+
+        if (buffer.size() == bufferSize) {
+            buffer.pollFirst();
+            dropped++;
+            totalDropped++;
+        }
+        buffer.addLast(event);
+        return startDraining();
+    }
+
+    /**
+     * Ask for a heartbeat; returns true if the caller has to start draining
+     */
+    synchronized boolean requestHeartbeat() {
+
+        heartbeatDue = true;
+        return startDraining();
+    }
+
+    private boolean startDraining() {
+
+        if (draining) {
+            return false;
+        }
+        draining = true;
+        return true;
+    }
+
+    /**
+     * What to send next, or null once there's nothing left, which also ends the current drain
+     */
+    synchronized Batch next() {
+
+        if (buffer.isEmpty() && dropped == 0 && !heartbeatDue) {
+            draining = false;
+            return null;
+        }
+        Batch batch = new Batch(buffer.pollFirst(), dropped, totalDropped, heartbeatDue);
+        dropped = 0;
+        heartbeatDue = false;
+        return batch;
+    }
+
+    synchronized void sendStarted(long now) {
+
+        sendingSince = now;
+    }
+
+    /**
+     * Returns true if the subscriber was marked stalled during this write
+     */
+    synchronized boolean sendFinished() {
+
+        sendingSince = 0;
+        return stalled;
+    }
+
+    /**
+     * Mark the subscriber stalled if a write has been in progress for timeoutMillis; returns true if it was marked now
+     */
+    synchronized boolean markStalled(long now, long timeoutMillis) {
+
+        if (stalled || sendingSince == 0 || now - sendingSince < timeoutMillis) {
+            return false;
+        }
+        stalled = true;
+        return true;
+    }
+
+    synchronized boolean isStalled() {
+
+        return stalled;
+    }
+
+    /**
+     * Returns true the first time only, so the subscriber's slot is given back once
+     */
+    boolean close() {
+
+        return closed.compareAndSet(false, true);
+    }
+
+    synchronized long getTotalDropped() {
+
+        return totalDropped;
+    }
+
+    static class Batch {
+
+        final StoredEvent event;
+        final long dropped;
+        final long totalDropped;
+        final boolean heartbeat;
+
+        private Batch(StoredEvent event, long dropped, long totalDropped, boolean heartbeat) {
+
+            this.event = event;
+            this.dropped = dropped;
+            this.totalDropped = totalDropped;
+            this.heartbeat = heartbeat;
+        }
+    }
+}
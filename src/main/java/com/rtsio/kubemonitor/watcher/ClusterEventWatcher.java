@@ -1,19 +1,23 @@
 package com.rtsio.kubemonitor.watcher;
 
-import com.rtsio.kubemonitor.KubeUtils;
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
 import com.rtsio.kubemonitor.config.ClusterConfig;
-import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.config.ClusterEventConfig;
+import com.rtsio.kubemonitor.history.EventHistoryStore;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import com.rtsio.kubemonitor.model.WatchStats;
+import com.rtsio.kubemonitor.rules.CompiledEventRule;
+import com.rtsio.kubemonitor.rules.EventRuleEngine;
 import com.rtsio.kubemonitor.service.NotificationService;
 import com.rtsio.kubemonitor.service.DeploymentTrackingService;
+import com.rtsio.kubemonitor.stream.EventStreamHub;
 import io.fabric8.kubernetes.api.model.Event;
-import io.fabric8.kubernetes.api.model.ObjectReference;
-import io.fabric8.kubernetes.client.*;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
-import java.time.Instant;
-import java.time.ZonedDateTime;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Data
 @Slf4j
@@ -22,122 +26,151 @@ public class ClusterEventWatcher {
     private DeploymentTrackingService deploymentTrackingService;
     private NotificationService notificationService;
     private EventCache eventCache;
+    private EventAggregator eventAggregator;
+    private EventRuleEngine eventRuleEngine;
+    private EventHistoryStore eventHistoryStore;
+    private EventStreamHub eventStreamHub;
+    private ClusterClientRegistry clientRegistry;
+    private ScheduledExecutorService reconnectScheduler;
 
     private ClusterConfig clusterConfig;
-    private KubernetesClient client;
-    private Watch watch;
+    private List<ResumableEventWatch> eventWatches;
 
     public ClusterEventWatcher(ClusterConfig clusterConfig,
                                DeploymentTrackingService deploymentTrackingService,
                                NotificationService notificationService,
-                               EventCache eventCache) {
+                               EventCache eventCache,
+                               EventAggregator eventAggregator,
+                               EventRuleEngine eventRuleEngine,
+                               EventHistoryStore eventHistoryStore,
+                               EventStreamHub eventStreamHub,
+                               ClusterClientRegistry clientRegistry,
+                               ScheduledExecutorService reconnectScheduler) {
 
         this.clusterConfig = clusterConfig;
         this.deploymentTrackingService = deploymentTrackingService;
         this.notificationService = notificationService;
         this.eventCache = eventCache;
+        this.eventAggregator = eventAggregator;
+        this.eventRuleEngine = eventRuleEngine;
+        this.eventHistoryStore = eventHistoryStore;
+        this.eventStreamHub = eventStreamHub;
+        this.clientRegistry = clientRegistry;
+        this.reconnectScheduler = reconnectScheduler;
     }
 
+    /**
+     * Start watching; if the watcher was running before, the watches resume from their last seen resourceVersion
+     */
     public void initWatcher() {
 
-        try {
-            KubeUtils.setClusterKubeconfig(clusterConfig.getProject(), clusterConfig.getZone(), clusterConfig.getName());
-        } catch (ClusterDoesNotExistException e) {
-            log.warn("Could not init watcher for project: {}, cluster: {}, as the cluster doesn't exist!", clusterConfig.getProject(), clusterConfig.getName());
-            return;
-        }
-        String oauthToken = KubeUtils.getGcloudToken();
-        String kubectlContext = KubeUtils.getGkeContextName(clusterConfig.getProject(), clusterConfig.getZone(), clusterConfig.getName());
-        Config config = Config.autoConfigure(kubectlContext);
-        config.setOauthToken(oauthToken);
-        Instant startTime = Instant.now();
-        UUID watcherUuid = UUID.randomUUID();
-        String watcherShortId = watcherUuid.toString().substring(0, 6);
-        log.info("Creating watcher for {} - {}, ID: {}", clusterConfig.getProject(), clusterConfig.getName(), watcherShortId);
-
-        client = new DefaultKubernetesClient(config);
-        watch = client.v1().events().inAnyNamespace().watch(new Watcher<Event>() {
-
-            @Override
-            public void eventReceived(Action action, Event resource) {
-
-                // Filter on timestamp to drop events that occurred before watch started
-                Instant eventTimestamp = ZonedDateTime.parse(resource.getLastTimestamp()).toInstant();
-                if (eventTimestamp.compareTo(startTime) < 0) {
-                    log.debug("[{}] [{}] Dropped event occurring before polling started, {}", clusterConfig.getProject(), watcherShortId, resource);
-                    return;
-                }
-                log.debug("[{}] [{}] Received event: {}", clusterConfig.getProject(), watcherShortId, resource);
-                parseEvent(resource);
+        if (eventWatches == null) {
+            log.info("Creating watcher for {} - {}", clusterConfig.getProject(), clusterConfig.getName());
+            eventWatches = new ArrayList<>();
+            for (EventWatchSpec spec : buildWatchSpecs()) {
+                eventWatches.add(new ResumableEventWatch(clusterConfig, clientRegistry, reconnectScheduler, spec, this::parseEvent));
             }
+        }
+        for (ResumableEventWatch eventWatch : eventWatches) {
+            eventWatch.start();
+        }
+    }
 
-            @Override
-            public void onClose(KubernetesClientException e) {
+    public void closeWatcher() {
 
-                if (e == null) {
-                    return;
-                }
-                // Handle "resourceVersion for the provided watch is too old" exceptions = HTTP_GONE
-                if (e.getMessage().contains("resourceVersion")) {
-                    log.debug("[{}] [{}] resourceVersion too old for watch, reconnecting", clusterConfig.getProject(), watcherShortId);
-                    client.close();
-                    initWatcher();
-                } else {
-                    log.error("Unexpected error on watch close", e);
-                }
+        if (eventWatches != null) {
+            for (ResumableEventWatch eventWatch : eventWatches) {
+                eventWatch.stop();
             }
-        });
+        }
     }
 
-    public void closeWatcher() {
+    public List<WatchStats> getStats() {
 
-        watch.close();
-        client.close();
+        List<WatchStats> stats = new ArrayList<>();
+        if (eventWatches != null) {
+            for (ResumableEventWatch eventWatch : eventWatches) {
+                stats.add(eventWatch.getStats());
+            }
+        }
+        return stats;
     }
 
-    public void parseEvent(Event resource) {
+    /**
+     * Build the watches needed to receive only the events the event rules act on. The API server can only AND field
+     * selector terms, so each type/reason combination gets its own narrow watch, multiplied by the included
+     * namespaces (or one watch across all namespaces, excluding any configured namespaces).
+     * With server-side filtering disabled, a single watch receives every event in the cluster.
+     */
+    public List<EventWatchSpec> buildWatchSpecs() {
+
+        ClusterEventConfig eventConfig = clusterConfig.getEvents();
+        if (Boolean.FALSE.equals(eventConfig.getServerSideFiltering())) {
+            return List.of(new EventWatchSpec(null, null));
+        }
 
-        ObjectReference involvedObject = resource.getInvolvedObject();
-        String kind = involvedObject.getKind();
-        String name = involvedObject.getName();
-        String reason = resource.getReason();
-        String type = resource.getType();
-        if (type.equals("Normal")) {
-            if (kind.equals("Deployment") && reason.equals("ScalingReplicaSet")) {
-                deploymentTrackingService.addDeployment(clusterConfig.getProject(), clusterConfig.getName(), name);
-            }
-            if (kind.equals("StatefulSet") && reason.equals("SuccessfulCreate")) {
-                deploymentTrackingService.addDeployment(clusterConfig.getProject(), clusterConfig.getName(), name);
-            }
-            if (reason.equals("Killing")) {
-                if (resource.getMessage().contains("failed liveness probe") || resource.getMessage().contains("failed readiness probe")) {
-                    String message = String.format("%s: %s - %s", clusterConfig.getProject(), resource.getMessage(), name);
-                    notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), message);
+        List<String> selectors = eventRuleEngine.getFieldSelectors(clusterConfig);
+
+        List<EventWatchSpec> specs = new ArrayList<>();
+        ClusterEventConfig.EventNamespaces namespaces = eventConfig.getNamespaces();
+        if (namespaces != null && namespaces.getInclude() != null && !namespaces.getInclude().isEmpty()) {
+            for (String namespace : namespaces.getInclude()) {
+                for (String selector : selectors) {
+                    specs.add(new EventWatchSpec(namespace, selector));
                 }
             }
-        } else if (type.equals("Warning")) {
-            if (reason.equals("Unhealthy")) {
-                if (eventCache.hasCached(resource.getMetadata().getUid())) {
-                    log.debug("Event with message: \"{}\" already cached, ignoring", resource.getMessage());
-                } else {
-                    if (resource.getMessage().contains("Liveness")) {
-                        if (clusterConfig.getEvents().getTypes().getLivenessProbe()) {
-                            String message = String.format("%s: %s - %s", clusterConfig.getProject(), resource.getMessage(), name);
-                            notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), message);
-                        }
-                    } else if (resource.getMessage().contains("Readiness")) {
-                        if (clusterConfig.getEvents().getTypes().getReadinessProbe()) {
-                            String message = String.format("%s: %s - %s", clusterConfig.getProject(), resource.getMessage(), name);
-                            notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), message);
-                        }
-                    }
-                }
-            } else if (reason.equals("OOMKilling")) {
-                if (clusterConfig.getEvents().getTypes().getOutOfMemoryKill()) {
-                    String message = String.format("%s: OOM kill on node %s", clusterConfig.getProject(), name);
-                    notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), message);
+        } else {
+            StringBuilder excludedNamespaces = new StringBuilder();
+            if (namespaces != null && namespaces.getExclude() != null) {
+                for (String namespace : namespaces.getExclude()) {
+                    excludedNamespaces.append(",metadata.namespace!=").append(namespace);
                 }
             }
+            for (String selector : selectors) {
+                specs.add(new EventWatchSpec(null, selector + excludedNamespaces));
+            }
+        }
+        return specs;
+    }
+
+    /**
+     * Act on an event as decided by the first matching event rule: track a deployment, or send a notification.
+     * A matching rule that is disabled for this cluster (see "enabled-by") means the event is ignored.
+     * Rules with dedupe only act once per event for as long as the event cache remembers it.
+     * Events that are acted on are also stored in the event history and published to event stream subscribers.
+     * Notifications go through the event aggregator, which sends repeats of the same problem as periodic digests.
+     */
+    public void parseEvent(Event resource) {
+
+        CompiledEventRule rule = eventRuleEngine.match(resource);
+        if (rule == null) {
+            countDropped("no-rule");
+            return;
         }
+        if (!rule.isEnabledFor(clusterConfig)) {
+            log.debug("Event matched rule {}, which is disabled for {} - {}, ignoring", rule.getName(), clusterConfig.getProject(), clusterConfig.getName());
+            countDropped("rule-disabled");
+            return;
+        }
+        if (rule.isDedupe() && eventCache.hasCached(clusterConfig.getProject() + "/" + clusterConfig.getName(), resource.getMetadata().getUid())) {
+            log.debug("Event with message: \"{}\" already cached, ignoring", resource.getMessage());
+            countDropped("duplicate");
+            return;
+        }
+        eventHistoryStore.append(clusterConfig, resource);
+        eventStreamHub.publish(clusterConfig, resource);
+        switch (rule.getAction()) {
+            case TRACK_DEPLOYMENT:
+                deploymentTrackingService.addDeployment(clusterConfig, resource.getInvolvedObject().getName());
+                break;
+            case NOTIFY:
+                eventAggregator.notifyEvent(clusterConfig, resource, rule.getTemplate().render(clusterConfig, resource));
+                break;
+        }
+    }
+
+    private void countDropped(String reason) {
+
+        KubemonitorMetrics.counter(KubemonitorMetrics.EVENTS_DROPPED, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName(), "reason", reason).increment();
     }
 }
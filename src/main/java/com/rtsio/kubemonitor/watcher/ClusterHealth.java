@@ -0,0 +1,228 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.model.ClusterState;
+import com.rtsio.kubemonitor.model.WorkloadKind;
+import com.rtsio.kubemonitor.service.DeploymentTrackingService;
+import com.rtsio.kubemonitor.service.NotificationService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Desired-vs-actual state of one cluster's expected workloads, updated one workload at a time from informer
+ * notifications instead of being recomputed from full lists. Only the problems are kept (expected workloads that
+ * aren't ready, or don't exist), so evaluating the cluster's state is proportional to the number of problems, and
+ * reading it is returning the last snapshot.
+ *
+ * A change of state is notified once it has lasted notifyAfter, so the brief dip while a rollout is picked up by
+ * deployment tracking doesn't alert. Nothing is notified until the informer has finished its initial list (see
+ * markSynced): until then every expected workload looks missing, and it stays that way for a cluster that can't be
+ * listed at all.
+ */
+@Slf4j
+public class ClusterHealth {
+
+    private final ClusterConfig clusterConfig;
+    private final DeploymentTrackingService deploymentTrackingService;
+    private final NotificationService notificationService;
+    private final Duration notifyAfter;
+
+    private final Set<String> expectedStatefulSets;
+    private final Set<String> expectedDeployments;
+
+    // "kind/namespace/name" of every expected workload present in the cluster
+    private final Set<String> presentWorkloads = new HashSet<>();
+    // "kind/name" -> number of namespaces it's present in
+    private final Map<String, Integer> presentCounts = new HashMap<>();
+    // "kind/name" of expected workloads not present in any namespace, sorted for stable output
+    private final Set<String> missingWorkloads = new TreeSet<>();
+    // "kind/namespace/name" -> present workloads that aren't fully ready
+    private final Map<String, NotReadyWorkload> notReadyWorkloads = new TreeMap<>();
+
+    private volatile Snapshot snapshot;
+    private ClusterState notifiedState = ClusterState.OK;
+    private Instant stateChangedAt = Instant.now();
+    private boolean synced;
+
+    public ClusterHealth(ClusterConfig clusterConfig,
+                         DeploymentTrackingService deploymentTrackingService,
+                         NotificationService notificationService,
+                         Duration notifyAfter) {
+
+        this.clusterConfig = clusterConfig;
+        this.deploymentTrackingService = deploymentTrackingService;
+        this.notificationService = notificationService;
+        this.notifyAfter = notifyAfter;
+        this.expectedStatefulSets = new HashSet<>(clusterConfig.getExpectedWorkloads().getStatefulSets());
+        this.expectedDeployments = new HashSet<>(clusterConfig.getExpectedWorkloads().getDeployments());
+        addExpectedAsMissing();
+        evaluate();
+    }
+
+    /**
+     * The informer has finished its initial list, so what is missing now really is; from here on state changes are
+     * notified, the first one once it has lasted notifyAfter from now
+     */
+    public synchronized void markSynced() {
+
+        if (!synced) {
+            synced = true;
+            stateChangedAt = Instant.now();
+            evaluate();
+        }
+    }
+
+    /**
+     * Forget every workload seen, for an informer starting over with an empty cache, and wait for its initial list
+     * again. The notified state is kept, so only a real change is notified once the workloads are listed again.
+     */
+    public synchronized void reset() {
+
+        presentWorkloads.clear();
+        presentCounts.clear();
+        notReadyWorkloads.clear();
+        addExpectedAsMissing();
+        synced = false;
+        evaluate();
+    }
+
+    public void onStatefulSetUpdated(String namespace, String name, Integer replicas, Integer readyReplicas) {
+
+        if (expectedStatefulSets.contains(name)) {
+            onWorkloadUpdated(WorkloadKind.STATEFUL_SET, namespace, name, replicas, readyReplicas);
+        }
+    }
+
+    public void onStatefulSetDeleted(String namespace, String name) {
+
+        if (expectedStatefulSets.contains(name)) {
+            onWorkloadDeleted(WorkloadKind.STATEFUL_SET, namespace, name);
+        }
+    }
+
+    public void onDeploymentUpdated(String namespace, String name, Integer replicas, Integer readyReplicas) {
+
+        if (expectedDeployments.contains(name)) {
+            onWorkloadUpdated(WorkloadKind.DEPLOYMENT, namespace, name, replicas, readyReplicas);
+        }
+    }
+
+    public void onDeploymentDeleted(String namespace, String name) {
+
+        if (expectedDeployments.contains(name)) {
+            onWorkloadDeleted(WorkloadKind.DEPLOYMENT, namespace, name);
+        }
+    }
+
+    public Snapshot getSnapshot() {
+
+        return snapshot;
+    }
+
+    /**
+     * Recompute state from the current problems and the deployments in progress, and once synced, notify a state that
+     * has lasted long enough. Runs after every change, and periodically so rollout windows ending are picked up.
+     */
+    public synchronized void evaluate() {
+
+        List<String> deploymentsInProgress = deploymentTrackingService.getActiveDeploymentsForCluster(clusterConfig.getProject(), clusterConfig.getName());
+        Set<String> inProgress = new HashSet<>(deploymentsInProgress);
+        List<String> issues = new ArrayList<>();
+        for (NotReadyWorkload workload : notReadyWorkloads.values()) {
+            if (!inProgress.contains(workload.getName())) {
+                issues.add(String.format("%s %s expected %d replicas, but only %d ready", workload.getKind(), workload.getName(), workload.getReplicas(), workload.getReadyReplicas()));
+            }
+        }
+        for (String workload : missingWorkloads) {
+            String[] kindAndName = workload.split("/", 2);
+            issues.add(String.format("%s %s not found in cluster %s", kindAndName[0], kindAndName[1], clusterConfig.getName()));
+        }
+
+        ClusterState state = (issues.isEmpty() ? ClusterState.OK : ClusterState.DEGRADED);
+        Instant now = Instant.now();
+        if (snapshot != null && snapshot.getState() != state) {
+            stateChangedAt = now;
+        }
+        snapshot = new Snapshot(state, Collections.unmodifiableList(issues), Collections.unmodifiableList(deploymentsInProgress), now);
+
+        if (synced && state != notifiedState && Duration.between(stateChangedAt, now).compareTo(notifyAfter) >= 0) {
+            log.info("Project: {}, cluster: {} changed from {} to {}", clusterConfig.getProject(), clusterConfig.getName(), notifiedState, state);
+            notifiedState = state;
+            notificationService.notifyHealthChange(clusterConfig.getProject(), clusterConfig.getName(), state, issues);
+        }
+    }
+
+    private void addExpectedAsMissing() {
+
+        for (String name : expectedStatefulSets) {
+            missingWorkloads.add(WorkloadKind.STATEFUL_SET + "/" + name);
+        }
+        for (String name : expectedDeployments) {
+            missingWorkloads.add(WorkloadKind.DEPLOYMENT + "/" + name);
+        }
+    }
+
+    private synchronized void onWorkloadUpdated(String kind, String namespace, String name, Integer replicas, Integer readyReplicas) {
+
+        String workloadKey = kind + "/" + namespace + "/" + name;
+        if (presentWorkloads.add(workloadKey)) {
+            if (presentCounts.merge(kind + "/" + name, 1, Integer::sum) == 1) {
+                missingWorkloads.remove(kind + "/" + name);
+            }
+        }
+        int expected = (replicas == null ? 0 : replicas);
+        int ready = (readyReplicas == null ? 0 : readyReplicas);
+        if (expected != ready) {
+            notReadyWorkloads.put(workloadKey, new NotReadyWorkload(kind, name, expected, ready));
+        } else {
+            notReadyWorkloads.remove(workloadKey);
+        }
+        evaluate();
+    }
+
+    private synchronized void onWorkloadDeleted(String kind, String namespace, String name) {
+
+        String workloadKey = kind + "/" + namespace + "/" + name;
+        notReadyWorkloads.remove(workloadKey);
+        if (presentWorkloads.remove(workloadKey)) {
+            if (presentCounts.merge(kind + "/" + name, -1, Integer::sum) == 0) {
+                presentCounts.remove(kind + "/" + name);
+                missingWorkloads.add(kind + "/" + name);
+            }
+        }
+        evaluate();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Snapshot {
+
+        private ClusterState state;
+        private List<String> issues;
+        private List<String> deploymentsActive;
+        private Instant evaluatedAt;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class NotReadyWorkload {
+
+        private String kind;
+        private String name;
+        private int replicas;
+        private int readyReplicas;
+    }
+}
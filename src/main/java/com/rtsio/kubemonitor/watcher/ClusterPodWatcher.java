@@ -0,0 +1,319 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.client.WorkloadLister;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import io.fabric8.kubernetes.api.model.ListOptions;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a cluster's pods for failing containers, without relying on Events, which the API server can drop or expire
+ * before they're seen: a container restarting (called out if it was OOMKilled) and a container going into
+ * CrashLoopBackOff. Only a PodProjection is kept per pod instead of the Pod, and the initial list is paged, so memory
+ * stays small on clusters with many pods.
+ * Like ResumableEventWatch, the watch resumes from the last seen resourceVersion and reconnects with backoff; if the
+ * resourceVersion is gone, pods are listed again and compared to the projections, so restarts while disconnected
+ * still get noticed. Listing a large cluster takes a while, so it runs on the relist executor rather than on the
+ * caller's thread or the reconnect scheduler shared with every other watch.
+ */
+@Slf4j
+public class ClusterPodWatcher {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 300000;
+    private static final String CRASH_LOOP = "CrashLoopBackOff";
+    private static final String OOM_KILLED = "OOMKilled";
+
+    private final ClusterConfig clusterConfig;
+    private final ClusterClientRegistry clientRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService relistExecutor;
+    private final EventAggregator eventAggregator;
+    private final int pageSize;
+
+    // namespace/name -> projection
+    private final Map<String, PodProjection> pods = new ConcurrentHashMap<>();
+
+    private Watch watch;
+    private Gauge podsGauge;
+    private ScheduledFuture<?> pendingReconnect;
+    private boolean relisting;
+    private volatile boolean stopped = true;
+    private volatile String resourceVersion;
+    private boolean listed;
+    private int consecutiveFailures;
+
+    public ClusterPodWatcher(ClusterConfig clusterConfig,
+                             ClusterClientRegistry clientRegistry,
+                             ScheduledExecutorService scheduler,
+                             ExecutorService relistExecutor,
+                             EventAggregator eventAggregator,
+                             int pageSize) {
+
+        this.clusterConfig = clusterConfig;
+        this.clientRegistry = clientRegistry;
+        this.scheduler = scheduler;
+        this.relistExecutor = relistExecutor;
+        this.eventAggregator = eventAggregator;
+        this.pageSize = pageSize;
+    }
+
+    public ClusterConfig getClusterConfig() {
+
+        return clusterConfig;
+    }
+
+    public int getPodCount() {
+
+        return pods.size();
+    }
+
+    public synchronized void start() {
+
+        stopped = false;
+        if (podsGauge == null) {
+            podsGauge = Gauge.builder(KubemonitorMetrics.POD_WATCH_PODS, pods, Map::size)
+                    .description("Pods tracked by the pod watcher")
+                    .tags("project", clusterConfig.getProject(), "cluster", clusterConfig.getName())
+                    .register(Metrics.globalRegistry);
+        }
+        connect();
+    }
+
+    /**
+     * Close the watch; projections and the resourceVersion are kept, so a later start() picks up where this left off
+     */
+    public synchronized void stop() {
+
+        stopped = true;
+        if (podsGauge != null) {
+            Metrics.globalRegistry.remove(podsGauge);
+            podsGauge = null;
+        }
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+            pendingReconnect = null;
+        }
+        if (watch != null) {
+            watch.close();
+            watch = null;
+        }
+    }
+
+    private synchronized void connect() {
+
+        pendingReconnect = null;
+        // A relist in progress goes on to watch by itself
+        if (stopped || relisting) {
+            return;
+        }
+        if (resourceVersion != null) {
+            watch();
+            return;
+        }
+        relisting = true;
+        try {
+            relistExecutor.execute(this::relistAndWatch);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            relisting = false;
+        }
+    }
+
+    private void relistAndWatch() {
+
+        try {
+            relist(clientRegistry.getClient(clusterConfig));
+        } catch (ClusterDoesNotExistException | RuntimeException e) {
+            synchronized (this) {
+                relisting = false;
+                onConnectFailed(e);
+            }
+            return;
+        }
+        synchronized (this) {
+            relisting = false;
+            watch();
+        }
+    }
+
+    private synchronized void watch() {
+
+        if (stopped) {
+            return;
+        }
+        try {
+            KubernetesClient client = clientRegistry.getClient(clusterConfig);
+            ListOptions watchOptions = new ListOptionsBuilder()
+                    .withResourceVersion(resourceVersion)
+                    .withAllowWatchBookmarks(true)
+                    .build();
+            log.info("Watching pods in project: {}, cluster: {} from resourceVersion {}", clusterConfig.getProject(), clusterConfig.getName(), resourceVersion);
+            watch = client.pods().inAnyNamespace().watch(watchOptions, new PodWatcher());
+        } catch (ClusterDoesNotExistException | RuntimeException e) {
+            onConnectFailed(e);
+        }
+    }
+
+    /**
+     * Anything that goes wrong listing or watching, including unexpected errors, is retried with backoff
+     */
+    private void onConnectFailed(Exception e) {
+
+        if (e instanceof ClusterDoesNotExistException) {
+            log.warn("Could not watch pods in project: {}, cluster: {}, as the cluster doesn't exist!", clusterConfig.getProject(), clusterConfig.getName());
+        } else {
+            log.warn("Could not watch pods in project: {}, cluster: {}", clusterConfig.getProject(), clusterConfig.getName(), e);
+            if (e instanceof KubernetesClientException && ((KubernetesClientException) e).getCode() == HttpURLConnection.HTTP_GONE) {
+                resourceVersion = null;
+            }
+        }
+        scheduleReconnect();
+    }
+
+    /**
+     * List all pods into fresh projections. The first list is the baseline; on later ones, each pod is compared to
+     * what was known before, to catch what happened while the watch was down.
+     */
+    private void relist(KubernetesClient client) {
+
+        Map<String, PodProjection> current = new HashMap<>();
+        String listResourceVersion = WorkloadLister.listPods(client, pageSize, current::clear, pod -> {
+            PodProjection projection = PodProjection.of(pod);
+            current.put(getKey(projection.namespace, projection.name), projection);
+        });
+        if (listed) {
+            for (Map.Entry<String, PodProjection> entry : current.entrySet()) {
+                compare(pods.get(entry.getKey()), entry.getValue());
+            }
+        }
+        pods.keySet().retainAll(current.keySet());
+        pods.putAll(current);
+        listed = true;
+        resourceVersion = listResourceVersion;
+        log.info("Listed {} pods in project: {}, cluster: {}", current.size(), clusterConfig.getProject(), clusterConfig.getName());
+    }
+
+    void onPod(Watcher.Action action, Pod pod) {
+
+        String key = getKey(pod.getMetadata().getNamespace(), pod.getMetadata().getName());
+        if (action == Watcher.Action.DELETED) {
+            pods.remove(key);
+            return;
+        }
+        PodProjection current = PodProjection.of(pod);
+        compare(pods.put(key, current), current);
+    }
+
+    /**
+     * Notify containers whose restart count went up or that went into CrashLoopBackOff. New pods start from zero
+     * restarts, so a pod seen for the first time is only a baseline.
+     */
+    private void compare(PodProjection previous, PodProjection current) {
+
+        if (previous == null) {
+            return;
+        }
+        for (int i = 0; i < current.containers.length; i++) {
+            int index = previous.indexOf(current.containers[i]);
+            int previousRestarts = (index < 0 ? 0 : previous.restartCounts[index]);
+            String previousWaiting = (index < 0 ? null : previous.waitingReasons[index]);
+            if (current.restartCounts[i] > previousRestarts) {
+                boolean oomKilled = OOM_KILLED.equals(current.terminationReasons[i]);
+                notifyContainer(current, i, (oomKilled ? OOM_KILLED : "Restarted"),
+                        String.format("Container `%s` of pod `%s` in namespace `%s` %s, %d restarts so far (cluster `%s`, project `%s`)",
+                                current.containers[i], current.name, current.namespace,
+                                (oomKilled ? "was OOMKilled and restarted" : "restarted (last exit: " + current.terminationReasons[i] + ")"),
+                                current.restartCounts[i], clusterConfig.getName(), clusterConfig.getProject()));
+            }
+            if (CRASH_LOOP.equals(current.waitingReasons[i]) && !CRASH_LOOP.equals(previousWaiting)) {
+                notifyContainer(current, i, CRASH_LOOP,
+                        String.format("Container `%s` of pod `%s` in namespace `%s` is in CrashLoopBackOff after %d restarts (cluster `%s`, project `%s`)",
+                                current.containers[i], current.name, current.namespace, current.restartCounts[i],
+                                clusterConfig.getName(), clusterConfig.getProject()));
+            }
+        }
+    }
+
+    private void notifyContainer(PodProjection pod, int container, String reason, String text) {
+
+        KubemonitorMetrics.counter(KubemonitorMetrics.CONTAINER_FAILURES, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName(), "reason", reason).increment();
+        // Grouped by owner and container, so replicas of the same crashing container share one digest
+        eventAggregator.notify(clusterConfig, pod.namespace, "Pod", pod.owner, reason, pod.containers[container], text);
+    }
+
+    private synchronized void onWatchClosed(KubernetesClientException e) {
+
+        if (stopped) {
+            return;
+        }
+        watch = null;
+        if (e != null && e.getCode() == HttpURLConnection.HTTP_GONE) {
+            log.info("Pod watch resourceVersion {} too old for project: {}, cluster: {}, relisting", resourceVersion, clusterConfig.getProject(), clusterConfig.getName());
+            resourceVersion = null;
+        } else {
+            log.warn("Pod watch for project: {}, cluster: {} closed unexpectedly, reconnecting", clusterConfig.getProject(), clusterConfig.getName(), e);
+        }
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+
+        if (stopped || pendingReconnect != null) {
+            return;
+        }
+        long backoffMillis = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(consecutiveFailures, 20));
+        long delayMillis = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        consecutiveFailures++;
+        KubemonitorMetrics.counter(KubemonitorMetrics.WATCH_RECONNECTS, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName()).increment();
+        pendingReconnect = scheduler.schedule(this::connect, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static String getKey(String namespace, String name) {
+
+        return namespace + "/" + name;
+    }
+
+    private class PodWatcher implements Watcher<Pod> {
+
+        @Override
+        public void eventReceived(Action action, Pod resource) {
+
+            resourceVersion = resource.getMetadata().getResourceVersion();
+            synchronized (ClusterPodWatcher.this) {
+                consecutiveFailures = 0;
+            }
+            if (action == Action.BOOKMARK || action == Action.ERROR) {
+                return;
+            }
+            onPod(action, resource);
+        }
+
+        @Override
+        public void onClose(KubernetesClientException e) {
+
+            onWatchClosed(e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentList;
+import io.fabric8.kubernetes.api.model.apps.DeploymentStatus;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.api.model.apps.StatefulSetList;
+import io.fabric8.kubernetes.api.model.apps.StatefulSetStatus;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Keeps an in-memory copy of all Deployments and StatefulSets in a cluster, kept in sync by the
+ * fabric8 shared informers (list once, then watch). Readers get the cached objects instead of
+ * doing a full list call against the API server. Every change is also passed on to the cluster's health model.
+ */
+@Data
+@Slf4j
+public class ClusterWorkloadInformer {
+
+    // Informers periodically re-deliver every cached object as an update; 10 minutes is enough to catch missed changes
+    private static final long RESYNC_PERIOD_MILLIS = 600000;
+
+    private ClusterClientRegistry clientRegistry;
+
+    private ClusterConfig clusterConfig;
+    private ClusterHealth health;
+    private KubernetesClient client;
+    private SharedInformerFactory informerFactory;
+    private SharedIndexInformer<Deployment> deploymentInformer;
+    private SharedIndexInformer<StatefulSet> statefulSetInformer;
+    private volatile Instant lastSyncTime;
+
+    public ClusterWorkloadInformer(ClusterConfig clusterConfig, ClusterClientRegistry clientRegistry, ClusterHealth health) {
+
+        this.clusterConfig = clusterConfig;
+        this.clientRegistry = clientRegistry;
+        this.health = health;
+    }
+
+    public void initInformer() {
+
+        try {
+            client = clientRegistry.getClient(clusterConfig);
+        } catch (ClusterDoesNotExistException e) {
+            log.warn("Could not init informer for project: {}, cluster: {}, as the cluster doesn't exist!", clusterConfig.getProject(), clusterConfig.getName());
+            return;
+        }
+        log.info("Creating workload informer for {} - {}", clusterConfig.getProject(), clusterConfig.getName());
+
+        informerFactory = client.informers();
+        deploymentInformer = informerFactory.sharedIndexInformerFor(Deployment.class, DeploymentList.class, RESYNC_PERIOD_MILLIS);
+        statefulSetInformer = informerFactory.sharedIndexInformerFor(StatefulSet.class, StatefulSetList.class, RESYNC_PERIOD_MILLIS);
+        deploymentInformer.addEventHandler(new SyncTrackingHandler<>());
+        statefulSetInformer.addEventHandler(new SyncTrackingHandler<>());
+        deploymentInformer.addEventHandler(new DeploymentHealthHandler());
+        statefulSetInformer.addEventHandler(new StatefulSetHealthHandler());
+        informerFactory.startAllRegisteredInformers();
+    }
+
+    /**
+     * Stop the informers; the client is shared and stays open
+     */
+    public void closeInformer() {
+
+        if (informerFactory != null) {
+            informerFactory.stopAllRegisteredInformers();
+        }
+    }
+
+    /**
+     * Start over on the cluster's current client, e.g. after it was rebuilt or dropped. The new informers begin with an
+     * empty cache and never see deletes that happened in between, so the health model forgets every workload and is
+     * rebuilt from their initial list.
+     */
+    public synchronized void restartInformer() {
+
+        closeInformer();
+        informerFactory = null;
+        deploymentInformer = null;
+        statefulSetInformer = null;
+        health.reset();
+        initInformer();
+    }
+
+    /**
+     * Re-evaluate the cluster's health once the initial list is done; before that every expected workload looks
+     * missing, and a cluster that can't be listed would be reported as missing all of them
+     */
+    public synchronized void evaluateHealth() {
+
+        if (!hasSynced()) {
+            return;
+        }
+        health.markSynced();
+        health.evaluate();
+    }
+
+    /**
+     * True once both informers have finished their initial list; until then the cache is incomplete
+     */
+    public boolean hasSynced() {
+
+        return deploymentInformer != null && statefulSetInformer != null
+                && deploymentInformer.hasSynced() && statefulSetInformer.hasSynced();
+    }
+
+    public List<Deployment> getDeployments() {
+
+        return deploymentInformer.getIndexer().list();
+    }
+
+    public List<StatefulSet> getStatefulSets() {
+
+        return statefulSetInformer.getIndexer().list();
+    }
+
+    /**
+     * Records the time of the last add/update/delete (including periodic resyncs) seen by either informer
+     */
+    private class SyncTrackingHandler<T> implements ResourceEventHandler<T> {
+
+        @Override
+        public void onAdd(T obj) {
+
+            lastSyncTime = Instant.now();
+        }
+
+        @Override
+        public void onUpdate(T oldObj, T newObj) {
+
+            lastSyncTime = Instant.now();
+        }
+
+        @Override
+        public void onDelete(T obj, boolean deletedFinalStateUnknown) {
+
+            lastSyncTime = Instant.now();
+        }
+    }
+
+    private class DeploymentHealthHandler implements ResourceEventHandler<Deployment> {
+
+        @Override
+        public void onAdd(Deployment deployment) {
+
+            onUpdate(null, deployment);
+        }
+
+        @Override
+        public void onUpdate(Deployment oldDeployment, Deployment deployment) {
+
+            DeploymentStatus status = deployment.getStatus();
+            health.onDeploymentUpdated(deployment.getMetadata().getNamespace(), deployment.getMetadata().getName(),
+                    (status == null ? null : status.getReplicas()), (status == null ? null : status.getReadyReplicas()));
+        }
+
+        @Override
+        public void onDelete(Deployment deployment, boolean deletedFinalStateUnknown) {
+
+            health.onDeploymentDeleted(deployment.getMetadata().getNamespace(), deployment.getMetadata().getName());
+        }
+    }
+
+    private class StatefulSetHealthHandler implements ResourceEventHandler<StatefulSet> {
+
+        @Override
+        public void onAdd(StatefulSet statefulSet) {
+
+            onUpdate(null, statefulSet);
+        }
+
+        @Override
+        public void onUpdate(StatefulSet oldStatefulSet, StatefulSet statefulSet) {
+
+            StatefulSetStatus status = statefulSet.getStatus();
+            health.onStatefulSetUpdated(statefulSet.getMetadata().getNamespace(), statefulSet.getMetadata().getName(),
+                    (status == null ? null : status.getReplicas()), (status == null ? null : status.getReadyReplicas()));
+        }
+
+        @Override
+        public void onDelete(StatefulSet statefulSet, boolean deletedFinalStateUnknown) {
+
+            health.onStatefulSetDeleted(statefulSet.getMetadata().getNamespace(), statefulSet.getMetadata().getName());
+        }
+    }
+}
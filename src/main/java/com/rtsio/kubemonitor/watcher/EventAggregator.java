@@ -0,0 +1,278 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import com.rtsio.kubemonitor.service.NotificationService;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.ObjectReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Groups event notifications so an incident sends a few digests instead of a message per event. Events are grouped by
+ * cluster, namespace, owner of the involved object, reason and message with the variable parts (numbers, IPs, IDs)
+ * taken out. The first event of a group is sent right away; the ones after it are counted, and every interval each
+ * group that received events sends one digest with their count and first and last seen times. A group that stays quiet
+ * for a whole interval is dropped, so its next event is sent right away again.
+ * Owners are derived from the generated parts of pod and ReplicaSet names, since events don't carry owner references.
+ */
+@Component
+@Slf4j
+public class EventAggregator {
+
+    // Pod and ReplicaSet name suffixes are drawn from this alphabet (no vowels, so they can't spell words)
+    private static final String GENERATED = "[bcdfghjklmnpqrstvwxz2456789]";
+    private static final Pattern DEPLOYMENT_POD = Pattern.compile("-" + GENERATED + "{6,10}-" + GENERATED + "{5}$");
+    private static final Pattern GENERATED_POD = Pattern.compile("-" + GENERATED + "{5}$");
+    private static final Pattern STATEFUL_SET_POD = Pattern.compile("-\\d+$");
+    private static final Pattern REPLICA_SET = Pattern.compile("-" + GENERATED + "{6,10}$");
+
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}(-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12}");
+    private static final Pattern IP_ADDRESS = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}(:\\d+)?");
+    private static final Pattern HEX_ID = Pattern.compile("\\b(?=[0-9a-f]*\\d)[0-9a-f]{8,}\\b");
+    private static final Pattern NUMBER = Pattern.compile("\\d+(\\.\\d+)?");
+    private static final int MAX_MESSAGE_KEY_CHARS = 256;
+
+    private final NotificationService notificationService;
+    private final boolean enabled;
+    private final long intervalMillis;
+    private final int windowMinutes;
+    private final int maxGroups;
+
+    private final Map<String, EventGroup> groups = new ConcurrentHashMap<>();
+    // Groups in the map, kept next to it so the limit can be checked and taken in one step
+    private final AtomicInteger groupCount = new AtomicInteger();
+
+    @Autowired
+    public EventAggregator(NotificationService notificationService,
+                           @Value("${event-digest.enabled}") boolean enabled,
+                           @Value("${event-digest.interval-seconds}") long intervalSeconds,
+                           @Value("${event-digest.window-minutes}") int windowMinutes,
+                           @Value("${event-digest.max-groups}") int maxGroups) {
+
+        this.notificationService = notificationService;
+        this.enabled = enabled;
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+        this.windowMinutes = windowMinutes;
+        this.maxGroups = maxGroups;
+    }
+
+    /**
+     * Send the rendered notification for an event, or count it towards its group's next digest
+     */
+    public void notifyEvent(ClusterConfig clusterConfig, Event event, String text) {
+
+        ObjectReference involvedObject = event.getInvolvedObject();
+        String kind = (involvedObject == null ? null : involvedObject.getKind());
+        notify(clusterConfig,
+                (involvedObject == null ? null : involvedObject.getNamespace()),
+                kind,
+                getOwnerName(kind, (involvedObject == null ? null : involvedObject.getName())),
+                event.getReason(),
+                event.getMessage(),
+                text);
+    }
+
+    /**
+     * Send a notification about something that happened to the owner's objects, or count it towards its group's next
+     * digest; the message is what's compared (after normalizing), text is what's sent
+     */
+    public void notify(ClusterConfig clusterConfig, String namespace, String kind, String owner, String reason, String message, String text) {
+
+        if (!enabled) {
+            notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), text);
+            return;
+        }
+        String key = String.join("/", clusterConfig.getProject(), clusterConfig.getName(), String.valueOf(namespace),
+                String.valueOf(kind), String.valueOf(owner), String.valueOf(reason), normalizeMessage(message));
+
+        long now = System.currentTimeMillis();
+        boolean[] first = new boolean[1];
+        boolean[] full = new boolean[1];
+        groups.compute(key, (groupKey, group) -> {
+            if (group == null) {
+                // Reserved here rather than checked before, so concurrent new groups can't go past the limit together
+                if (groupCount.incrementAndGet() > maxGroups) {
+                    groupCount.decrementAndGet();
+                    full[0] = true;
+                    return null;
+                }
+                group = new EventGroup(clusterConfig.getProject(), clusterConfig.getName(), namespace, kind, owner, reason, now, windowMinutes);
+                first[0] = true;
+            } else {
+                group.pending++;
+            }
+            group.record(now, text);
+            return group;
+        });
+        if (full[0]) {
+            // Too many distinct groups to keep track of; better to send than to drop
+            log.debug("Event digest groups full, sending event for project: {}, cluster: {} right away", clusterConfig.getProject(), clusterConfig.getName());
+            notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), text);
+        } else if (first[0]) {
+            notificationService.notifyEvent(clusterConfig.getProject(), clusterConfig.getName(), text);
+        } else {
+            KubemonitorMetrics.counter(KubemonitorMetrics.EVENTS_AGGREGATED, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName()).increment();
+        }
+    }
+
+    /**
+     * Send a digest for every group that received events since its last one, and drop groups that stayed quiet
+     */
+    @Scheduled(fixedDelayString = "#{${event-digest.interval-seconds} * 1000}", initialDelayString = "#{${event-digest.interval-seconds} * 1000}")
+    public void sendDigests() {
+
+        long now = System.currentTimeMillis();
+        List<EventGroup> digests = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (String key : groups.keySet()) {
+            groups.computeIfPresent(key, (groupKey, group) -> {
+                if (group.pending > 0) {
+                    digests.add(group);
+                    texts.add(group.buildDigest(now));
+                    group.pending = 0;
+                    return group;
+                }
+                if (now - group.lastSeen >= intervalMillis) {
+                    groupCount.decrementAndGet();
+                    return null;
+                }
+                return group;
+            });
+        }
+        for (int i = 0; i < digests.size(); i++) {
+            EventGroup group = digests.get(i);
+            KubemonitorMetrics.counter(KubemonitorMetrics.EVENT_DIGESTS, "project", group.project, "cluster", group.cluster).increment();
+            try {
+                notificationService.notifyEvent(group.project, group.cluster, texts.get(i));
+            } catch (Exception e) {
+                log.error("Could not send event digest for project: {}, cluster: {}", group.project, group.cluster, e);
+            }
+        }
+    }
+
+    public int getGroupCount() {
+
+        return groups.size();
+    }
+
+    /**
+     * Name of what created the object, e.g. the Deployment of a pod, derived from the generated parts of its name
+     */
+    static String getOwnerName(String kind, String name) {
+
+        if (name == null) {
+            return null;
+        }
+        if ("Pod".equals(kind)) {
+            String owner = DEPLOYMENT_POD.matcher(name).replaceFirst("");
+            if (owner.equals(name)) {
+                owner = GENERATED_POD.matcher(name).replaceFirst("");
+            }
+            if (owner.equals(name)) {
+                owner = STATEFUL_SET_POD.matcher(name).replaceFirst("");
+            }
+            return owner;
+        }
+        if ("ReplicaSet".equals(kind)) {
+            return REPLICA_SET.matcher(name).replaceFirst("");
+        }
+        return name;
+    }
+
+    /**
+     * The message with the parts that differ between otherwise identical events replaced by placeholders
+     */
+    static String normalizeMessage(String message) {
+
+        if (message == null) {
+            return "";
+        }
+        String normalized = (message.length() > MAX_MESSAGE_KEY_CHARS ? message.substring(0, MAX_MESSAGE_KEY_CHARS) : message);
+        normalized = UUID.matcher(normalized).replaceAll("<id>");
+        normalized = IP_ADDRESS.matcher(normalized).replaceAll("<ip>");
+        normalized = HEX_ID.matcher(normalized).replaceAll("<id>");
+        return NUMBER.matcher(normalized).replaceAll("<n>");
+    }
+
+    /**
+     * Events of one group; only changed inside the groups map's compute functions, which lock the group's entry
+     */
+    private static class EventGroup {
+
+        private final String project;
+        private final String cluster;
+        private final String namespace;
+        private final String kind;
+        private final String owner;
+        private final String reason;
+        private final long firstSeen;
+        // Per-minute counts for the sliding window, indexed by minute modulo the window size
+        private final long[] minuteCounts;
+        private long currentMinute;
+        private long lastSeen;
+        private long total;
+        private long pending;
+        private String lastText;
+
+        private EventGroup(String project, String cluster, String namespace, String kind, String owner, String reason, long firstSeen, int windowMinutes) {
+
+            this.project = project;
+            this.cluster = cluster;
+            this.namespace = namespace;
+            this.kind = kind;
+            this.owner = owner;
+            this.reason = reason;
+            this.firstSeen = firstSeen;
+            this.minuteCounts = new long[Math.max(1, windowMinutes)];
+            this.currentMinute = TimeUnit.MILLISECONDS.toMinutes(firstSeen);
+        }
+
+        private void record(long now, String text) {
+
+            advanceWindow(now);
+            minuteCounts[(int) (currentMinute % minuteCounts.length)]++;
+            lastSeen = now;
+            total++;
+            lastText = text;
+        }
+
+        /**
+         * Clear the counts of minutes that have passed since the window last moved
+         */
+        private void advanceWindow(long now) {
+
+            long minute = TimeUnit.MILLISECONDS.toMinutes(now);
+            long passed = Math.min(minute - currentMinute, minuteCounts.length);
+            for (long i = 1; i <= passed; i++) {
+                minuteCounts[(int) ((currentMinute + i) % minuteCounts.length)] = 0;
+            }
+            currentMinute = Math.max(currentMinute, minute);
+        }
+
+        private String buildDigest(long now) {
+
+            advanceWindow(now);
+            long windowCount = 0;
+            for (long count : minuteCounts) {
+                windowCount += count;
+            }
+            return String.format("%d more `%s` events for %s `%s` in namespace `%s`, cluster `%s` in project `%s`\n", pending, reason, kind, owner, namespace, cluster, project)
+                    + String.format("%d in the last %d minutes, %d since first seen at %s, last seen at %s\n", windowCount, minuteCounts.length, total,
+                    Instant.ofEpochMilli(firstSeen), Instant.ofEpochMilli(lastSeen))
+                    + "Latest:\n" + lastText;
+        }
+    }
+}
@@ -1,45 +1,137 @@
 package com.rtsio.kubemonitor.watcher;
 
+import com.rtsio.kubemonitor.model.EventCacheStats;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Remembers event keys for a fixed time, so an event is only acted on once per expiration period.
+ * Shared by all cluster watchers, so it is split into independently locked shards. Every entry lives for the same
+ * duration, which means each shard's insertion order is also its expiry order: expiring is popping entries off the
+ * head of the shard until reaching one that is still live, rather than scanning the whole cache. Each shard is capped
+ * at its share of the maximum size, evicting its oldest entry when full.
+ */
 @Component
 @Slf4j
 public class EventCache {
 
-    private Map<String, Instant> cache = new HashMap<>();
-    private final static Integer EXPIRATION_MINUTES = 5;
+    private final Shard[] shards;
+    private final int shardMask;
+    private final int maxShardSize;
+    private final long expirationMillis;
 
-    public boolean hasCached(String messageKey) {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
 
-        if (!cache.containsKey(messageKey)) {
-            cacheEvent(messageKey);
+    @Autowired
+    public EventCache(@Value("${event-cache.max-size}") int maxSize,
+                      @Value("${event-cache.expiration-minutes}") long expirationMinutes,
+                      @Value("${event-cache.shards}") int shardCount) {
+
+        // Round shard count up to a power of two, so a shard can be picked with a mask
+        int shardCountPowerOfTwo = (shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1);
+        this.shards = new Shard[shardCountPowerOfTwo];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = shards.length - 1;
+        this.maxShardSize = Math.max(1, (maxSize + shards.length - 1) / shards.length);
+        this.expirationMillis = TimeUnit.MINUTES.toMillis(expirationMinutes);
+    }
+
+    /**
+     * Returns true if the key was seen in the given namespace (e.g. a cluster) within the expiration period;
+     * otherwise records it and returns false. The desired behavior is "return false at most once every X minutes".
+     */
+    public boolean hasCached(String namespace, String messageKey) {
+
+        String key = namespace + "/" + messageKey;
+        Shard shard = shards[spread(key.hashCode()) & shardMask];
+        long now = System.currentTimeMillis();
+        synchronized (shard) {
+            shard.expire(now);
+            if (shard.entries.containsKey(key)) {
+                hits.increment();
+                return true;
+            }
+            shard.entries.put(key, now + expirationMillis);
+            if (shard.entries.size() > maxShardSize) {
+                Iterator<String> oldest = shard.entries.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                evictions.increment();
+            }
+            misses.increment();
             return false;
-        } else {
-            if (Instant.now().compareTo(cache.get(messageKey)) > 0) {
-                cache.remove(messageKey);
-                // The desired behavior here is "return false at most once every X minutes"
-                cacheEvent(messageKey);
-                return false;
+        }
+    }
+
+    /**
+     * Forget every key of a namespace, e.g. for a cluster another replica took over
+     */
+    public void removeNamespace(String namespace) {
+
+        String prefix = namespace + "/";
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.entries.keySet().removeIf(key -> key.startsWith(prefix));
             }
-            return true;
         }
     }
 
-    private void cacheEvent(String messageKey) {
+    public EventCacheStats getStats() {
 
-        cache.put(messageKey, Instant.now().plus(EXPIRATION_MINUTES, ChronoUnit.MINUTES));
+        long size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.entries.size();
+            }
+        }
+        return new EventCacheStats(size, (long) maxShardSize * shards.length, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
     }
 
-    @Scheduled(fixedDelay = 3600000)
-    private void clearCache() {
+    /**
+     * Lookups only expire entries in the shard they touch, so regularly expire the rest too
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void expireEntries() {
 
-        cache.entrySet().removeIf(event -> (Instant.now().compareTo(event.getValue()) > 0));
+        long now = System.currentTimeMillis();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.expire(now);
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private class Shard {
+
+        // Insertion-ordered, key -> expiry time in epoch millis
+        private final Map<String, Long> entries = new LinkedHashMap<>();
+
+        private void expire(long now) {
+
+            Iterator<Long> expiryTimes = entries.values().iterator();
+            while (expiryTimes.hasNext() && expiryTimes.next() <= now) {
+                expiryTimes.remove();
+                expirations.increment();
+            }
+        }
     }
 }
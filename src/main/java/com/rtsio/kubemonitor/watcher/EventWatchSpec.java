@@ -0,0 +1,16 @@
+package com.rtsio.kubemonitor.watcher;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * What a single event watch asks the API server for: a namespace (null for all namespaces) and a field selector
+ * (null for all events)
+ */
+@Data
+@AllArgsConstructor
+public class EventWatchSpec {
+
+    private String namespace;
+    private String fieldSelector;
+}
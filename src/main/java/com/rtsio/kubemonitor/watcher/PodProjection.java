@@ -0,0 +1,87 @@
+package com.rtsio.kubemonitor.watcher;
+
+import io.fabric8.kubernetes.api.model.ContainerStateTerminated;
+import io.fabric8.kubernetes.api.model.ContainerStateWaiting;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.Pod;
+
+import java.util.List;
+
+/**
+ * The part of a Pod that ClusterPodWatcher needs: its owner, and per container the restart count, why it's waiting and
+ * why it last terminated. Strings that repeat across pods (namespaces, owners, container names, reasons) are interned,
+ * so each one is kept once no matter how many pods share it.
+ */
+class PodProjection {
+
+    private static final String[] NONE = new String[0];
+
+    final String namespace;
+    final String name;
+    final String owner;
+    final String[] containers;
+    final int[] restartCounts;
+    final String[] waitingReasons;
+    final String[] terminationReasons;
+
+    private PodProjection(String namespace, String name, String owner, int containerCount) {
+
+        this.namespace = namespace;
+        this.name = name;
+        this.owner = owner;
+        this.containers = (containerCount == 0 ? NONE : new String[containerCount]);
+        this.restartCounts = new int[containerCount];
+        this.waitingReasons = (containerCount == 0 ? NONE : new String[containerCount]);
+        this.terminationReasons = (containerCount == 0 ? NONE : new String[containerCount]);
+    }
+
+    static PodProjection of(Pod pod) {
+
+        List<ContainerStatus> statuses = (pod.getStatus() == null ? null : pod.getStatus().getContainerStatuses());
+        PodProjection projection = new PodProjection(intern(pod.getMetadata().getNamespace()),
+                pod.getMetadata().getName(),
+                intern(getOwner(pod)),
+                (statuses == null ? 0 : statuses.size()));
+        for (int i = 0; i < projection.containers.length; i++) {
+            ContainerStatus status = statuses.get(i);
+            projection.containers[i] = intern(status.getName());
+            projection.restartCounts[i] = (status.getRestartCount() == null ? 0 : status.getRestartCount());
+            ContainerStateWaiting waiting = (status.getState() == null ? null : status.getState().getWaiting());
+            projection.waitingReasons[i] = intern(waiting == null ? null : waiting.getReason());
+            ContainerStateTerminated terminated = (status.getLastState() == null ? null : status.getLastState().getTerminated());
+            projection.terminationReasons[i] = intern(terminated == null ? null : terminated.getReason());
+        }
+        return projection;
+    }
+
+    /**
+     * Name of the pod's controller, with a ReplicaSet resolved to its Deployment; the pod itself if it has none
+     */
+    private static String getOwner(Pod pod) {
+
+        if (pod.getMetadata().getOwnerReferences() != null) {
+            for (OwnerReference reference : pod.getMetadata().getOwnerReferences()) {
+                if (Boolean.TRUE.equals(reference.getController())) {
+                    return EventAggregator.getOwnerName(reference.getKind(), reference.getName());
+                }
+            }
+        }
+        return pod.getMetadata().getName();
+    }
+
+    int indexOf(String container) {
+
+        for (int i = 0; i < containers.length; i++) {
+            if (containers[i].equals(container)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String intern(String value) {
+
+        return (value == null ? null : value.intern());
+    }
+}
@@ -0,0 +1,310 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.exception.ClusterDoesNotExistException;
+import com.rtsio.kubemonitor.metrics.KubemonitorMetrics;
+import com.rtsio.kubemonitor.model.WatchStats;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventList;
+import io.fabric8.kubernetes.api.model.ListOptions;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListMultiDeletable;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A watch on a cluster's Events, narrowed by namespace and field selector as given in its spec, that survives
+ * disconnects without losing events:
+ * - tracks the resourceVersion of every received event (and bookmark), and resumes the watch from it
+ * - only when the server no longer has that resourceVersion (HTTP 410 Gone) does it list Events again, handing over
+ *   the ones newer than the last seen event to fill the gap, and then watches from the list's resourceVersion
+ * - reconnects with jittered exponential backoff on a shared scheduler instead of recursing
+ */
+@Slf4j
+public class ResumableEventWatch {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 300000;
+
+    private final ClusterConfig clusterConfig;
+    private final ClusterClientRegistry clientRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final EventWatchSpec spec;
+    private final Consumer<Event> eventHandler;
+    private final String watchShortId;
+    private final AtomicLong eventsReceived = new AtomicLong();
+
+    private Watch watch;
+    private Gauge uptimeGauge;
+    private ScheduledFuture<?> pendingReconnect;
+    private volatile boolean stopped = true;
+    private volatile String resourceVersion;
+    private volatile Instant lastEventTimestamp;
+    private volatile Instant connectedSince;
+    private Instant disconnectedAt;
+    private int consecutiveFailures;
+    private long reconnects;
+    private long relists;
+    private long lastGapMillis;
+    private long totalGapMillis;
+
+    public ResumableEventWatch(ClusterConfig clusterConfig,
+                               ClusterClientRegistry clientRegistry,
+                               ScheduledExecutorService scheduler,
+                               EventWatchSpec spec,
+                               Consumer<Event> eventHandler) {
+
+        this.clusterConfig = clusterConfig;
+        this.clientRegistry = clientRegistry;
+        this.scheduler = scheduler;
+        this.spec = spec;
+        this.eventHandler = eventHandler;
+        this.watchShortId = UUID.randomUUID().toString().substring(0, 6);
+    }
+
+    /**
+     * Connect, and export the uptime gauge until stop(); watches are replaced with new ids when their cluster
+     * restarts, so a stopped watch's gauge would otherwise linger
+     */
+    public synchronized void start() {
+
+        stopped = false;
+        if (uptimeGauge == null) {
+            uptimeGauge = Gauge.builder(KubemonitorMetrics.WATCH_UPTIME, this, ResumableEventWatch::getUptimeSeconds)
+                    .description("Seconds since the watch (re)connected, 0 while disconnected")
+                    .baseUnit("seconds")
+                    .tags("project", clusterConfig.getProject(), "cluster", clusterConfig.getName(), "watch", watchShortId)
+                    .register(Metrics.globalRegistry);
+        }
+        connect();
+    }
+
+    /**
+     * Close the watch and cancel any pending reconnect; the last seen resourceVersion is kept, so a later start() resumes from it
+     */
+    public synchronized void stop() {
+
+        stopped = true;
+        if (uptimeGauge != null) {
+            Metrics.globalRegistry.remove(uptimeGauge);
+            uptimeGauge = null;
+        }
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+            pendingReconnect = null;
+        }
+        if (watch != null) {
+            watch.close();
+            watch = null;
+        }
+        markDisconnected();
+    }
+
+    public synchronized WatchStats getStats() {
+
+        return new WatchStats(
+                clusterConfig.getProject(),
+                clusterConfig.getName(),
+                watchShortId,
+                spec.getNamespace(),
+                spec.getFieldSelector(),
+                connectedSince != null,
+                connectedSince,
+                resourceVersion,
+                reconnects,
+                relists,
+                lastGapMillis,
+                totalGapMillis,
+                eventsReceived.get()
+        );
+    }
+
+    private synchronized void connect() {
+
+        if (stopped) {
+            return;
+        }
+        pendingReconnect = null;
+        try {
+            KubernetesClient client = clientRegistry.getClient(clusterConfig);
+            if (resourceVersion == null) {
+                relist(client);
+            }
+            ListOptions watchOptions = new ListOptionsBuilder()
+                    .withFieldSelector(spec.getFieldSelector())
+                    .withResourceVersion(resourceVersion)
+                    .withAllowWatchBookmarks(true)
+                    .build();
+            log.info("[{}] [{}] Watching events in {} ({}) from resourceVersion {}", clusterConfig.getProject(), watchShortId, clusterConfig.getName(), spec, resourceVersion);
+            watch = events(client).watch(watchOptions, new EventWatcher());
+            markConnected();
+        } catch (ClusterDoesNotExistException e) {
+            log.warn("[{}] [{}] Could not watch events in {}, as the cluster doesn't exist!", clusterConfig.getProject(), watchShortId, clusterConfig.getName());
+            scheduleReconnect();
+        } catch (KubernetesClientException e) {
+            log.warn("[{}] [{}] Could not watch events in {}", clusterConfig.getProject(), watchShortId, clusterConfig.getName(), e);
+            if (e.getCode() == HttpURLConnection.HTTP_GONE) {
+                resourceVersion = null;
+            }
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * List all events to get a resourceVersion to watch from. On the first list, existing events are history and are
+     * skipped; on later lists, events that happened after the last seen one were missed while the watch was down and
+     * are handed over.
+     */
+    private void relist(KubernetesClient client) {
+
+        ListOptions listOptions = new ListOptionsBuilder()
+                .withFieldSelector(spec.getFieldSelector())
+                .build();
+        EventList eventList = events(client).list(listOptions);
+        if (lastEventTimestamp == null) {
+            lastEventTimestamp = Instant.now();
+        } else {
+            relists++;
+            int missedEvents = 0;
+            for (Event event : eventList.getItems()) {
+                Instant eventTimestamp = getEventTimestamp(event);
+                if (eventTimestamp != null && eventTimestamp.isAfter(lastEventTimestamp)) {
+                    eventHandler.accept(event);
+                    missedEvents++;
+                }
+            }
+            log.info("[{}] [{}] Relisted events in {}, handled {} missed events", clusterConfig.getProject(), watchShortId, clusterConfig.getName(), missedEvents);
+        }
+        resourceVersion = eventList.getMetadata().getResourceVersion();
+    }
+
+    private FilterWatchListMultiDeletable<Event, EventList, Boolean, Watch, Watcher<Event>> events(KubernetesClient client) {
+
+        if (spec.getNamespace() == null) {
+            return client.v1().events().inAnyNamespace();
+        }
+        return client.v1().events().inNamespace(spec.getNamespace());
+    }
+
+    private synchronized void onWatchClosed(KubernetesClientException e) {
+
+        if (stopped) {
+            return;
+        }
+        watch = null;
+        markDisconnected();
+        if (e != null && e.getCode() == HttpURLConnection.HTTP_GONE) {
+            log.info("[{}] [{}] resourceVersion {} too old for watch, relisting", clusterConfig.getProject(), watchShortId, resourceVersion);
+            resourceVersion = null;
+        } else {
+            log.warn("[{}] [{}] Watch closed unexpectedly, reconnecting", clusterConfig.getProject(), watchShortId, e);
+        }
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+
+        if (stopped || pendingReconnect != null) {
+            return;
+        }
+        // Backoff doubles per consecutive failure up to a cap; the delay is a random point in its upper half,
+        // so watches for many clusters don't all reconnect at the same moment
+        long backoffMillis = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(consecutiveFailures, 20));
+        long delayMillis = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        consecutiveFailures++;
+        reconnects++;
+        KubemonitorMetrics.counter(KubemonitorMetrics.WATCH_RECONNECTS, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName()).increment();
+        log.debug("[{}] [{}] Reconnecting in {}ms", clusterConfig.getProject(), watchShortId, delayMillis);
+        pendingReconnect = scheduler.schedule(this::connect, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private double getUptimeSeconds() {
+
+        Instant since = connectedSince;
+        return (since == null ? 0 : Duration.between(since, Instant.now()).toMillis() / 1000.0);
+    }
+
+    private void markConnected() {
+
+        connectedSince = Instant.now();
+        if (disconnectedAt != null) {
+            lastGapMillis = Duration.between(disconnectedAt, connectedSince).toMillis();
+            totalGapMillis += lastGapMillis;
+            disconnectedAt = null;
+        }
+    }
+
+    private void markDisconnected() {
+
+        connectedSince = null;
+        if (disconnectedAt == null) {
+            disconnectedAt = Instant.now();
+        }
+    }
+
+    /**
+     * Newer events only set eventTime, older ones only lastTimestamp
+     */
+    private Instant getEventTimestamp(Event event) {
+
+        if (event.getLastTimestamp() != null) {
+            return ZonedDateTime.parse(event.getLastTimestamp()).toInstant();
+        }
+        if (event.getEventTime() != null && event.getEventTime().getTime() != null) {
+            return ZonedDateTime.parse(event.getEventTime().getTime()).toInstant();
+        }
+        return null;
+    }
+
+    private class EventWatcher implements Watcher<Event> {
+
+        @Override
+        public void eventReceived(Action action, Event resource) {
+
+            resourceVersion = resource.getMetadata().getResourceVersion();
+            synchronized (ResumableEventWatch.this) {
+                consecutiveFailures = 0;
+            }
+            if (action == Action.BOOKMARK) {
+                return;
+            }
+            eventsReceived.incrementAndGet();
+            KubemonitorMetrics.counter(KubemonitorMetrics.EVENTS_RECEIVED, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName(), "reason", String.valueOf(resource.getReason())).increment();
+            // Deletions are the API server expiring old events, not something new happening
+            if (action != Action.ADDED && action != Action.MODIFIED) {
+                KubemonitorMetrics.counter(KubemonitorMetrics.EVENTS_DROPPED, "project", clusterConfig.getProject(), "cluster", clusterConfig.getName(), "reason", "deleted").increment();
+                return;
+            }
+            Instant eventTimestamp = getEventTimestamp(resource);
+            if (eventTimestamp != null && (lastEventTimestamp == null || eventTimestamp.isAfter(lastEventTimestamp))) {
+                lastEventTimestamp = eventTimestamp;
+            }
+            log.debug("[{}] [{}] Received event: {}", clusterConfig.getProject(), watchShortId, resource);
+            eventHandler.accept(resource);
+        }
+
+        @Override
+        public void onClose(KubernetesClientException e) {
+
+            onWatchClosed(e);
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package com.rtsio.kubemonitor.watcher;
 
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
 import com.rtsio.kubemonitor.config.ClusterConfig;
-import com.rtsio.kubemonitor.config.BaseMonitoringConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
+import com.rtsio.kubemonitor.history.EventHistoryStore;
+import com.rtsio.kubemonitor.model.WatchStats;
+import com.rtsio.kubemonitor.rules.EventRuleEngine;
 import com.rtsio.kubemonitor.service.NotificationService;
 import com.rtsio.kubemonitor.service.DeploymentTrackingService;
+import com.rtsio.kubemonitor.shard.ShardCoordinator;
+import com.rtsio.kubemonitor.stream.EventStreamHub;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Component
@@ -21,8 +35,17 @@ public class WatcherInitializer {
     @Value("${watchers.enabled}")
     private Boolean enabled;
 
+    @Value("${health.notify-after-seconds}")
+    private Long healthNotifyAfterSeconds;
+
+    @Value("${kubernetes.list.page-size}")
+    private Integer pageSize;
+
+    @Value("${pod-watch.relist-threads}")
+    private Integer relistThreads;
+
     @Autowired
-    private BaseMonitoringConfig baseMonitoringConfig;
+    private ClusterRegistry clusterRegistry;
 
     @Autowired
     private DeploymentTrackingService deploymentTrackingService;
@@ -33,42 +56,223 @@ public class WatcherInitializer {
     @Autowired
     private EventCache eventCache;
 
-    private List<ClusterEventWatcher> watcherList = new ArrayList<>();
+    @Autowired
+    private EventAggregator eventAggregator;
+
+    @Autowired
+    private EventRuleEngine eventRuleEngine;
+
+    @Autowired
+    private EventHistoryStore eventHistoryStore;
+
+    @Autowired
+    private EventStreamHub eventStreamHub;
+
+    @Autowired
+    private WorkloadCache workloadCache;
+
+    @Autowired
+    private ClusterClientRegistry clientRegistry;
+
+    @Autowired
+    private ShardCoordinator shardCoordinator;
+
+    private List<ClusterEventWatcher> watcherList = new CopyOnWriteArrayList<>();
+
+    private List<ClusterPodWatcher> podWatcherList = new CopyOnWriteArrayList<>();
+
+    // Watches reconnect with backoff on this scheduler; connecting is quick, so one thread serves all clusters
+    private ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "watch-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Pod watchers list whole clusters on these, which would hold up every other watch on the reconnect scheduler
+    private ExecutorService relistExecutor;
 
     /**
      * Start a Watch for each cluster where configured, and add to list.
-     * Regularly restart existing Watches due to fabric8 library not refreshing OAuth tokens
-     * properly; if not done, KubernetesClient/Watch starts receiving HTTP 401.
-     * 3300000 = 55 minutes (OAuth token expires every 60m)
+     * Also start a workload informer for every cluster, used to answer status requests from memory.
+     * With sharding, only clusters owned by this replica are started (see ShardCoordinator).
+     * Watches resume and reconnect on their own (see ResumableEventWatch), so running ones are left alone;
+     * this re-runs regularly only to start anything that couldn't be started before.
      */
     @Scheduled(fixedRate = 3300000, initialDelay = 5000)
-    public void startWatchers() {
+    public synchronized void startWatchers() {
 
         if (enabled) {
-            for (ClusterConfig clusterConfig : baseMonitoringConfig.getClusters()) {
-                if (clusterConfig.getEvents().getEnabled()) {
-
-
-                    ClusterEventWatcher watcher = watcherExistsForCluster(clusterConfig);
-                    if (watcher == null) {
-                        // First time creation on startup
-                        ClusterEventWatcher clusterEventWatcher = new ClusterEventWatcher(clusterConfig,
-                                deploymentTrackingService,
-                                notificationService,
-                                eventCache);
-                        clusterEventWatcher.initWatcher();
-                        watcherList.add(clusterEventWatcher);
-                    } else {
-                        // Regular restart
-                        log.info("Restarting watcher for {} - {}", clusterConfig.getProject(), clusterConfig.getName());
-                        watcher.closeWatcher();
-                        watcher.initWatcher();
-                    }
+            for (ClusterConfig clusterConfig : clusterRegistry.getClusters()) {
+                if (shardCoordinator.owns(clusterConfig)) {
+                    startCluster(clusterConfig);
                 }
             }
         }
     }
 
+    @PostConstruct
+    public void initialize() {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        relistExecutor = Executors.newFixedThreadPool(relistThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pod-relist-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        clientRegistry.addRebuildListener((clusterConfig, client) -> restartForNewClient(clusterConfig));
+        clusterRegistry.addListener(this::onClustersChanged);
+        shardCoordinator.addListener(this::onOwnershipChanged);
+    }
+
+    private void startCluster(ClusterConfig clusterConfig) {
+
+        startInformer(clusterConfig);
+        if (clusterConfig.getEvents().getEnabled()) {
+            if (watcherExistsForCluster(clusterConfig) == null) {
+                ClusterEventWatcher clusterEventWatcher = new ClusterEventWatcher(clusterConfig,
+                        deploymentTrackingService,
+                        notificationService,
+                        eventCache,
+                        eventAggregator,
+                        eventRuleEngine,
+                        eventHistoryStore,
+                        eventStreamHub,
+                        clientRegistry,
+                        reconnectScheduler);
+                clusterEventWatcher.initWatcher();
+                watcherList.add(clusterEventWatcher);
+            }
+            if (Boolean.TRUE.equals(clusterConfig.getEvents().getPodWatch()) && podWatcherExistsForCluster(clusterConfig) == null) {
+                ClusterPodWatcher podWatcher = new ClusterPodWatcher(clusterConfig, clientRegistry, reconnectScheduler, relistExecutor, eventAggregator, pageSize);
+                podWatcher.start();
+                podWatcherList.add(podWatcher);
+            }
+        }
+    }
+
+    /**
+     * The config was reloaded: stop everything for removed clusters and start it for added ones. A changed cluster is
+     * both, so it's restarted with its new config (and a new client, in case its location changed).
+     */
+    private synchronized void onClustersChanged(List<ClusterConfig> removed, List<ClusterConfig> added) {
+
+        for (ClusterConfig clusterConfig : removed) {
+            log.info("Stopping watchers for {} - {}, removed from config", clusterConfig.getProject(), clusterConfig.getName());
+            stopCluster(clusterConfig);
+            clientRegistry.closeClient(clusterConfig);
+        }
+        if (enabled) {
+            for (ClusterConfig clusterConfig : added) {
+                // Unowned clusters are started if the shard coordinator hands them to this replica
+                if (shardCoordinator.owns(clusterConfig)) {
+                    log.info("Starting watchers for {} - {}, added to config", clusterConfig.getProject(), clusterConfig.getName());
+                    startCluster(clusterConfig);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clusters moved between replicas. The client is kept, since status requests can come to any replica. Dedupe and
+     * deployment state of released clusters is dropped: the new owner builds its own, and this replica's copy would only
+     * go stale (or be wrong if the cluster comes back).
+     */
+    private synchronized void onOwnershipChanged(List<ClusterConfig> released, List<ClusterConfig> acquired) {
+
+        for (ClusterConfig clusterConfig : released) {
+            log.info("Stopping watchers for {} - {}, handed over to another replica", clusterConfig.getProject(), clusterConfig.getName());
+            stopCluster(clusterConfig);
+            eventCache.removeNamespace(clusterConfig.getProject() + "/" + clusterConfig.getName());
+            deploymentTrackingService.removeCluster(clusterConfig.getProject(), clusterConfig.getName());
+        }
+        if (enabled) {
+            for (ClusterConfig clusterConfig : acquired) {
+                log.info("Starting watchers for {} - {}, assigned to this replica", clusterConfig.getProject(), clusterConfig.getName());
+                startCluster(clusterConfig);
+            }
+        }
+    }
+
+    private void stopCluster(ClusterConfig clusterConfig) {
+
+        ClusterEventWatcher watcher = watcherExistsForCluster(clusterConfig);
+        if (watcher != null) {
+            watcher.closeWatcher();
+            watcherList.remove(watcher);
+        }
+        ClusterPodWatcher podWatcher = podWatcherExistsForCluster(clusterConfig);
+        if (podWatcher != null) {
+            podWatcher.stop();
+            podWatcherList.remove(podWatcher);
+        }
+        ClusterWorkloadInformer informer = workloadCache.unregister(clusterConfig.getProject(), clusterConfig.getName());
+        if (informer != null) {
+            informer.closeInformer();
+        }
+    }
+
+    /**
+     * The cluster's client was replaced or dropped and the old one is about to be closed; move the informer and watches
+     * onto the new one, or onto one built on next use. While a dropped cluster doesn't exist, the watches retry with
+     * backoff and the informer stays stopped.
+     */
+    private void restartForNewClient(ClusterConfig clusterConfig) {
+
+        ClusterWorkloadInformer informer = workloadCache.getInformer(clusterConfig.getProject(), clusterConfig.getName());
+        if (informer != null) {
+            log.info("Restarting workload informer for {} - {} on new client", clusterConfig.getProject(), clusterConfig.getName());
+            informer.restartInformer();
+        }
+        ClusterEventWatcher watcher = watcherExistsForCluster(clusterConfig);
+        if (watcher != null) {
+            log.info("Restarting watcher for {} - {} on new client", clusterConfig.getProject(), clusterConfig.getName());
+            watcher.closeWatcher();
+            watcher.initWatcher();
+        }
+        ClusterPodWatcher podWatcher = podWatcherExistsForCluster(clusterConfig);
+        if (podWatcher != null) {
+            log.info("Restarting pod watcher for {} - {} on new client", clusterConfig.getProject(), clusterConfig.getName());
+            podWatcher.stop();
+            podWatcher.start();
+        }
+    }
+
+    private void startInformer(ClusterConfig clusterConfig) {
+
+        ClusterWorkloadInformer informer = workloadCache.getInformer(clusterConfig.getProject(), clusterConfig.getName());
+        if (informer == null) {
+            ClusterHealth health = new ClusterHealth(clusterConfig, deploymentTrackingService, notificationService, Duration.ofSeconds(healthNotifyAfterSeconds));
+            informer = new ClusterWorkloadInformer(clusterConfig, clientRegistry, health);
+            workloadCache.register(informer);
+        }
+        // Informers reconnect on their own, so they only need starting once (or again if the cluster didn't exist yet)
+        if (informer.getInformerFactory() == null) {
+            informer.initInformer();
+        }
+    }
+
+    public List<WatchStats> getWatchStats() {
+
+        List<WatchStats> stats = new ArrayList<>();
+        for (ClusterEventWatcher watcher : watcherList) {
+            stats.addAll(watcher.getStats());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void stopWatchers() {
+
+        for (ClusterEventWatcher watcher : watcherList) {
+            watcher.closeWatcher();
+        }
+        for (ClusterPodWatcher podWatcher : podWatcherList) {
+            podWatcher.stop();
+        }
+        reconnectScheduler.shutdownNow();
+        relistExecutor.shutdownNow();
+    }
+
     private ClusterEventWatcher watcherExistsForCluster(ClusterConfig clusterConfig) {
 
         return watcherList
@@ -76,4 +280,12 @@ public class WatcherInitializer {
                 .filter(watcher -> watcher.getClusterConfig().getName().equals(clusterConfig.getName()) && watcher.getClusterConfig().getProject().equals(clusterConfig.getProject()))
                 .findAny().orElse(null);
     }
+
+    private ClusterPodWatcher podWatcherExistsForCluster(ClusterConfig clusterConfig) {
+
+        return podWatcherList
+                .stream()
+                .filter(watcher -> watcher.getClusterConfig().getName().equals(clusterConfig.getName()) && watcher.getClusterConfig().getProject().equals(clusterConfig.getProject()))
+                .findAny().orElse(null);
+    }
 }
@@ -0,0 +1,55 @@
+package com.rtsio.kubemonitor.watcher;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-cluster registry of workload informers, shared between the watcher initializer (which starts them)
+ * and the monitor service (which reads from them)
+ */
+@Component
+public class WorkloadCache {
+
+    private Map<String, ClusterWorkloadInformer> informers = new ConcurrentHashMap<>();
+
+    public void register(ClusterWorkloadInformer informer) {
+
+        informers.put(getKey(informer.getClusterConfig().getProject(), informer.getClusterConfig().getName()), informer);
+    }
+
+    /**
+     * Forget the informer for given project and cluster, returning it (or null if there was none)
+     */
+    public ClusterWorkloadInformer unregister(String project, String cluster) {
+
+        return informers.remove(getKey(project, cluster));
+    }
+
+    /**
+     * Get informer for given project and cluster, or null if the cluster isn't cached
+     */
+    public ClusterWorkloadInformer getInformer(String project, String cluster) {
+
+        return informers.get(getKey(project, cluster));
+    }
+
+    /**
+     * Re-evaluate the health of every cluster whose informer has synced, to pick up rollout windows ending and notify
+     * state changes that have lasted long enough, even when no workload changed
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void evaluateHealth() {
+
+        for (ClusterWorkloadInformer informer : informers.values()) {
+            informer.evaluateHealth();
+        }
+    }
+
+    private String getKey(String project, String cluster) {
+
+        return project + "/" + cluster;
+    }
+}
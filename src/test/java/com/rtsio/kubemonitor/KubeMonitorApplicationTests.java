@@ -3,7 +3,7 @@ package com.rtsio.kubemonitor;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest(properties = "watchers.enabled=false")
+@SpringBootTest(properties = {"watchers.enabled=false", "maintenance.journal.enabled=false", "event-history.enabled=false"})
 class KubeMonitorApplicationTests {
 
 	@Test
@@ -0,0 +1,112 @@
+package com.rtsio.kubemonitor.auth;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class CachingTokenProviderTests {
+
+    private CachingTokenProvider tokenProvider;
+
+    @AfterEach
+    void shutdown() {
+
+        if (tokenProvider != null) {
+            tokenProvider.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentCallersShareOneFetch() throws Exception {
+
+        FakeTokenSource tokenSource = new FakeTokenSource(Duration.ofHours(1), false);
+        tokenProvider = new CachingTokenProvider(tokenSource, Duration.ofMinutes(5), Duration.ofSeconds(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(executor.submit(tokenProvider::getToken));
+        }
+        for (Future<String> result : results) {
+            assertEquals("token-1", result.get());
+        }
+        executor.shutdown();
+        assertEquals(1, tokenSource.fetches.get());
+    }
+
+    @Test
+    void refreshesInBackgroundBeforeExpiry() throws Exception {
+
+        FakeTokenSource tokenSource = new FakeTokenSource(Duration.ofMillis(1500), false);
+        tokenProvider = new CachingTokenProvider(tokenSource, Duration.ofMillis(500), Duration.ofSeconds(1));
+
+        assertEquals("token-1", tokenProvider.getToken());
+        // Refresh is due 1s after the first fetch, while token-1 is still valid
+        awaitCondition(() -> tokenSource.fetches.get() >= 2, Duration.ofSeconds(5), "background refresh");
+        awaitCondition(() -> tokenProvider.getToken().equals("token-2"), Duration.ofSeconds(5), "refreshed token");
+    }
+
+    @Test
+    void keepsServingValidTokenWhenRefreshFails() throws Exception {
+
+        FakeTokenSource tokenSource = new FakeTokenSource(Duration.ofSeconds(3), true);
+        tokenProvider = new CachingTokenProvider(tokenSource, Duration.ofMillis(2500), Duration.ofMillis(100));
+
+        assertEquals("token-1", tokenProvider.getToken());
+        // Refresh is due after 500ms and retried every 100ms; token-1 stays valid for 3s
+        awaitCondition(() -> tokenSource.fetches.get() > 2, Duration.ofSeconds(2), "refresh retries");
+        assertEquals("token-1", tokenProvider.getToken());
+    }
+
+    /**
+     * Poll for the condition instead of sleeping a fixed time, so a slow machine only makes the test slower
+     */
+    private static void awaitCondition(BooleanSupplier condition, Duration timeout, String description) throws InterruptedException {
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out after " + timeout.toMillis() + "ms waiting for " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Issues tokens "token-1", "token-2", ... with the given lifetime; optionally fails every fetch after the first
+     */
+    private static class FakeTokenSource implements TokenSource {
+
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final Duration lifetime;
+        private final boolean failAfterFirst;
+
+        FakeTokenSource(Duration lifetime, boolean failAfterFirst) {
+
+            this.lifetime = lifetime;
+            this.failAfterFirst = failAfterFirst;
+        }
+
+        @Override
+        public OAuthToken fetchToken() {
+
+            int fetch = fetches.incrementAndGet();
+            if (failAfterFirst && fetch > 1) {
+                throw new RuntimeException("Token source unavailable");
+            }
+            return new OAuthToken("token-" + fetch, Instant.now().plus(lifetime));
+        }
+    }
+}
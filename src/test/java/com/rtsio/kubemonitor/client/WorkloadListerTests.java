@@ -0,0 +1,143 @@
+package com.rtsio.kubemonitor.client;
+
+import com.rtsio.kubemonitor.model.WorkloadSummary;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentListBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WorkloadListerTests {
+
+    private MockWebServer server;
+    private KubernetesClient client;
+    // How often each continue token was asked for, by token ("" for the first page)
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void startServer() throws Exception {
+
+        server = new MockWebServer();
+        server.start();
+        client = new DefaultKubernetesClient(new ConfigBuilder().withMasterUrl(server.url("/").toString()).build());
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    void listsEveryPage() throws Exception {
+
+        serve(0);
+
+        List<WorkloadSummary> deployments = WorkloadLister.listDeployments(client, 2, name -> !name.equals("b"));
+
+        assertEquals(Arrays.asList("a", "c", "d", "e"), names(deployments));
+        assertEquals(1, requests.get("").get());
+        assertEquals("2", server.takeRequest().getRequestUrl().queryParameter("limit"));
+    }
+
+    @Test
+    void startsOverWhenContinueTokenExpires() {
+
+        serve(1);
+
+        List<WorkloadSummary> deployments = WorkloadLister.listDeployments(client, 2, name -> true);
+
+        // The first two were listed twice, but only the second listing counts
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), names(deployments));
+        assertEquals(2, requests.get("").get());
+        assertEquals(2, requests.get("page-2").get());
+    }
+
+    @Test
+    void givesUpWhenContinueTokenKeepsExpiring() {
+
+        serve(Integer.MAX_VALUE);
+
+        KubernetesClientException e = assertThrows(KubernetesClientException.class, () -> WorkloadLister.listDeployments(client, 2, name -> true));
+        assertEquals(410, e.getCode());
+        assertEquals(4, requests.get("").get());
+    }
+
+    /**
+     * Serve deployments a to e two per page, answering the first given number of requests for the second page with
+     * 410 Gone, like an expired continue token
+     */
+    private void serve(int expiries) {
+
+        server.setDispatcher(new Dispatcher() {
+
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+
+                String token = request.getRequestUrl().queryParameter("continue");
+                int count = requests.computeIfAbsent(token == null ? "" : token, key -> new AtomicInteger()).incrementAndGet();
+                if (token == null) {
+                    return page("page-2", "a", "b");
+                }
+                if (token.equals("page-2")) {
+                    if (count <= expiries) {
+                        return new MockResponse().setResponseCode(410).setBody(Serialization.asJson(new StatusBuilder()
+                                .withStatus("Failure")
+                                .withCode(410)
+                                .withReason("Expired")
+                                .withMessage("The provided continue parameter is too old")
+                                .build()));
+                    }
+                    return page("page-3", "c", "d");
+                }
+                return page(null, "e");
+            }
+        });
+    }
+
+    private MockResponse page(String continueToken, String... names) {
+
+        List<Deployment> items = new ArrayList<>();
+        for (String name : names) {
+            items.add(new DeploymentBuilder()
+                    .withNewMetadata().withName(name).withNamespace("default").endMetadata()
+                    .withNewStatus().withReplicas(1).withReadyReplicas(1).endStatus()
+                    .build());
+        }
+        return new MockResponse().setResponseCode(200).setBody(Serialization.asJson(new DeploymentListBuilder()
+                .withNewMetadata().withContinue(continueToken).withResourceVersion("10").endMetadata()
+                .withItems(items)
+                .build()));
+    }
+
+    private static List<String> names(List<WorkloadSummary> summaries) {
+
+        List<String> names = new ArrayList<>();
+        for (WorkloadSummary summary : summaries) {
+            names.add(summary.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,101 @@
+package com.rtsio.kubemonitor.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClusterRegistryTests {
+
+    @TempDir
+    Path directory;
+
+    private ClusterRegistry registry;
+
+    @AfterEach
+    void stopRegistry() throws Exception {
+
+        if (registry != null) {
+            registry.stopWatching();
+        }
+    }
+
+    @Test
+    void indexesEnabledClustersAndWebhooks() throws Exception {
+
+        Path config = writeConfig(cluster("cluster-a", "europe-west4-b", true) + "," + cluster("cluster-b", "europe-west4-b", false));
+        registry = new ClusterRegistry(config.toString());
+        registry.loadConfig();
+
+        assertEquals(1, registry.getClusters().size());
+        assertNotNull(registry.findCluster("my-project", "cluster-a"));
+        assertNull(registry.findCluster("my-project", "cluster-b"));
+        assertEquals("https://hooks.slack.com/services/x", registry.getWebhook("my-channel").getUrl());
+        assertThrows(RuntimeException.class, () -> registry.getCluster("my-project", "cluster-b"));
+        assertThrows(RuntimeException.class, () -> registry.getWebhook("other-channel"));
+    }
+
+    @Test
+    void reloadReportsRemovedAddedAndChangedClusters() throws Exception {
+
+        Path config = writeConfig(cluster("cluster-a", "europe-west4-b", true) + ","
+                + cluster("cluster-b", "europe-west4-b", true) + ","
+                + cluster("cluster-c", "europe-west4-b", true));
+        registry = new ClusterRegistry(config.toString());
+        registry.loadConfig();
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        registry.addListener((removedClusters, addedClusters) -> {
+            removedClusters.forEach(cluster -> removed.add(cluster.getName()));
+            addedClusters.forEach(cluster -> added.add(cluster.getName()));
+        });
+
+        // cluster-a unchanged, cluster-b moved zone, cluster-c removed, cluster-d added
+        writeConfig(cluster("cluster-a", "europe-west4-b", true) + ","
+                + cluster("cluster-b", "europe-west1-c", true) + ","
+                + cluster("cluster-d", "europe-west4-b", true));
+        registry.reload();
+
+        assertEquals(List.of("cluster-b", "cluster-c"), removed);
+        assertEquals(List.of("cluster-b", "cluster-d"), added);
+        assertEquals("europe-west1-c", registry.getCluster("my-project", "cluster-b").getZone());
+        assertNull(registry.findCluster("my-project", "cluster-c"));
+    }
+
+    @Test
+    void keepsCurrentConfigWhenReloadFails() throws Exception {
+
+        Path config = writeConfig(cluster("cluster-a", "europe-west4-b", true));
+        registry = new ClusterRegistry(config.toString());
+        registry.loadConfig();
+
+        Files.write(config, "{ \"clusters\": [".getBytes(StandardCharsets.UTF_8));
+        registry.reload();
+
+        assertNotNull(registry.findCluster("my-project", "cluster-a"));
+    }
+
+    private Path writeConfig(String clusters) throws Exception {
+
+        Path config = directory.resolve("monitoring-config.json");
+        String json = "{ \"clusters\": [" + clusters + "], "
+                + "\"slack-webhooks\": [{ \"name\": \"my-channel\", \"url\": \"https://hooks.slack.com/services/x\" }] }";
+        Files.write(config, json.getBytes(StandardCharsets.UTF_8));
+        return config;
+    }
+
+    private String cluster(String name, String zone, boolean enabled) {
+
+        return "{ \"project\": \"my-project\", \"name\": \"" + name + "\", \"zone\": \"" + zone + "\", \"enabled\": " + enabled + " }";
+    }
+}
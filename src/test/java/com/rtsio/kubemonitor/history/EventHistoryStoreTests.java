@@ -0,0 +1,114 @@
+package com.rtsio.kubemonitor.history;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.model.StoredEvent;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventHistoryStoreTests {
+
+    // Small segments, so a few hundred events span several of them
+    private static final int SEGMENT_SIZE_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void queriesByTimeRangeAcrossSegments() throws Exception {
+
+        EventHistoryStore store = createStore(Long.MAX_VALUE);
+        appendEvents(store, "cluster-a", "Unhealthy", 100);
+        Thread.sleep(5);
+        Instant middle = Instant.now();
+        Thread.sleep(5);
+        appendEvents(store, "cluster-b", "Killing", 100);
+        Instant end = Instant.now();
+
+        assertEquals(200, store.query(null, null, Instant.EPOCH, end, null, 1000).size());
+        List<StoredEvent> later = store.query(null, null, middle, end, null, 1000);
+        assertEquals(100, later.size());
+        assertTrue(later.stream().allMatch(event -> event.getCluster().equals("cluster-b")));
+        assertEquals(100, store.query("my-project", "cluster-a", Instant.EPOCH, end, null, 1000).size());
+        assertEquals(0, store.query(null, "cluster-a", middle, end, null, 1000).size());
+        assertEquals(100, store.query(null, null, Instant.EPOCH, end, "Killing", 1000).size());
+    }
+
+    @Test
+    void limitKeepsMostRecentEvents() throws Exception {
+
+        EventHistoryStore store = createStore(Long.MAX_VALUE);
+        appendEvents(store, "cluster-a", "Unhealthy", 50);
+
+        List<StoredEvent> events = store.query(null, null, Instant.EPOCH, Instant.now(), null, 10);
+        assertEquals(10, events.size());
+        assertEquals("example-service-49", events.get(9).getName());
+        assertEquals("example-service-40", events.get(0).getName());
+    }
+
+    @Test
+    void reopensExistingSegments() throws Exception {
+
+        EventHistoryStore store = createStore(Long.MAX_VALUE);
+        appendEvents(store, "cluster-a", "Unhealthy", 100);
+        store.flush();
+
+        EventHistoryStore reopened = createStore(Long.MAX_VALUE);
+        appendEvents(reopened, "cluster-b", "Unhealthy", 10);
+        List<StoredEvent> events = reopened.query(null, null, Instant.EPOCH, Instant.now(), null, 1000);
+        assertEquals(110, events.size());
+        assertEquals("Liveness probe failed for example-service-0", events.get(0).getMessage());
+        assertEquals("cluster-b", events.get(109).getCluster());
+    }
+
+    @Test
+    void deletesOldestSegmentsOverSizeLimit() throws Exception {
+
+        EventHistoryStore store = createStore(SEGMENT_SIZE_BYTES * 2);
+        appendEvents(store, "cluster-a", "Unhealthy", 500);
+        store.enforceRetention();
+
+        List<StoredEvent> events = store.query(null, null, Instant.EPOCH, Instant.now(), null, 1000);
+        assertTrue(events.size() < 500);
+        assertEquals("example-service-499", events.get(events.size() - 1).getName());
+    }
+
+    private EventHistoryStore createStore(long maxSizeBytes) throws Exception {
+
+        EventHistoryStore store = new EventHistoryStore(true, directory.toString(), SEGMENT_SIZE_BYTES, 60, maxSizeBytes, 24, 4);
+        store.openSegments();
+        return store;
+    }
+
+    private void appendEvents(EventHistoryStore store, String cluster, String reason, int count) {
+
+        ClusterConfig clusterConfig = new ClusterConfig();
+        clusterConfig.setProject("my-project");
+        clusterConfig.setName(cluster);
+        for (int i = 0; i < count; i++) {
+            store.append(clusterConfig, event(reason, "example-service-" + i));
+        }
+    }
+
+    private Event event(String reason, String name) {
+
+        return new EventBuilder()
+                .withType("Warning")
+                .withReason(reason)
+                .withMessage("Liveness probe failed for " + name)
+                .withNewInvolvedObject()
+                    .withKind("Pod")
+                    .withName(name)
+                    .withNamespace("default")
+                .endInvolvedObject()
+                .build();
+    }
+}
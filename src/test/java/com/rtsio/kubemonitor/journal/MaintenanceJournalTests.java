@@ -0,0 +1,109 @@
+package com.rtsio.kubemonitor.journal;
+
+import com.rtsio.kubemonitor.model.MaintenanceRequest;
+import com.rtsio.kubemonitor.model.MaintenanceState;
+import com.rtsio.kubemonitor.model.MaintenanceStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaintenanceJournalTests {
+
+    @TempDir
+    Path directory;
+
+    private MaintenanceJournal journal;
+
+    @AfterEach
+    void closeJournal() {
+
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void recoversSavedReplicaCountsAndSkipsRemovedMaintenance() throws Exception {
+
+        journal = new MaintenanceJournal(directory, 1000);
+        assertTrue(journal.open().isEmpty());
+        MaintenanceState scaledDown = maintenance("scaled-down");
+        scaledDown.setMaintenanceStatus(MaintenanceStatus.STARTED);
+        scaledDown.getOriginalReplicaCounts().put("default/example-service", 3);
+        journal.record(maintenance("finished")).join();
+        journal.record(scaledDown).join();
+        journal.remove("finished").join();
+        journal.close();
+
+        List<MaintenanceState> recovered = reopen(1000);
+        assertEquals(1, recovered.size());
+        assertEquals("scaled-down", recovered.get(0).getMaintenanceRequest().getId());
+        assertEquals(MaintenanceStatus.STARTED, recovered.get(0).getMaintenanceStatus());
+        assertEquals(3, recovered.get(0).getOriginalReplicaCounts().get("default/example-service"));
+        assertEquals(scaledDown.getMaintenanceRequest().getEndTime(), recovered.get(0).getMaintenanceRequest().getEndTime());
+    }
+
+    @Test
+    void truncatesTornRecordAndKeepsAppending() throws Exception {
+
+        journal = new MaintenanceJournal(directory, 1000);
+        journal.open();
+        journal.record(maintenance("first")).join();
+        journal.close();
+        // A crash in the middle of writing a record
+        Files.write(directory.resolve("journal.log"), new byte[]{0, 0, 1, 0, 7, 7, 7}, StandardOpenOption.APPEND);
+
+        assertEquals(1, reopen(1000).size());
+        journal.record(maintenance("second")).join();
+        journal.close();
+
+        assertEquals(2, reopen(1000).size());
+    }
+
+    @Test
+    void snapshotsKeepJournalShort() throws Exception {
+
+        journal = new MaintenanceJournal(directory, 5);
+        journal.open();
+        MaintenanceState maintenance = maintenance("updated");
+        for (int i = 0; i < 100; i++) {
+            maintenance.getOriginalReplicaCounts().put("default/service-" + i, i);
+            journal.record(maintenance).join();
+        }
+        journal.close();
+
+        long journalSize = Files.size(directory.resolve("journal.log"));
+        List<MaintenanceState> recovered = reopen(5);
+        assertEquals(1, recovered.size());
+        assertEquals(100, recovered.get(0).getOriginalReplicaCounts().size());
+        assertTrue(journalSize < Files.size(directory.resolve("snapshot.json")) * 5, "journal should have been compacted");
+    }
+
+    private List<MaintenanceState> reopen(int snapshotEvery) throws Exception {
+
+        journal = new MaintenanceJournal(directory, snapshotEvery);
+        return journal.open();
+    }
+
+    private MaintenanceState maintenance(String id) {
+
+        MaintenanceRequest request = new MaintenanceRequest();
+        request.setId(id);
+        request.setProject("my-project");
+        request.setCluster("my-cluster");
+        request.setStartTime(Instant.parse("2020-10-23T14:00:00Z"));
+        request.setEndTime(Instant.parse("2020-10-23T18:00:00Z"));
+        request.setWorkloadsToScale(Arrays.asList("default/example-service"));
+        return new MaintenanceState(request);
+    }
+}
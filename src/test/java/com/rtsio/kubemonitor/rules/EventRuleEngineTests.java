@@ -0,0 +1,243 @@
+package com.rtsio.kubemonitor.rules;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterEventConfig;
+import com.rtsio.kubemonitor.config.EventRuleConfig;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventRuleEngineTests {
+
+    private static final String[] TYPES = {"Normal", "Warning"};
+    private static final String[] REASONS = {"ScalingReplicaSet", "SuccessfulCreate", "Killing", "Unhealthy", "OOMKilling", "BackOff"};
+    private static final String[] KINDS = {"Deployment", "StatefulSet", "Pod", "Node"};
+    private static final String[] MESSAGES = {
+            "Scaled up replica set web-7f9c5d8b4 to 3",
+            "Stopping container web",
+            "Container web failed liveness probe, will be restarted",
+            "Container web failed readiness probe, will be restarted",
+            "Liveness probe failed: Get http://10.4.2.1:8080/healthz: timeout",
+            "Readiness probe failed: connection refused",
+            "Liveness and Readiness probes failed"
+    };
+
+    @Test
+    void rejectsRulesMissingTypeReasonOrAction() {
+
+        assertThrows(IllegalArgumentException.class, () -> new EventRuleEngine(List.of(rule(null, "Killing", null, null, "notify", "{message}"))));
+        assertThrows(IllegalArgumentException.class, () -> new EventRuleEngine(List.of(rule("Normal", null, null, null, "notify", "{message}"))));
+        assertThrows(IllegalArgumentException.class, () -> new EventRuleEngine(List.of(rule("Normal", "Killing", null, null, null, "{message}"))));
+    }
+
+    @Test
+    void rejectsNotifyRuleWithoutTemplate() {
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new EventRuleEngine(List.of(rule("Normal", "Killing", null, null, "notify", null))));
+        assertTrue(e.getMessage().contains("no template"), e.getMessage());
+
+        // Tracking deployments doesn't need one
+        new EventRuleEngine(List.of(rule("Normal", "ScalingReplicaSet", "Deployment", null, "track-deployment", null)));
+    }
+
+    @Test
+    void rejectsBadTemplates() {
+
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class, () -> MessageTemplate.compile("{project}: {pod} died"));
+        assertTrue(unknown.getMessage().contains("{pod}"), unknown.getMessage());
+        IllegalArgumentException unclosed = assertThrows(IllegalArgumentException.class, () -> MessageTemplate.compile("{project}: {message"));
+        assertTrue(unclosed.getMessage().contains("Unclosed"), unclosed.getMessage());
+
+        assertEquals("my-project: OOM kill on node node-1 (Node)",
+                MessageTemplate.compile("{project}: OOM kill on node {name} ({kind})").render(clusterConfig(true, true, true), event("Warning", "OOMKilling", "Node", "node-1", "")));
+    }
+
+    @Test
+    void firstMatchingRuleWins() {
+
+        EventRuleEngine engine = new EventRuleEngine(List.of(
+                rule("Warning", "BackOff", "Pod", "image", "notify", "image {name}"),
+                rule("Warning", "BackOff", null, null, "notify", "any {name}")
+        ));
+
+        assertEquals("image web-0", render(engine, event("Warning", "BackOff", "Pod", "web-0", "Back-off pulling image")));
+        // The kind or the message doesn't match the first rule, so the catch-all gets it
+        assertEquals("any web", render(engine, event("Warning", "BackOff", "Deployment", "web", "Back-off pulling image")));
+        assertEquals("any web-0", render(engine, event("Warning", "BackOff", "Pod", "web-0", "Back-off restarting failed container")));
+        assertNull(engine.match(event("Warning", "Failed", "Pod", "web-0", "Back-off pulling image")));
+
+        // A catch-all listed first shadows everything after it
+        EventRuleEngine catchAllFirst = new EventRuleEngine(List.of(
+                rule("Warning", "BackOff", null, null, "notify", "any {name}"),
+                rule("Warning", "BackOff", "Pod", "image", "notify", "image {name}")
+        ));
+        assertEquals("any web-0", render(catchAllFirst, event("Warning", "BackOff", "Pod", "web-0", "Back-off pulling image")));
+    }
+
+    @Test
+    void selectsKindOnlyWhenRulesAgreeOnIt() {
+
+        EventRuleEngine engine = new EventRuleEngine(List.of(
+                rule("Normal", "ScalingReplicaSet", "Deployment", null, "track-deployment", null),
+                rule("Normal", "ScalingReplicaSet", "StatefulSet", null, "track-deployment", null),
+                rule("Warning", "BackOff", "Pod", null, "notify", "{message}"),
+                rule("Warning", "Failed", "Pod", "image", "notify", "{message}"),
+                rule("Warning", "Failed", null, null, "notify", "{message}")
+        ));
+
+        assertEquals(List.of(
+                "type=Normal,reason=ScalingReplicaSet",
+                "type=Warning,reason=BackOff,involvedObject.kind=Pod",
+                "type=Warning,reason=Failed"
+        ), engine.getFieldSelectors(clusterConfig(true, true, true)));
+    }
+
+    @Test
+    void skipsSelectorsOfRulesDisabledForTheCluster() {
+
+        EventRuleEngine engine = new EventRuleEngine(DefaultEventRules.get());
+
+        List<String> selectors = engine.getFieldSelectors(clusterConfig(false, false, false));
+        assertEquals(List.of(
+                "type=Normal,reason=ScalingReplicaSet,involvedObject.kind=Deployment",
+                "type=Normal,reason=SuccessfulCreate,involvedObject.kind=StatefulSet",
+                "type=Normal,reason=Killing"
+        ), selectors);
+        assertTrue(engine.getFieldSelectors(clusterConfig(false, true, false)).contains("type=Warning,reason=Unhealthy"));
+    }
+
+    /**
+     * The built-in rules have to act on events exactly like the hard-coded checks they replaced did, for every
+     * combination of the cluster's event type switches
+     */
+    @Test
+    void defaultRulesMatchHardCodedChecks() {
+
+        EventRuleEngine engine = new EventRuleEngine(DefaultEventRules.get());
+        int acted = 0;
+        for (int toggles = 0; toggles < 8; toggles++) {
+            ClusterConfig clusterConfig = clusterConfig((toggles & 1) != 0, (toggles & 2) != 0, (toggles & 4) != 0);
+            for (String type : TYPES) {
+                for (String reason : REASONS) {
+                    for (String kind : KINDS) {
+                        for (String message : MESSAGES) {
+                            Event event = event(type, reason, kind, "web", message);
+                            String expected = hardCodedDecision(clusterConfig, event);
+                            assertEquals(expected, ruleDecision(engine, clusterConfig, event), type + " " + reason + " " + kind + " \"" + message + "\"");
+                            CompiledEventRule rule = engine.match(event);
+                            if (expected != null) {
+                                acted++;
+                                // Only Unhealthy events were checked against the event cache
+                                assertEquals(reason.equals("Unhealthy"), rule.isDedupe(), rule.getName());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(acted > 0);
+    }
+
+    /**
+     * What ClusterEventWatcher.parseEvent did before event rules, minus the event cache: "track <name>",
+     * "notify <text>" or null
+     */
+    private String hardCodedDecision(ClusterConfig clusterConfig, Event resource) {
+
+        String kind = resource.getInvolvedObject().getKind();
+        String name = resource.getInvolvedObject().getName();
+        String reason = resource.getReason();
+        String type = resource.getType();
+        ClusterEventConfig.EventTypes types = clusterConfig.getEvents().getTypes();
+        if (type.equals("Normal")) {
+            if (kind.equals("Deployment") && reason.equals("ScalingReplicaSet")) {
+                return "track " + name;
+            }
+            if (kind.equals("StatefulSet") && reason.equals("SuccessfulCreate")) {
+                return "track " + name;
+            }
+            if (reason.equals("Killing")) {
+                if (resource.getMessage().contains("failed liveness probe") || resource.getMessage().contains("failed readiness probe")) {
+                    return "notify " + String.format("%s: %s - %s", clusterConfig.getProject(), resource.getMessage(), name);
+                }
+            }
+        } else if (type.equals("Warning")) {
+            if (reason.equals("Unhealthy")) {
+                if (resource.getMessage().contains("Liveness")) {
+                    if (types.getLivenessProbe()) {
+                        return "notify " + String.format("%s: %s - %s", clusterConfig.getProject(), resource.getMessage(), name);
+                    }
+                } else if (resource.getMessage().contains("Readiness")) {
+                    if (types.getReadinessProbe()) {
+                        return "notify " + String.format("%s: %s - %s", clusterConfig.getProject(), resource.getMessage(), name);
+                    }
+                }
+            } else if (reason.equals("OOMKilling")) {
+                if (types.getOutOfMemoryKill()) {
+                    return "notify " + String.format("%s: OOM kill on node %s", clusterConfig.getProject(), name);
+                }
+            }
+        }
+        return null;
+    }
+
+    private String ruleDecision(EventRuleEngine engine, ClusterConfig clusterConfig, Event event) {
+
+        CompiledEventRule rule = engine.match(event);
+        if (rule == null || !rule.isEnabledFor(clusterConfig)) {
+            return null;
+        }
+        switch (rule.getAction()) {
+            case TRACK_DEPLOYMENT:
+                return "track " + event.getInvolvedObject().getName();
+            case NOTIFY:
+                return "notify " + rule.getTemplate().render(clusterConfig, event);
+            default:
+                return null;
+        }
+    }
+
+    private String render(EventRuleEngine engine, Event event) {
+
+        return engine.match(event).getTemplate().render(clusterConfig(true, true, true), event);
+    }
+
+    private EventRuleConfig rule(String type, String reason, String kind, String messagePattern, String action, String template) {
+
+        return new EventRuleConfig("test", type, reason, kind, messagePattern, null, action, template, false);
+    }
+
+    private ClusterConfig clusterConfig(boolean livenessProbe, boolean readinessProbe, boolean outOfMemoryKill) {
+
+        ClusterEventConfig.EventTypes types = new ClusterEventConfig.EventTypes();
+        types.setLivenessProbe(livenessProbe);
+        types.setReadinessProbe(readinessProbe);
+        types.setOutOfMemoryKill(outOfMemoryKill);
+        ClusterEventConfig events = new ClusterEventConfig();
+        events.setTypes(types);
+        ClusterConfig clusterConfig = new ClusterConfig();
+        clusterConfig.setProject("my-project");
+        clusterConfig.setName("my-cluster");
+        clusterConfig.setEvents(events);
+        return clusterConfig;
+    }
+
+    private Event event(String type, String reason, String kind, String name, String message) {
+
+        return new EventBuilder()
+                .withNewMetadata().withName(name + ".16b1c2d3e4f5").withNamespace("default").withUid(type + reason + kind + message).endMetadata()
+                .withType(type)
+                .withReason(reason)
+                .withMessage(message)
+                .withNewInvolvedObject().withKind(kind).withName(name).withNamespace("default").endInvolvedObject()
+                .build();
+    }
+}
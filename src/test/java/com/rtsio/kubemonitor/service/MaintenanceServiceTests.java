@@ -0,0 +1,232 @@
+package com.rtsio.kubemonitor.service;
+
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterRegistry;
+import com.rtsio.kubemonitor.exception.InvalidMaintenanceRequestException;
+import com.rtsio.kubemonitor.model.MaintenanceOrder;
+import com.rtsio.kubemonitor.model.MaintenanceRequest;
+import com.rtsio.kubemonitor.model.MaintenanceState;
+import com.rtsio.kubemonitor.model.MaintenanceStatus;
+import com.rtsio.kubemonitor.model.WorkloadScaleOutcome;
+import com.rtsio.kubemonitor.model.WorkloadScaleResult;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class MaintenanceServiceTests {
+
+    private static final int PARALLELISM = 2;
+
+    private MockWebServer server;
+    private KubernetesClient client;
+    private MaintenanceService maintenanceService;
+
+    // Ready replicas of every deployment, as reported by the server
+    private final AtomicInteger readyReplicas = new AtomicInteger(2);
+    // Scale requests being handled right now, and the most seen at once
+    private final AtomicInteger scaling = new AtomicInteger();
+    private final AtomicInteger maxScaling = new AtomicInteger();
+    // Scale requests are held until the latch opens (or a few seconds pass), to see how many run at once
+    private volatile CountDownLatch scaleRequests = new CountDownLatch(0);
+
+    @BeforeEach
+    void startService() throws Exception {
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+
+                String path = request.getRequestUrl().encodedPath();
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (!request.getMethod().equals("GET")) {
+                    maxScaling.accumulateAndGet(scaling.incrementAndGet(), Math::max);
+                    CountDownLatch latch = scaleRequests;
+                    latch.countDown();
+                    latch.await(5, TimeUnit.SECONDS);
+                    scaling.decrementAndGet();
+                }
+                return deployment(name);
+            }
+        });
+        server.start();
+        client = new DefaultKubernetesClient(new ConfigBuilder().withMasterUrl(server.url("/").toString()).build());
+
+        ClusterConfig clusterConfig = new ClusterConfig();
+        clusterConfig.setProject("my-project");
+        clusterConfig.setName("my-cluster");
+        maintenanceService = new MaintenanceService();
+        ReflectionTestUtils.setField(maintenanceService, "clusterRegistry", new ClusterRegistry("unused") {
+
+            @Override
+            public ClusterConfig getCluster(String project, String cluster) {
+
+                return clusterConfig;
+            }
+        });
+        ReflectionTestUtils.setField(maintenanceService, "clientRegistry", new ClusterClientRegistry() {
+
+            @Override
+            public KubernetesClient getClient(ClusterConfig clusterConfig) {
+
+                return client;
+            }
+        });
+        ReflectionTestUtils.setField(maintenanceService, "notificationService", new NotificationService() {
+
+            @Override
+            public void notifyNewMaintenanceRequest(String project, String cluster, MaintenanceRequest maintenanceRequest) {
+
+            }
+
+            @Override
+            public void notifyMaintenanceUpdate(String project, String cluster, MaintenanceState maintenanceState) {
+
+            }
+        });
+        ReflectionTestUtils.setField(maintenanceService, "listPageSize", 500);
+        ReflectionTestUtils.setField(maintenanceService, "parallelism", PARALLELISM);
+        ReflectionTestUtils.setField(maintenanceService, "readyTimeoutSeconds", 30L);
+        ReflectionTestUtils.setField(maintenanceService, "archiveSize", 10);
+        ReflectionTestUtils.setField(maintenanceService, "journalEnabled", false);
+        maintenanceService.startExecutors();
+    }
+
+    @AfterEach
+    void stopService() throws Exception {
+
+        maintenanceService.stopExecutors();
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    void scalesWorkloadsConcurrently() throws Exception {
+
+        scaleRequests = new CountDownLatch(PARALLELISM);
+        MaintenanceRequest request = maintenanceService.scheduleMaintenance(request(Duration.ofHours(1), "default/web", "default/api"));
+
+        MaintenanceState maintenance = awaitStatus(request.getId(), status -> status == MaintenanceStatus.STARTED);
+        assertEquals(PARALLELISM, maxScaling.get());
+        assertEquals(2, maintenance.getWorkloadResults().size());
+        for (WorkloadScaleResult result : maintenance.getWorkloadResults()) {
+            assertEquals(WorkloadScaleOutcome.SCALED, result.getOutcome());
+        }
+        assertEquals(2, maintenance.getOriginalReplicaCounts().get("default/web"));
+    }
+
+    @Test
+    void waitsForScaledUpWorkloadsToBeReady() throws Exception {
+
+        readyReplicas.set(0);
+        MaintenanceRequest request = maintenanceService.scheduleMaintenance(request(Duration.ofMillis(200), "default/web"));
+
+        awaitStatus(request.getId(), status -> status == MaintenanceStatus.SCALING_UP);
+        Thread.sleep(500);
+        // Still waiting for the scaled up replicas
+        assertEquals(1, maintenanceService.getMaintenanceStates().size());
+        assertTrue(maintenanceService.getArchivedMaintenance().isEmpty());
+
+        readyReplicas.set(2);
+        MaintenanceState maintenance = awaitStatus(request.getId(), status -> status == MaintenanceStatus.ENDED);
+        WorkloadScaleResult scaleUp = maintenance.getWorkloadResults().get(1);
+        assertEquals("scale-up", scaleUp.getPhase());
+        assertEquals(WorkloadScaleOutcome.READY, scaleUp.getOutcome());
+        assertEquals(2, scaleUp.getReadyReplicas());
+    }
+
+    @Test
+    void restoresScaledDownWorkloadsWhenScaleDownFails() throws Exception {
+
+        // "broken" has no spec, so reading its replica count fails after "web" is already scaled down
+        MaintenanceRequest request = maintenanceService.scheduleMaintenance(request(Duration.ofHours(1), "default/web", "default/broken"));
+
+        MaintenanceState maintenance = awaitStatus(request.getId(), status -> status == MaintenanceStatus.ERROR);
+        WorkloadScaleResult restore = maintenance.getWorkloadResults().get(0);
+        assertEquals("restore", restore.getPhase());
+        assertEquals("default/web", restore.getWorkload());
+        assertEquals(WorkloadScaleOutcome.SCALED, restore.getOutcome());
+        assertEquals(2, restore.getToReplicas());
+    }
+
+    @Test
+    void rejectsIncompleteRequests() {
+
+        MaintenanceRequest request = request(Duration.ofHours(1), "default/web");
+        request.setEndTime(null);
+
+        assertThrows(InvalidMaintenanceRequestException.class, () -> maintenanceService.scheduleMaintenance(request));
+        assertTrue(maintenanceService.getMaintenanceStates().isEmpty());
+    }
+
+    private MaintenanceRequest request(Duration length, String... workloads) {
+
+        MaintenanceRequest request = new MaintenanceRequest();
+        request.setProject("my-project");
+        request.setCluster("my-cluster");
+        request.setStartTime(Instant.now());
+        request.setEndTime(Instant.now().plus(length));
+        request.setWorkloadsToScale(List.of(workloads));
+        request.setOrder(MaintenanceOrder.PARALLEL);
+        return request;
+    }
+
+    /**
+     * Wait for the maintenance, active or archived, to reach a matching status
+     */
+    private MaintenanceState awaitStatus(String id, Predicate<MaintenanceStatus> status) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            for (List<MaintenanceState> states : List.of(maintenanceService.getMaintenanceStates(), maintenanceService.getArchivedMaintenance())) {
+                for (MaintenanceState state : states) {
+                    if (state.getMaintenanceRequest().getId().equals(id) && status.test(state.getMaintenanceStatus())) {
+                        return state;
+                    }
+                }
+            }
+            Thread.sleep(20);
+        }
+        fail("Maintenance " + id + " didn't reach the expected status");
+        return null;
+    }
+
+    private MockResponse deployment(String name) {
+
+        if (name.equals("broken")) {
+            return new MockResponse().setResponseCode(200).setBody(Serialization.asJson(new DeploymentBuilder()
+                    .withNewMetadata().withName(name).withNamespace("default").endMetadata()
+                    .build()));
+        }
+        return new MockResponse().setResponseCode(200).setBody(Serialization.asJson(new DeploymentBuilder()
+                .withNewMetadata().withName(name).withNamespace("default").endMetadata()
+                .withNewSpec().withReplicas(2).endSpec()
+                .withNewStatus().withReplicas(2).withReadyReplicas(readyReplicas.get()).endStatus()
+                .build()));
+    }
+}
@@ -0,0 +1,212 @@
+package com.rtsio.kubemonitor.shard;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardCoordinatorTests {
+
+    private KubernetesServer server;
+    private KubernetesClient client;
+
+    @BeforeEach
+    void startServer() {
+
+        server = new KubernetesServer(false, true);
+        server.before();
+        client = server.getClient();
+    }
+
+    @AfterEach
+    void stopServer() {
+
+        if (server != null) {
+            server.after();
+        }
+    }
+
+    @Test
+    void ringMovesOnlyTheJoiningMembersShare() {
+
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("replica-a", "replica-b"), 100);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("replica-a", "replica-b", "replica-c"), 100);
+
+        int moved = 0;
+        for (int i = 0; i < 1000; i++) {
+            String owner = after.getOwner("cluster-" + i);
+            if (!owner.equals(before.getOwner("cluster-" + i))) {
+                // A key only ever moves to the new member
+                assertEquals("replica-c", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 200 && moved < 470, "moved " + moved);
+    }
+
+    @Test
+    void splitsClustersBetweenReplicasWithoutOverlap() throws Exception {
+
+        List<ClusterConfig> clusters = clusters(20);
+        ShardCoordinator replicaA = new ShardCoordinator(client, "test", "replica-a", 30, 10, 100);
+        ShardCoordinator replicaB = new ShardCoordinator(client, "test", "replica-b", 30, 10, 100);
+        List<ClusterConfig> releasedByA = new ArrayList<>();
+        replicaA.addListener((released, acquired) -> releasedByA.addAll(released));
+
+        replicaA.rebalance(clusters);
+        assertEquals(20, replicaA.getOwnedClusters().size());
+
+        // B joins, but A still holds every Lease until it sees B and hands its share over
+        replicaB.rebalance(clusters);
+        assertTrue(replicaB.getOwnedClusters().isEmpty());
+        replicaA.rebalance(clusters);
+        replicaA.awaitOwnershipChanges();
+        replicaB.rebalance(clusters);
+
+        assertEquals(Arrays.asList("replica-a", "replica-b"), replicaB.getMembers());
+        assertFalse(replicaA.getOwnedClusters().isEmpty());
+        assertFalse(replicaB.getOwnedClusters().isEmpty());
+        assertEquals(releasedByA.size(), replicaB.getOwnedClusters().size());
+        for (ClusterConfig cluster : clusters) {
+            assertTrue(replicaA.owns(cluster) ^ replicaB.owns(cluster), cluster.getName());
+        }
+    }
+
+    @Test
+    void takesOverClustersOfReplicaThatStopped() throws Exception {
+
+        List<ClusterConfig> clusters = clusters(20);
+        ShardCoordinator replicaA = new ShardCoordinator(client, "test", "replica-a", 30, 10, 100);
+        ShardCoordinator replicaB = new ShardCoordinator(client, "test", "replica-b", 30, 10, 100);
+        replicaA.rebalance(clusters);
+        replicaB.rebalance(clusters);
+        replicaA.rebalance(clusters);
+        replicaA.awaitOwnershipChanges();
+        replicaB.rebalance(clusters);
+        int ownedByB = replicaB.getOwnedClusters().size();
+        assertTrue(ownedByB > 0);
+
+        List<ClusterConfig> acquiredByA = new ArrayList<>();
+        replicaA.addListener((released, acquired) -> acquiredByA.addAll(acquired));
+        replicaB.stop();
+        replicaA.rebalance(clusters);
+        replicaA.awaitOwnershipChanges();
+
+        assertEquals(20, replicaA.getOwnedClusters().size());
+        assertEquals(ownedByB, acquiredByA.size());
+    }
+
+    @Test
+    void takesOverClustersOfReplicaThatDied() throws Exception {
+
+        List<ClusterConfig> clusters = clusters(10);
+        ShardCoordinator replicaA = new ShardCoordinator(client, "test", "replica-a", 1, 0, 100);
+        ShardCoordinator replicaB = new ShardCoordinator(client, "test", "replica-b", 1, 0, 100);
+        replicaA.rebalance(clusters);
+        replicaB.rebalance(clusters);
+        replicaA.rebalance(clusters);
+        replicaA.awaitOwnershipChanges();
+        replicaB.rebalance(clusters);
+        assertTrue(replicaA.getOwnedClusters().size() < 10);
+
+        // B stops renewing without cleaning up; its Leases have to expire first
+        Thread.sleep(2500);
+        replicaA.rebalance(clusters);
+
+        assertEquals(Arrays.asList("replica-a"), replicaA.getMembers());
+        assertEquals(10, replicaA.getOwnedClusters().size());
+    }
+
+    @Test
+    void releasesClustersBeforeUnrenewedLeasesExpire() throws Exception {
+
+        List<ClusterConfig> clusters = clusters(3);
+        // 3s Leases renewed every second: after a failed renewal, the next one could come too late
+        ShardCoordinator shortLeases = new ShardCoordinator(client, "test", "replica-a", 3, 1, 100);
+        // 30s Leases renewed every 10s: a renewal failing right after a successful one can wait for the next
+        ShardCoordinator longLeases = new ShardCoordinator(client, "other", "replica-b", 30, 10, 100);
+        List<ClusterConfig> released = new ArrayList<>();
+        shortLeases.addListener((releasedClusters, acquired) -> released.addAll(releasedClusters));
+        shortLeases.rebalance(clusters);
+        longLeases.rebalance(clusters);
+
+        server.after();
+        server = null;
+        shortLeases.rebalance(clusters);
+        longLeases.rebalance(clusters);
+        shortLeases.awaitOwnershipChanges();
+
+        assertTrue(shortLeases.getOwnedClusters().isEmpty());
+        assertEquals(3, released.size());
+        assertEquals(3, longLeases.getOwnedClusters().size());
+    }
+
+    @Test
+    void keepsRenewingWhileListenersAreBusy() throws Exception {
+
+        List<ClusterConfig> clusters = clusters(20);
+        ShardCoordinator replicaA = new ShardCoordinator(client, "test", "replica-a", 30, 10, 100);
+        ShardCoordinator replicaB = new ShardCoordinator(client, "test", "replica-b", 30, 10, 100);
+        replicaA.rebalance(clusters);
+        replicaA.awaitOwnershipChanges();
+        CountDownLatch stopping = new CountDownLatch(1);
+        replicaA.addListener((released, acquired) -> {
+            try {
+                stopping.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // A hands over B's share while its watchers are still stopping; rebalancing doesn't wait for them
+        replicaB.rebalance(clusters);
+        replicaA.rebalance(clusters);
+        replicaA.rebalance(clusters);
+        // ...but the Leases are only cleared once they have stopped
+        replicaB.rebalance(clusters);
+        assertTrue(replicaB.getOwnedClusters().isEmpty());
+
+        stopping.countDown();
+        replicaA.awaitOwnershipChanges();
+        replicaB.rebalance(clusters);
+        assertFalse(replicaB.getOwnedClusters().isEmpty());
+        for (ClusterConfig cluster : clusters) {
+            assertTrue(replicaA.owns(cluster) ^ replicaB.owns(cluster), cluster.getName());
+        }
+    }
+
+    @Test
+    void unshardedOwnsEveryCluster() {
+
+        ShardCoordinator coordinator = ShardCoordinator.unsharded();
+
+        assertFalse(coordinator.isEnabled());
+        for (ClusterConfig cluster : clusters(3)) {
+            assertTrue(coordinator.owns(cluster));
+        }
+    }
+
+    private List<ClusterConfig> clusters(int count) {
+
+        List<ClusterConfig> clusters = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ClusterConfig cluster = new ClusterConfig();
+            cluster.setProject("my-project");
+            cluster.setName("cluster-" + i);
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+}
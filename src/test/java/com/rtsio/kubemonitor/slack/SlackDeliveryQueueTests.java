@@ -0,0 +1,168 @@
+package com.rtsio.kubemonitor.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rtsio.kubemonitor.model.SlackQueueStats;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlackDeliveryQueueTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MockWebServer server;
+    private SlackDeliveryQueue queue;
+
+    @BeforeEach
+    void startServer() throws Exception {
+
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+
+        if (queue != null) {
+            queue.stop();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    void coalescesQueuedMessagesIntoOnePost() throws Exception {
+
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        queue = createQueue(10);
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "first"));
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "second"));
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "third"));
+        queue.start();
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        JsonNode attachments = objectMapper.readTree(request.getBody().readUtf8()).get("attachments");
+        assertEquals(3, attachments.size());
+        assertEquals("first", attachments.get(0).get("text").asText());
+        assertEquals("third", attachments.get(2).get("text").asText());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void waitsForRetryAfterWhenRateLimited() throws Exception {
+
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1").setBody("rate_limited"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        queue = createQueue(10);
+        queue.start();
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "limited"));
+
+        RecordedRequest first = server.takeRequest(5, TimeUnit.SECONDS);
+        long firstReceived = System.nanoTime();
+        RecordedRequest retry = server.takeRequest(5, TimeUnit.SECONDS);
+        long retryDelayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstReceived);
+        assertNotNull(first);
+        assertNotNull(retry);
+        assertTrue(retryDelayMillis >= 900, "Retried after " + retryDelayMillis + "ms");
+        assertEquals(first.getBody().readUtf8(), retry.getBody().readUtf8());
+
+        SlackQueueStats stats = awaitSent(1);
+        assertEquals(1L, stats.getPostsRateLimited());
+        assertEquals(0L, stats.getPostsFailed());
+    }
+
+    @Test
+    void capsRetryAfter() throws Exception {
+
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "3600").setBody("rate_limited"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        queue = createQueue(10);
+        queue.start();
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "limited"));
+
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        // Retried after the 1s cap instead of an hour
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        assertEquals(1L, awaitSent(1).getPostsSent());
+    }
+
+    @Test
+    void retriesServerErrors() throws Exception {
+
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("unavailable"));
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("error"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        queue = createQueue(10);
+        queue.start();
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "flaky"));
+
+        SlackQueueStats stats = awaitStats(current -> current.getPostsSent() >= 1);
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2L, stats.getPostsFailed());
+        assertEquals(0L, stats.getMessagesDropped());
+    }
+
+    @Test
+    void dropsBatchThatSlackRejects() throws Exception {
+
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("invalid_payload"));
+        queue = createQueue(10);
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "first"));
+        queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "second"));
+        queue.start();
+
+        // Not retried, and both messages of the post count as dropped
+        SlackQueueStats stats = awaitStats(current -> current.getMessagesDropped() >= 2);
+        assertEquals(2L, stats.getMessagesDropped());
+        assertEquals(1L, stats.getPostsFailed());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void dropsMessagesWhenQueueIsFull() {
+
+        queue = createQueue(2);
+        assertTrue(queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "one")));
+        assertTrue(queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "two")));
+        assertFalse(queue.offer(new SlackAttachment(SlackNotifier.ERROR_COLOR, "three")));
+
+        SlackQueueStats stats = queue.getStats();
+        assertEquals(2, stats.getQueueDepth());
+        assertEquals(2L, stats.getMessagesQueued());
+        assertEquals(1L, stats.getMessagesDropped());
+    }
+
+    private SlackDeliveryQueue createQueue(int capacity) {
+
+        return new SlackDeliveryQueue("test", server.url("/services/test").toString(), new OkHttpClient(), objectMapper, capacity, 20, 1);
+    }
+
+    private SlackQueueStats awaitSent(long posts) throws InterruptedException {
+
+        return awaitStats(stats -> stats.getPostsSent() >= posts);
+    }
+
+    private SlackQueueStats awaitStats(Predicate<SlackQueueStats> condition) throws InterruptedException {
+
+        for (int i = 0; i < 50; i++) {
+            SlackQueueStats stats = queue.getStats();
+            if (condition.test(stats)) {
+                return stats;
+            }
+            Thread.sleep(100);
+        }
+        return queue.getStats();
+    }
+}
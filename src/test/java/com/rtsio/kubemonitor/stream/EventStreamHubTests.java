@@ -0,0 +1,172 @@
+package com.rtsio.kubemonitor.stream;
+
+import com.rtsio.kubemonitor.exception.TooManySubscribersException;
+import com.rtsio.kubemonitor.model.StoredEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventStreamHubTests {
+
+    private final EventStreamHub hub = new EventStreamHub(4, 2, 2, 30, 30);
+
+    @AfterEach
+    void closeHub() {
+
+        hub.closeSubscribers();
+    }
+
+    @Test
+    void slowSubscriberDropsOldestWithoutBlockingPublisher() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        hub.subscribe(slow, null, null, null);
+
+        hub.publish(event("cluster-a", "Unhealthy", "message 0"));
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        for (int i = 1; i < 100; i++) {
+            hub.publish(event("cluster-a", "Unhealthy", "message " + i));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+        release.countDown();
+        slow.awaitSends(6);
+        // The first event was already being sent when the client stalled; of the rest only the newest 4 are left
+        List<Object> sent = slow.sent;
+        assertEquals("message 0", ((StoredEvent) sent.get(0)).getMessage());
+        assertTrue(sent.get(1).toString().contains("dropped"), sent.get(1).toString());
+        assertEquals("message 96", ((StoredEvent) sent.get(2)).getMessage());
+        assertEquals("message 99", ((StoredEvent) sent.get(5)).getMessage());
+    }
+
+    @Test
+    void onlySendsMatchingEvents() throws Exception {
+
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        hub.subscribe(emitter, "my-project", "cluster-a", "Unhealthy");
+
+        hub.publish(event("cluster-b", "Unhealthy", "other cluster"));
+        hub.publish(event("cluster-a", "Killing", "other reason"));
+        hub.publish(event("cluster-a", "Unhealthy", "match"));
+
+        emitter.awaitSends(1);
+        Thread.sleep(100);
+        assertEquals(1, emitter.sent.size());
+        assertEquals("match", ((StoredEvent) emitter.sent.get(0)).getMessage());
+    }
+
+    @Test
+    void limitsSubscribersAndForgetsCompletedOnes() {
+
+        hub.subscribe(new RecordingEmitter(null), null, null, null);
+        hub.subscribe(new RecordingEmitter(null), null, null, null);
+        assertThrows(TooManySubscribersException.class, () -> hub.subscribe(null, null, null));
+    }
+
+    @Test
+    void dropsStalledSubscriberAndKeepsSendingToOthers() throws Exception {
+
+        // One sender thread, and any write still in progress at a check counts as stalled
+        EventStreamHub stallingHub = new EventStreamHub(4, 2, 1, 30, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            RecordingEmitter stalled = new RecordingEmitter(release);
+            RecordingEmitter healthy = new RecordingEmitter(null);
+            stallingHub.subscribe(stalled, null, "cluster-a", null);
+            stallingHub.subscribe(healthy, null, "cluster-b", null);
+            stallingHub.publish(event("cluster-a", "Unhealthy", "blocks the only sender"));
+            assertTrue(stalled.sending.await(5, TimeUnit.SECONDS));
+
+            stallingHub.sendHeartbeats();
+            assertEquals(1, stallingHub.getSubscriberCount());
+            stallingHub.publish(event("cluster-b", "Unhealthy", "sent on the replacement sender"));
+            healthy.awaitSends(1);
+            assertEquals("sent on the replacement sender", ((StoredEvent) healthy.sent.get(0)).getMessage());
+
+            // The stalled client still holds its slot until its write returns
+            assertThrows(TooManySubscribersException.class, () -> stallingHub.subscribe(new RecordingEmitter(null), null, null, null));
+        } finally {
+            release.countDown();
+            stallingHub.closeSubscribers();
+        }
+    }
+
+    @Test
+    void subscriberRingBufferReportsDrops() {
+
+        EventSubscriber subscriber = new EventSubscriber(null, null, null, null, 2);
+        assertTrue(subscriber.offer(event("cluster-a", "Unhealthy", "1")));
+        // Already draining, so no second drain is started
+        assertTrue(!subscriber.offer(event("cluster-a", "Unhealthy", "2")));
+        subscriber.offer(event("cluster-a", "Unhealthy", "3"));
+
+        EventSubscriber.Batch batch = subscriber.next();
+        assertEquals("2", batch.event.getMessage());
+        assertEquals(1, batch.dropped);
+        assertEquals("3", subscriber.next().event.getMessage());
+        assertNull(subscriber.next());
+        assertEquals(1, subscriber.getTotalDropped());
+    }
+
+    private StoredEvent event(String cluster, String reason, String message) {
+
+        return new StoredEvent("my-project", cluster, "default", "Pod", "web-0", reason, "Warning", message, Instant.now());
+    }
+
+    /**
+     * Records what would be written to the client; optionally blocks on the first write until released, like a client
+     * that stopped reading
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch release;
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final List<Object> sent = new CopyOnWriteArrayList<>();
+
+        private RecordingEmitter(CountDownLatch release) {
+
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+
+            sending.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Set<DataWithMediaType> data = builder.build();
+            for (DataWithMediaType item : data) {
+                if (!(item.getData() instanceof String)) {
+                    sent.add(item.getData());
+                }
+            }
+        }
+
+        private void awaitSends(int count) throws InterruptedException {
+
+            for (int i = 0; i < 100 && sent.size() < count; i++) {
+                Thread.sleep(20);
+            }
+            assertTrue(sent.size() >= count, "sent " + sent.size());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.config.ClusterWorkloadConfig;
+import com.rtsio.kubemonitor.model.ClusterState;
+import com.rtsio.kubemonitor.service.DeploymentTrackingService;
+import com.rtsio.kubemonitor.service.NotificationService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.rtsio.kubemonitor.watcher.WatcherFixtures.clusterConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterHealthTests {
+
+    // Every state notified, in order
+    private final List<ClusterState> healthChanges = Collections.synchronizedList(new ArrayList<>());
+    private final NotificationService notificationService = new NotificationService() {
+
+        @Override
+        public void notifyHealthChange(String project, String cluster, ClusterState state, List<String> issues) {
+
+            healthChanges.add(state);
+        }
+    };
+    private final List<String> activeDeployments = new ArrayList<>();
+    private final DeploymentTrackingService deploymentTrackingService = new DeploymentTrackingService() {
+
+        @Override
+        public List<String> getActiveDeploymentsForCluster(String project, String cluster) {
+
+            return new ArrayList<>(activeDeployments);
+        }
+    };
+
+    @Test
+    void reportsMissingWorkloadsUntilTheyAppear() {
+
+        ClusterHealth health = new ClusterHealth(expecting(), deploymentTrackingService, notificationService, Duration.ZERO);
+
+        assertEquals(ClusterState.DEGRADED, health.getSnapshot().getState());
+        assertEquals(List.of("Deployment web not found in cluster my-cluster", "StatefulSet db not found in cluster my-cluster"), health.getSnapshot().getIssues());
+
+        health.onDeploymentUpdated("default", "web", 2, 2);
+        health.onStatefulSetUpdated("default", "db", 1, 1);
+        // Not expected, so never an issue
+        health.onDeploymentUpdated("default", "other", 1, 0);
+        assertEquals(ClusterState.OK, health.getSnapshot().getState());
+        assertTrue(health.getSnapshot().getIssues().isEmpty());
+
+        health.onStatefulSetDeleted("default", "db");
+        assertEquals(List.of("StatefulSet db not found in cluster my-cluster"), health.getSnapshot().getIssues());
+    }
+
+    @Test
+    void reportsNotReadyWorkloadsOutsideTheirRollout() {
+
+        ClusterHealth health = new ClusterHealth(expecting(), deploymentTrackingService, notificationService, Duration.ZERO);
+        health.markSynced();
+        health.onStatefulSetUpdated("default", "db", 1, 1);
+
+        health.onDeploymentUpdated("default", "web", 3, 1);
+        assertEquals(ClusterState.DEGRADED, health.getSnapshot().getState());
+        assertEquals(List.of("Deployment web expected 3 replicas, but only 1 ready"), health.getSnapshot().getIssues());
+
+        // Rolling out: not ready is expected while the rollout window lasts
+        activeDeployments.add("web");
+        health.evaluate();
+        assertEquals(ClusterState.OK, health.getSnapshot().getState());
+        assertEquals(List.of("web"), health.getSnapshot().getDeploymentsActive());
+
+        // Window over and still not ready
+        activeDeployments.clear();
+        health.evaluate();
+        assertEquals(ClusterState.DEGRADED, health.getSnapshot().getState());
+
+        health.onDeploymentUpdated("default", "web", 3, 3);
+        assertEquals(ClusterState.OK, health.getSnapshot().getState());
+        assertEquals(List.of(ClusterState.DEGRADED, ClusterState.OK, ClusterState.DEGRADED, ClusterState.OK), healthChanges);
+    }
+
+    @Test
+    void notifiesOnlyStatesThatLastNotifyAfter() throws Exception {
+
+        ClusterHealth health = new ClusterHealth(expecting(), deploymentTrackingService, notificationService, Duration.ofMillis(200));
+        health.onStatefulSetUpdated("default", "db", 1, 1);
+        health.markSynced();
+        health.onDeploymentUpdated("default", "web", 2, 2);
+        assertEquals(ClusterState.OK, health.getSnapshot().getState());
+
+        // A brief dip is in the snapshot, but not notified
+        health.onDeploymentUpdated("default", "web", 2, 1);
+        assertEquals(ClusterState.DEGRADED, health.getSnapshot().getState());
+        health.onDeploymentUpdated("default", "web", 2, 2);
+        Thread.sleep(250);
+        health.evaluate();
+        assertTrue(healthChanges.isEmpty());
+
+        // One that lasts is notified once it has lasted long enough, and only once
+        health.onDeploymentUpdated("default", "web", 2, 0);
+        assertTrue(healthChanges.isEmpty());
+        Thread.sleep(250);
+        health.evaluate();
+        health.evaluate();
+        assertEquals(List.of(ClusterState.DEGRADED), healthChanges);
+    }
+
+    @Test
+    void notifiesNothingUntilSynced() {
+
+        ClusterHealth health = new ClusterHealth(expecting(), deploymentTrackingService, notificationService, Duration.ZERO);
+
+        // Not listed yet: everything looks missing, but that isn't an alert
+        health.evaluate();
+        assertEquals(ClusterState.DEGRADED, health.getSnapshot().getState());
+        assertTrue(healthChanges.isEmpty());
+
+        health.onDeploymentUpdated("default", "web", 2, 2);
+        health.onStatefulSetUpdated("default", "db", 1, 1);
+        health.markSynced();
+        assertEquals(ClusterState.OK, health.getSnapshot().getState());
+        assertTrue(healthChanges.isEmpty());
+    }
+
+    @Test
+    void forgetsWorkloadsOnReset() {
+
+        ClusterHealth health = new ClusterHealth(expecting(), deploymentTrackingService, notificationService, Duration.ZERO);
+        health.onDeploymentUpdated("default", "web", 2, 1);
+        health.onStatefulSetUpdated("default", "db", 1, 1);
+        health.markSynced();
+        assertEquals(List.of(ClusterState.DEGRADED), healthChanges);
+
+        // The informer restarts; while it was down web was deleted, so only db is listed again
+        health.reset();
+        health.onStatefulSetUpdated("default", "db", 1, 1);
+        health.markSynced();
+
+        assertEquals(List.of("Deployment web not found in cluster my-cluster"), health.getSnapshot().getIssues());
+        // Still DEGRADED, which was already notified
+        assertEquals(List.of(ClusterState.DEGRADED), healthChanges);
+    }
+
+    private static ClusterConfig expecting() {
+
+        ClusterWorkloadConfig workloads = new ClusterWorkloadConfig();
+        workloads.setDeployments(List.of("web"));
+        workloads.setStatefulSets(List.of("db"));
+        ClusterConfig clusterConfig = clusterConfig();
+        clusterConfig.setExpectedWorkloads(workloads);
+        return clusterConfig;
+    }
+}
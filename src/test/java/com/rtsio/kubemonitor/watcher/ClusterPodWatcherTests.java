@@ -0,0 +1,170 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.client.ClusterClientRegistry;
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.watcher.WatcherFixtures.RecordingNotificationService;
+import io.fabric8.kubernetes.api.model.ContainerStatusBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodListBuilder;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.rtsio.kubemonitor.watcher.WatcherFixtures.clusterConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterPodWatcherTests {
+
+    private final RecordingNotificationService notificationService = new RecordingNotificationService();
+    private final ClusterPodWatcher podWatcher = new ClusterPodWatcher(clusterConfig(), null, null, null,
+            new EventAggregator(notificationService, false, 300, 60, 100), 500);
+
+    @Test
+    void notifiesRestartsButNotPodsSeenForTheFirstTime() {
+
+        podWatcher.onPod(Watcher.Action.ADDED, pod("web-7f9c5d8b4-x2k4p", 3, null, null));
+        assertTrue(notificationService.texts.isEmpty());
+
+        podWatcher.onPod(Watcher.Action.MODIFIED, pod("web-7f9c5d8b4-x2k4p", 3, null, null));
+        podWatcher.onPod(Watcher.Action.MODIFIED, pod("web-7f9c5d8b4-x2k4p", 4, null, "Error"));
+        assertEquals(1, notificationService.texts.size());
+        assertTrue(notificationService.texts.get(0).contains("restarted (last exit: Error), 4 restarts so far"), notificationService.texts.get(0));
+    }
+
+    @Test
+    void callsOutOomKillsAndCrashLoops() {
+
+        podWatcher.onPod(Watcher.Action.ADDED, pod("web-7f9c5d8b4-x2k4p", 0, null, null));
+        podWatcher.onPod(Watcher.Action.MODIFIED, pod("web-7f9c5d8b4-x2k4p", 1, null, "OOMKilled"));
+        podWatcher.onPod(Watcher.Action.MODIFIED, pod("web-7f9c5d8b4-x2k4p", 1, "CrashLoopBackOff", "OOMKilled"));
+        // Still crash looping: nothing new
+        podWatcher.onPod(Watcher.Action.MODIFIED, pod("web-7f9c5d8b4-x2k4p", 1, "CrashLoopBackOff", "OOMKilled"));
+
+        assertEquals(2, notificationService.texts.size());
+        assertTrue(notificationService.texts.get(0).contains("was OOMKilled and restarted"), notificationService.texts.get(0));
+        assertTrue(notificationService.texts.get(1).contains("is in CrashLoopBackOff after 1 restarts"), notificationService.texts.get(1));
+    }
+
+    @Test
+    void forgetsDeletedPods() {
+
+        podWatcher.onPod(Watcher.Action.ADDED, pod("web-7f9c5d8b4-x2k4p", 2, null, null));
+        podWatcher.onPod(Watcher.Action.DELETED, pod("web-7f9c5d8b4-x2k4p", 2, null, null));
+        assertEquals(0, podWatcher.getPodCount());
+
+        // A pod with the same name later is new again
+        podWatcher.onPod(Watcher.Action.ADDED, pod("web-7f9c5d8b4-x2k4p", 0, null, null));
+        assertTrue(notificationService.texts.isEmpty());
+    }
+
+    @Test
+    void relistAfterGoneNotifiesRestartsMissedWhileDisconnected() throws Exception {
+
+        AtomicInteger lists = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+
+                if ("true".equals(request.getRequestUrl().queryParameter("watch"))) {
+                    // Every resourceVersion is too old to watch from, so each watch ends in a relist
+                    return new MockResponse().setResponseCode(410)
+                            .setBody(Serialization.asJson(new StatusBuilder().withStatus("Failure").withCode(410).withReason("Expired").build()));
+                }
+                // The container restarted between the first list and the ones after it
+                int list = lists.incrementAndGet();
+                return new MockResponse().setResponseCode(200).setBody(Serialization.asJson(new PodListBuilder()
+                        .withNewMetadata().withResourceVersion(String.valueOf(list)).endMetadata()
+                        .withItems(pod("web-7f9c5d8b4-x2k4p", (list == 1 ? 0 : 1), null, "Error"))
+                        .build()));
+            }
+        });
+        server.start();
+        KubernetesClient client = new DefaultKubernetesClient(new ConfigBuilder().withMasterUrl(server.url("/").toString()).build());
+        ClusterClientRegistry clientRegistry = new ClusterClientRegistry() {
+
+            @Override
+            public KubernetesClient getClient(ClusterConfig clusterConfig) {
+
+                return client;
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService relistExecutor = Executors.newSingleThreadExecutor();
+        ClusterPodWatcher watcher = new ClusterPodWatcher(clusterConfig(), clientRegistry, scheduler, relistExecutor,
+                new EventAggregator(notificationService, false, 300, 60, 100), 500);
+        try {
+            watcher.start();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (notificationService.texts.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            watcher.stop();
+            scheduler.shutdownNow();
+            relistExecutor.shutdownNow();
+            client.close();
+            server.shutdown();
+        }
+
+        assertTrue(lists.get() >= 2, "lists: " + lists.get());
+        assertEquals(1, notificationService.texts.size());
+        assertTrue(notificationService.texts.get(0).contains("restarted (last exit: Error), 1 restarts so far"), notificationService.texts.get(0));
+    }
+
+    @Test
+    void projectionsShareRepeatedStrings() {
+
+        PodProjection first = PodProjection.of(pod("web-7f9c5d8b4-x2k4p", 0, null, null));
+        PodProjection second = PodProjection.of(pod("web-7f9c5d8b4-m9z7q", 0, null, null));
+
+        assertEquals("web", first.owner);
+        assertSame(first.owner, second.owner);
+        assertSame(first.containers[0], second.containers[0]);
+        assertSame(first.namespace, second.namespace);
+    }
+
+    private Pod pod(String name, int restarts, String waitingReason, String terminationReason) {
+
+        ContainerStatusBuilder status = new ContainerStatusBuilder()
+                .withName(new String("app"))
+                .withRestartCount(restarts);
+        if (waitingReason != null) {
+            status.withNewState().withNewWaiting().withReason(waitingReason).endWaiting().endState();
+        }
+        if (terminationReason != null) {
+            status.withNewLastState().withNewTerminated().withReason(terminationReason).endTerminated().endLastState();
+        }
+        return new PodBuilder()
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace(new String("default"))
+                .addNewOwnerReference()
+                .withKind("ReplicaSet")
+                .withName(name.substring(0, name.lastIndexOf('-')))
+                .withController(true)
+                .endOwnerReference()
+                .endMetadata()
+                .withNewStatus()
+                .withContainerStatuses(status.build())
+                .endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.watcher.WatcherFixtures.RecordingNotificationService;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.EventBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.rtsio.kubemonitor.watcher.WatcherFixtures.clusterConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventAggregatorTests {
+
+    private final RecordingNotificationService notificationService = new RecordingNotificationService();
+    private final ClusterConfig clusterConfig = clusterConfig();
+
+    @Test
+    void sendsFirstEventAndDigestsTheRest() {
+
+        EventAggregator aggregator = new EventAggregator(notificationService, true, 300, 60, 100);
+
+        for (String pod : new String[]{"web-7f9c5d8b4-x2k4p", "web-7f9c5d8b4-m9z7q", "web-6d4b9f7c8-qq2wz"}) {
+            for (int i = 0; i < 4; i++) {
+                aggregator.notifyEvent(clusterConfig, event(pod, "Readiness probe failed: Get http://10.4.2." + i + ":8080/ready: timeout after " + i + "s"), "text " + pod);
+            }
+        }
+        assertEquals(1, notificationService.texts.size());
+        assertEquals(1, aggregator.getGroupCount());
+
+        aggregator.sendDigests();
+        assertEquals(2, notificationService.texts.size());
+        String digest = notificationService.texts.get(1);
+        assertTrue(digest.startsWith("11 more `Unhealthy` events for Pod `web`"), digest);
+        assertTrue(digest.contains("12 in the last 60 minutes, 12 since first seen"), digest);
+
+        // Nothing new: no digest, and the quiet group is kept until a full interval has passed
+        aggregator.sendDigests();
+        assertEquals(2, notificationService.texts.size());
+        assertEquals(1, aggregator.getGroupCount());
+    }
+
+    @Test
+    void keepsDifferentOwnersAndMessagesApart() {
+
+        EventAggregator aggregator = new EventAggregator(notificationService, true, 300, 60, 100);
+
+        aggregator.notifyEvent(clusterConfig, event("web-7f9c5d8b4-x2k4p", "Liveness probe failed"), "web");
+        aggregator.notifyEvent(clusterConfig, event("api-7f9c5d8b4-x2k4p", "Liveness probe failed"), "api");
+        aggregator.notifyEvent(clusterConfig, event("db-0", "Liveness probe failed"), "db-0");
+        aggregator.notifyEvent(clusterConfig, event("db-1", "Liveness probe failed"), "db-1");
+        aggregator.notifyEvent(clusterConfig, event("web-7f9c5d8b4-x2k4p", "Readiness probe failed"), "web readiness");
+
+        assertEquals(4, aggregator.getGroupCount());
+        assertEquals(List.of("web", "api", "db-0", "web readiness"), notificationService.texts);
+    }
+
+    @Test
+    void dropsQuietGroupsAfterAnInterval() throws Exception {
+
+        EventAggregator aggregator = new EventAggregator(notificationService, true, 0, 60, 100);
+
+        aggregator.notifyEvent(clusterConfig, event("web-0", "Back-off restarting failed container"), "first");
+        Thread.sleep(5);
+        aggregator.sendDigests();
+        assertEquals(0, aggregator.getGroupCount());
+
+        aggregator.notifyEvent(clusterConfig, event("web-0", "Back-off restarting failed container"), "again");
+        assertEquals(List.of("first", "again"), notificationService.texts);
+    }
+
+    @Test
+    void sendsEverythingWhenDisabledOrFull() {
+
+        EventAggregator disabled = new EventAggregator(notificationService, false, 300, 60, 100);
+        disabled.notifyEvent(clusterConfig, event("web-0", "Liveness probe failed"), "one");
+        disabled.notifyEvent(clusterConfig, event("web-0", "Liveness probe failed"), "two");
+
+        EventAggregator full = new EventAggregator(notificationService, true, 300, 60, 1);
+        full.notifyEvent(clusterConfig, event("web-0", "Liveness probe failed"), "three");
+        full.notifyEvent(clusterConfig, event("api-0", "Liveness probe failed"), "four");
+
+        assertEquals(List.of("one", "two", "three", "four"), notificationService.texts);
+    }
+
+    @Test
+    void keepsGroupLimitUnderConcurrentEvents() throws Exception {
+
+        EventAggregator aggregator = new EventAggregator(notificationService, true, 300, 60, 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 200; i++) {
+            String pod = "app" + i + "-0";
+            executor.execute(() -> aggregator.notifyEvent(clusterConfig, event(pod, "Liveness probe failed"), pod));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Every event is distinct, so each is sent whether or not it got a group
+        assertEquals(10, aggregator.getGroupCount());
+        assertEquals(200, notificationService.texts.size());
+    }
+
+    @Test
+    void normalizesVariablePartsOfNamesAndMessages() {
+
+        assertEquals("web", EventAggregator.getOwnerName("Pod", "web-7f9c5d8b4-x2k4p"));
+        assertEquals("node-exporter", EventAggregator.getOwnerName("Pod", "node-exporter-x2k4p"));
+        assertEquals("redis", EventAggregator.getOwnerName("Pod", "redis-2"));
+        assertEquals("web", EventAggregator.getOwnerName("ReplicaSet", "web-7f9c5d8b4"));
+        assertEquals("app-redis", EventAggregator.getOwnerName("Pod", "app-redis"));
+        assertEquals("my-node", EventAggregator.getOwnerName("Node", "my-node"));
+        assertEquals("Pulling image <id> from <ip> in <n>s", EventAggregator.normalizeMessage("Pulling image 3f2a9c0e1b from 10.0.0.12:5000 in 1.5s"));
+    }
+
+    private Event event(String pod, String message) {
+
+        return new EventBuilder()
+                .withType("Warning")
+                .withReason("Unhealthy")
+                .withMessage(message)
+                .withNewInvolvedObject()
+                .withKind("Pod")
+                .withName(pod)
+                .withNamespace("default")
+                .endInvolvedObject()
+                .build();
+    }
+}
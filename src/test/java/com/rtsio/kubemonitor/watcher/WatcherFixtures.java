@@ -0,0 +1,40 @@
+package com.rtsio.kubemonitor.watcher;
+
+import com.rtsio.kubemonitor.config.ClusterConfig;
+import com.rtsio.kubemonitor.service.NotificationService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixtures shared by the watcher tests
+ */
+final class WatcherFixtures {
+
+    private WatcherFixtures() {
+
+    }
+
+    static ClusterConfig clusterConfig() {
+
+        ClusterConfig clusterConfig = new ClusterConfig();
+        clusterConfig.setProject("my-project");
+        clusterConfig.setName("my-cluster");
+        return clusterConfig;
+    }
+
+    /**
+     * Keeps the text of every event notification instead of sending it
+     */
+    static class RecordingNotificationService extends NotificationService {
+
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void notifyEvent(String project, String cluster, String text) {
+
+            texts.add(text);
+        }
+    }
+}